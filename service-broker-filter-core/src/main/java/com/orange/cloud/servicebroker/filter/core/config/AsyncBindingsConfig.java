@@ -0,0 +1,43 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.config;
+
+import com.orange.cloud.servicebroker.filter.core.service.BindingOperationStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+
+/**
+ * Enables asynchronous service instance bindings, when the platform sends accepts_incomplete=true.
+ */
+@Profile("!offline-test-without-cf")
+@Configuration
+@ConditionalOnProperty(value = "broker.filter.bindings.async.enabled", havingValue = "true")
+public class AsyncBindingsConfig {
+
+    @Bean
+    public BindingOperationStore bindingOperationStore(@Value("${broker.filter.bindings.async.retention:PT1H}") Duration retention,
+                                                       @Value("${broker.filter.bindings.async.max-duration:PT15M}") Duration maxDuration) {
+        return new BindingOperationStore(retention, maxDuration);
+    }
+
+}
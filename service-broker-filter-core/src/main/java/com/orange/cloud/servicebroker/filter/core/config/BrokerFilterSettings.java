@@ -22,6 +22,9 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
 import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Filtered broker web client connection settings
@@ -38,6 +41,22 @@ public class BrokerFilterSettings {
     private String user;
     private String password;
 
+    /*
+    Optional replicas of the target broker: requests to the url are balanced across them.
+     */
+    private List<URL> replicas = new ArrayList<>();
+
+    /*
+    Optional target brokers fronted by this filter. When set, catalogs of all backends are aggregated, and requests are
+    routed to the backend offering the requested service or plan.
+     */
+    private List<Backend> backends = new ArrayList<>();
+
+    /*
+    HTTP client settings of target broker calls.
+     */
+    private Http http = new Http();
+
     public BrokerFilterSettings() {
     }
 
@@ -46,6 +65,56 @@ public class BrokerFilterSettings {
         this.user = user;
         this.password = password;
     }
-}
 
+    @Data
+    public static class Backend {
+
+        /*
+        Identifies the backend, e.g. in per backend trusted destinations.
+         */
+        private String name;
+        private URL url;
+        private String user;
+        private String password;
+
+        /*
+        Optional replicas of this backend: requests to the backend url are balanced across them.
+         */
+        private List<URL> replicas = new ArrayList<>();
+
+        /*
+        Optional suffix appended to the service and plan ids and names of this backend catalog.
+         */
+        private String suffix;
+
+    }
 
+    @Data
+    public static class Http {
+
+        /*
+        HTTP version spoken to target brokers. HTTP_2 is negotiated with TLS (ALPN), falling back to HTTP/1.1;
+        H2C speaks cleartext HTTP/2 without negotiation, and requires every target broker to support it.
+         */
+        private HttpVersion version = HttpVersion.HTTP_1_1;
+
+        /*
+        Idle connections kept open per filter instance, and how long they are kept.
+         */
+        private int maxIdleConnections = 20;
+        private Duration keepAlive = Duration.ofMinutes(5);
+
+        /*
+        Limits of concurrent asynchronous calls, in total and per target broker host.
+         */
+        private int maxRequests = 64;
+        private int maxRequestsPerHost = 20;
+
+    }
+
+    public enum HttpVersion {
+        HTTP_1_1,
+        HTTP_2,
+        H2C
+    }
+}
@@ -17,17 +17,38 @@
 
 package com.orange.cloud.servicebroker.filter.core.config;
 
+import com.orange.cloud.servicebroker.filter.core.routing.Backend;
+import com.orange.cloud.servicebroker.filter.core.service.AggregatedCatalogService;
+import com.orange.cloud.servicebroker.filter.core.service.BindingOperationStore;
 import com.orange.cloud.servicebroker.filter.core.service.CatalogServiceClient;
-import com.orange.cloud.servicebroker.filter.core.service.OsbConstants;
+import com.orange.cloud.servicebroker.filter.core.service.RemoteCatalogService;
 import com.orange.cloud.servicebroker.filter.core.service.mapper.CatalogMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.DefaultCatalogMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.DefaultServiceInstanceBindingRequestMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.DefaultServiceInstanceRequestMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.RetrievableBindingsCatalogMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.SuffixedCatalogMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.SuffixedServiceInstanceBindingRequestMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.SuffixedServiceInstanceRequestMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cloud.servicebroker.model.catalog.Catalog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
 /**
  * Configure the catalog of services offered by the service broker.
+ * The catalog is fetched from the filtered broker by the startup checks, not while the context starts,
+ * then refreshed in the background.
  *
  * @author Sebastien Bortolussi
  */
@@ -35,15 +56,57 @@ import org.springframework.context.annotation.Profile;
 @Configuration
 public class CatalogConfig {
 
+    static final String BACKENDS_PROPERTY = "broker.filter.backends[0].url";
+
     @Autowired
     CatalogServiceClient client;
 
-    @Autowired
-    CatalogMapper catalogMapper;
+    @Value("${broker.filter.catalog.refresh-interval:PT5M}")
+    Duration refreshInterval;
+
+    @Value("${broker.filter.catalog.snapshot-file:catalog-snapshot.json}")
+    String snapshotFile;
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnExpression("'${" + BACKENDS_PROPERTY + ":}'.isEmpty()")
+    public RemoteCatalogService catalogService(CatalogMapper catalogMapper, Optional<BindingOperationStore> bindingOperationStore) {
+        return new RemoteCatalogService(client, withRetrievableBindings(catalogMapper, bindingOperationStore), refreshInterval, snapshotFile(null));
+    }
+
+    /*
+    Several backends: their catalogs are aggregated, and requests are routed to the backend offering the requested service.
+     */
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    @ConditionalOnProperty(BACKENDS_PROPERTY)
+    public AggregatedCatalogService aggregatedCatalogService(BrokerFilterSettings brokerFilterSettings, Optional<BindingOperationStore> bindingOperationStore) {
+        Map<Backend, RemoteCatalogService> catalogServices = new LinkedHashMap<>();
+        for (BrokerFilterSettings.Backend settings : brokerFilterSettings.getBackends()) {
+            Backend backend = backend(settings);
+            catalogServices.put(backend, new RemoteCatalogService(client, backend, withRetrievableBindings(backend.getCatalogMapper(), bindingOperationStore),
+                    refreshInterval, snapshotFile(backend.getName())));
+        }
+        return new AggregatedCatalogService(catalogServices);
+    }
+
+    private static Backend backend(BrokerFilterSettings.Backend settings) {
+        String suffix = settings.getSuffix();
+        boolean suffixed = suffix != null && !suffix.isEmpty();
+        return new Backend(settings.getName(), settings.getUrl().toString(), settings.getUser(), settings.getPassword(),
+                suffixed ? new SuffixedCatalogMapper(suffix) : new DefaultCatalogMapper(),
+                suffixed ? new SuffixedServiceInstanceRequestMapper(suffix) : new DefaultServiceInstanceRequestMapper(),
+                suffixed ? new SuffixedServiceInstanceBindingRequestMapper(suffix) : new DefaultServiceInstanceBindingRequestMapper());
+    }
+
+    private static CatalogMapper withRetrievableBindings(CatalogMapper catalogMapper, Optional<BindingOperationStore> bindingOperationStore) {
+        return bindingOperationStore.isPresent() ? new RetrievableBindingsCatalogMapper(catalogMapper) : catalogMapper;
+    }
 
-    @Bean
-    public Catalog catalog(CatalogMapper catalogMapper) {
-        return catalogMapper.toCatalog(client.getCatalog(OsbConstants.X_Broker_API_Version_Value));
+    private Path snapshotFile(String backendName) {
+        if (snapshotFile.isEmpty()) {
+            return null;
+        }
+        Path file = Paths.get(snapshotFile);
+        return backendName == null ? file : file.resolveSibling(backendName + "-" + file.getFileName());
     }
 
 }
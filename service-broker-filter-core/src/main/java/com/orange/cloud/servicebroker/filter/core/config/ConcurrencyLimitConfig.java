@@ -0,0 +1,63 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.config;
+
+import com.orange.cloud.servicebroker.filter.core.resilience.AdaptiveConcurrencyLimit;
+import com.orange.cloud.servicebroker.filter.core.web.ConcurrencyLimitFilter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+
+/**
+ * Limits concurrent incoming OSB requests to a limit learnt from their latency.
+ */
+@Profile("!offline-test-without-cf")
+@Configuration
+@ConditionalOnProperty(value = "broker.filter.concurrency-limit.enabled", havingValue = "true")
+public class ConcurrencyLimitConfig {
+
+    @Autowired(required = false)
+    MeterRegistry meterRegistry;
+
+    @Bean
+    public AdaptiveConcurrencyLimit adaptiveConcurrencyLimit(@Value("${broker.filter.concurrency-limit.initial:20}") int initialLimit,
+                                                             @Value("${broker.filter.concurrency-limit.min:5}") int minLimit,
+                                                             @Value("${broker.filter.concurrency-limit.max:200}") int maxLimit,
+                                                             @Value("${broker.filter.concurrency-limit.tolerance:1.5}") double tolerance) {
+        return new AdaptiveConcurrencyLimit(initialLimit, minLimit, maxLimit, tolerance, meterRegistry != null ? meterRegistry : new SimpleMeterRegistry());
+    }
+
+    /*
+    Registered as a servlet filter, after the Spring Security filter chain so that only authenticated requests count.
+     */
+    @Bean
+    public ConcurrencyLimitFilter concurrencyLimitFilter(AdaptiveConcurrencyLimit adaptiveConcurrencyLimit,
+                                                         @Value("${broker.filter.concurrency-limit.rejection-status:503}") int rejectionStatus,
+                                                         @Value("${broker.filter.concurrency-limit.retry-after:PT1S}") Duration retryAfter) {
+        return new ConcurrencyLimitFilter(adaptiveConcurrencyLimit, HttpStatus.valueOf(rejectionStatus), Math.max(1, retryAfter.getSeconds()));
+    }
+
+}
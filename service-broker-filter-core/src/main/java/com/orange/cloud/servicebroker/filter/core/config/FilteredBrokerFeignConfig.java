@@ -17,12 +17,18 @@
 
 package com.orange.cloud.servicebroker.filter.core.config;
 
+import com.orange.cloud.servicebroker.filter.core.routing.Backend;
+import com.orange.cloud.servicebroker.filter.core.deadline.DeadlineClient;
+import com.orange.cloud.servicebroker.filter.core.resilience.TargetBrokerGuard;
+import com.orange.cloud.servicebroker.filter.core.routing.BackendRequestInterceptor;
+import com.orange.cloud.servicebroker.filter.core.routing.ReplicaLoadBalancer;
+import feign.Client;
 import feign.Feign;
 import feign.Logger;
-import feign.auth.BasicAuthRequestInterceptor;
 import feign.okhttp.OkHttpClient;
 import feign.slf4j.Slf4jLogger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
@@ -43,14 +49,27 @@ public class FilteredBrokerFeignConfig {
     @Autowired
     okhttp3.OkHttpClient customOkHttpClient;
 
+    @Autowired(required = false)
+    ReplicaLoadBalancer replicaLoadBalancer;
+
+    @Autowired(required = false)
+    TargetBrokerGuard targetBrokerGuard;
+
+    /*
+    Authenticates requests to the target broker, or to the backend requests are routed to.
+     */
     @Bean
-    public BasicAuthRequestInterceptor basicAuthRequestInterceptor() {
-        return new BasicAuthRequestInterceptor(brokerFilterSettings.getUser(), brokerFilterSettings.getPassword());
+    public BackendRequestInterceptor backendRequestInterceptor() {
+        return new BackendRequestInterceptor(Backend.basicAuthorization(brokerFilterSettings.getUser(), brokerFilterSettings.getPassword()));
     }
 
+    /*
+    Target broker calls are timed and logged by the SampledLoggingInterceptor: Feign logging is off by default, as FULL
+    buffers and logs whole bodies, binding credentials included.
+     */
     @Bean
-    Logger.Level customFeignLoggerLevel() {
-        return Logger.Level.FULL;
+    Logger.Level customFeignLoggerLevel(@Value("${broker.filter.feign.logger-level:NONE}") Logger.Level level) {
+        return level;
     }
 
     @Bean
@@ -60,7 +79,16 @@ public class FilteredBrokerFeignConfig {
 
     @Bean
     Feign.Builder customFeignBuilder() {
-        return Feign.builder().client(new OkHttpClient(customOkHttpClient));
+        okhttp3.OkHttpClient okHttpClient = customOkHttpClient;
+        if (replicaLoadBalancer != null && !replicaLoadBalancer.isEmpty()) {
+            // shares the connection pool and dispatcher, the balancer picks the replica after the client own interceptors ran
+            okHttpClient = customOkHttpClient.newBuilder().addInterceptor(replicaLoadBalancer).build();
+        }
+        Client client = new OkHttpClient(okHttpClient);
+        if (targetBrokerGuard != null) {
+            client = targetBrokerGuard.decorate(client);
+        }
+        return Feign.builder().client(new DeadlineClient(client));
     }
 
 }
@@ -17,8 +17,15 @@
 
 package com.orange.cloud.servicebroker.filter.core.config;
 
+import com.orange.cloud.servicebroker.filter.core.dns.CachingDns;
+import com.orange.cloud.servicebroker.filter.core.logging.SampledLoggingInterceptor;
+import com.orange.cloud.servicebroker.filter.core.proxy.NoProxyMatcher;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Bean;
@@ -33,9 +40,11 @@ import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 
 @Profile("!offline-test-without-cf")
@@ -44,28 +53,48 @@ import java.util.List;
 @Slf4j
 public class OkHttpClientConfig {
 
-    private static final Interceptor LOGGING_INTERCEPTOR = chain -> {
-        Request request = chain.request();
-
-        long t1 = System.nanoTime();
-        log.info(String.format("Sending request %s on %s%n%s",
-                request.url(), chain.connection(), request.headers()));
-
-        Response response = chain.proceed(request);
-
-        long t2 = System.nanoTime();
-        log.info(String.format("Received response for %s in %.1fms%n%s",
-                response.request().url(), (t2 - t1) / 1e6d, response.headers()));
-
-        return response;
-    };
     @Value("${director.proxyHost:}")
     private String proxyHost;
     @Value("${director.proxyPort:0}")
     private int proxyPort;
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry;
+
+    /**
+     * Hosts reached without proxy, shared by the target broker and Cloud Foundry clients. Defaults to the NO_PROXY
+     * environment variable.
+     */
+    @Bean
+    public NoProxyMatcher noProxyMatcher(@Value("${broker.filter.no-proxy:${NO_PROXY:${no_proxy:}}}") String noProxy) {
+        NoProxyMatcher noProxyMatcher = NoProxyMatcher.compile(noProxy);
+        if (!noProxyMatcher.isEmpty()) {
+            log.info("Bypassing proxy for hosts matching {}", noProxy);
+        }
+        return noProxyMatcher;
+    }
+
+    /**
+     * Resolver of the target broker hosts. The TTL defaults to the networkaddress.cache.ttl security property, or 30s.
+     */
+    @Bean(destroyMethod = "close")
+    public CachingDns cachingDns(@Value("${broker.filter.dns.ttl:}") Duration ttl,
+                                 @Value("${broker.filter.dns.max-stale:PT10M}") Duration maxStale) {
+        return new CachingDns(Dns.SYSTEM, ttl != null ? ttl : CachingDns.securityPropertyTtl(Duration.ofSeconds(30)), maxStale);
+    }
 
+    /**
+     * Times target broker calls, and logs a sample of them when DEBUG is enabled for {@link SampledLoggingInterceptor}.
+     */
     @Bean
-    public OkHttpClient squareHttpClient() {
+    public SampledLoggingInterceptor sampledLoggingInterceptor(@Value("${broker.filter.http.logging.detail:BASIC}") SampledLoggingInterceptor.Detail detail,
+                                                               @Value("${broker.filter.http.logging.sample-rate:1.0}") double sampleRate,
+                                                               @Value("${broker.filter.http.logging.max-body-size:4096}") long maxBodySize) {
+        return new SampledLoggingInterceptor(detail, sampleRate, maxBodySize, meterRegistry != null ? meterRegistry : new SimpleMeterRegistry());
+    }
+
+    @Bean
+    public OkHttpClient squareHttpClient(NoProxyMatcher noProxyMatcher, CachingDns cachingDns, BrokerFilterSettings brokerFilterSettings,
+                                         SampledLoggingInterceptor sampledLoggingInterceptor) {
         HostnameVerifier hostnameVerifier = (hostname, session) -> true;
         //See https://blog.codavel.com/accepting-self-signed-certificates-in-okhttp3
         TrustManager[] trustAllCerts = new TrustManager[]{new TrustAllCerts()};
@@ -79,23 +108,34 @@ public class OkHttpClientConfig {
             throw new IllegalArgumentException(e);
         }
 
-        log.info("===> configuring OkHttp");
+        BrokerFilterSettings.Http http = brokerFilterSettings.getHttp();
+        ConnectionPool connectionPool = new ConnectionPool(http.getMaxIdleConnections(), http.getKeepAlive().toMillis(), TimeUnit.MILLISECONDS);
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(http.getMaxRequests());
+        dispatcher.setMaxRequestsPerHost(http.getMaxRequestsPerHost());
+        bindMetrics(connectionPool, dispatcher);
+
+        log.info("===> configuring OkHttp with {}, {} idle connection(s) kept {}", http.getVersion(), http.getMaxIdleConnections(), http.getKeepAlive());
         OkHttpClient.Builder ohc = new OkHttpClient.Builder()
-                .protocols(Collections.singletonList(Protocol.HTTP_1_1))
+                .protocols(protocols(http.getVersion()))
+                .connectionPool(connectionPool)
+                .dispatcher(dispatcher)
                 .followRedirects(true)
                 .followSslRedirects(true)
                 .hostnameVerifier(hostnameVerifier)
                 .sslSocketFactory(sslSocketFactory, (X509TrustManager) trustAllCerts[0])
-                .addInterceptor(LOGGING_INTERCEPTOR);
+                .dns(cachingDns)
+                .eventListenerFactory(cachingDns.eventListenerFactory())
+                .addInterceptor(sampledLoggingInterceptor);
 
         if ((this.proxyHost != null) && (this.proxyHost.length() > 0)) {
             log.info("Activating proxy on host {} port {}", this.proxyHost, this.proxyPort);
             Proxy proxy = new Proxy(Proxy.Type.HTTP, new InetSocketAddress(this.proxyHost, this.proxyPort));
-            ohc.proxy(proxy);
+            // no explicit proxy: OkHttp would then ignore the selector
             ohc.proxySelector(new ProxySelector() {
                 @Override
                 public List<Proxy> select(URI uri) {
-                    return Collections.singletonList(proxy);
+                    return Collections.singletonList(noProxyMatcher.matches(uri.getHost()) ? Proxy.NO_PROXY : proxy);
                 }
 
                 @Override
@@ -108,6 +148,40 @@ public class OkHttpClientConfig {
         return ohc.build();
     }
 
+    static List<Protocol> protocols(BrokerFilterSettings.HttpVersion version) {
+        switch (version) {
+            case HTTP_2:
+                // HTTP/2 is negotiated on TLS connections, cleartext connections stay on HTTP/1.1
+                return Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1);
+            case H2C:
+                return Collections.singletonList(Protocol.H2_PRIOR_KNOWLEDGE);
+            default:
+                return Collections.singletonList(Protocol.HTTP_1_1);
+        }
+    }
+
+    private void bindMetrics(ConnectionPool connectionPool, Dispatcher dispatcher) {
+        if (meterRegistry == null) {
+            return;
+        }
+        Gauge.builder("broker.filter.http.connections", connectionPool, pool -> pool.connectionCount() - pool.idleConnectionCount())
+                .description("Target broker connections in use")
+                .tag("state", "active")
+                .register(meterRegistry);
+        Gauge.builder("broker.filter.http.connections", connectionPool, ConnectionPool::idleConnectionCount)
+                .description("Target broker connections kept idle for reuse")
+                .tag("state", "idle")
+                .register(meterRegistry);
+        Gauge.builder("broker.filter.http.calls", dispatcher, Dispatcher::runningCallsCount)
+                .description("Target broker calls in progress")
+                .tag("state", "running")
+                .register(meterRegistry);
+        Gauge.builder("broker.filter.http.calls", dispatcher, Dispatcher::queuedCallsCount)
+                .description("Asynchronous target broker calls waiting for the dispatcher limits")
+                .tag("state", "queued")
+                .register(meterRegistry);
+    }
+
     public static class TrustAllCerts extends X509ExtendedTrustManager {
         @Override
         public void checkClientTrusted(X509Certificate[] chain, String authType) {
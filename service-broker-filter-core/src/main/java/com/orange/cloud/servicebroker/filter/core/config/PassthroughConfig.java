@@ -0,0 +1,84 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orange.cloud.servicebroker.filter.core.deadline.DeadlineInterceptor;
+import com.orange.cloud.servicebroker.filter.core.filters.ServiceInstanceBindingFilterRunner;
+import com.orange.cloud.servicebroker.filter.core.resilience.TargetBrokerGuard;
+import com.orange.cloud.servicebroker.filter.core.routing.Backend;
+import com.orange.cloud.servicebroker.filter.core.routing.ReplicaLoadBalancer;
+import com.orange.cloud.servicebroker.filter.core.service.BindingOperationStore;
+import com.orange.cloud.servicebroker.filter.core.web.PassthroughFilter;
+import okhttp3.OkHttpClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+
+/**
+ * Streams provision, update, deprovision, last operation and, optionally, bind requests to the target broker, instead
+ * of mapping them.
+ * Streamed calls get the same deadline, bulkheads, circuit breaker and replica balancing as Feign client calls.
+ */
+@Profile("!offline-test-without-cf")
+@Configuration
+@ConditionalOnProperty(value = "broker.filter.passthrough.enabled", havingValue = "true")
+public class PassthroughConfig {
+
+    @Autowired(required = false)
+    ReplicaLoadBalancer replicaLoadBalancer;
+
+    @Autowired(required = false)
+    TargetBrokerGuard targetBrokerGuard;
+
+    @Autowired(required = false)
+    BindingOperationStore bindingOperationStore;
+
+    /*
+    Registered last, after the Spring Security filter chain and the filters setting the request deadline and
+    concurrency limit.
+     */
+    @Bean
+    public FilterRegistrationBean<PassthroughFilter> passthroughFilter(BrokerFilterSettings brokerFilterSettings, OkHttpClient squareHttpClient,
+                                                                       @Value("${broker.filter.serviceoffering.suffix:}") String suffix,
+                                                                       @Value("${broker.filter.passthrough.bindings:true}") boolean bindings,
+                                                                       ServiceInstanceBindingFilterRunner filterRunner, ObjectMapper objectMapper) {
+        if (!brokerFilterSettings.getBackends().isEmpty()) {
+            throw new IllegalStateException("Passthrough mode does not support multiple backends: requests are routed according to their body");
+        }
+        OkHttpClient.Builder client = squareHttpClient.newBuilder().addInterceptor(new DeadlineInterceptor());
+        if (targetBrokerGuard != null) {
+            client.addInterceptor(targetBrokerGuard.interceptor());
+        }
+        if (replicaLoadBalancer != null && !replicaLoadBalancer.isEmpty()) {
+            client.addInterceptor(replicaLoadBalancer);
+        }
+        PassthroughFilter filter = new PassthroughFilter(client.build(), brokerFilterSettings.getUrl(),
+                Backend.basicAuthorization(brokerFilterSettings.getUser(), brokerFilterSettings.getPassword()), suffix,
+                bindings ? filterRunner : null, objectMapper, bindingOperationStore != null);
+        FilterRegistrationBean<PassthroughFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setOrder(Ordered.LOWEST_PRECEDENCE);
+        return registration;
+    }
+
+}
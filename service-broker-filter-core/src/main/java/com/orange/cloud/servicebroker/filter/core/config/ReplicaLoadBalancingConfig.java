@@ -0,0 +1,57 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.config;
+
+import com.orange.cloud.servicebroker.filter.core.routing.ReplicaLoadBalancer;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.net.URL;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Balances filtered broker requests across the replicas of the target broker, and of each backend. Declared apart
+ * from {@link FilteredBrokerFeignConfig}, so that all Feign clients share a single balancer, and its replica state.
+ */
+@Profile("!offline-test-without-cf")
+@Configuration
+public class ReplicaLoadBalancingConfig {
+
+    @Autowired(required = false)
+    MeterRegistry meterRegistry;
+
+    @Bean
+    public ReplicaLoadBalancer replicaLoadBalancer(BrokerFilterSettings brokerFilterSettings,
+                                                   @Value("${broker.filter.load-balancing.decay:PT10S}") Duration decay,
+                                                   @Value("${broker.filter.load-balancing.failures-before-ejection:3}") int failuresBeforeEjection,
+                                                   @Value("${broker.filter.load-balancing.ejection-time:PT30S}") Duration ejectionTime,
+                                                   @Value("${broker.filter.load-balancing.max-ejection-time:PT5M}") Duration maxEjectionTime) {
+        Map<URL, List<URL>> replicas = new LinkedHashMap<>();
+        replicas.put(brokerFilterSettings.getUrl(), brokerFilterSettings.getReplicas());
+        brokerFilterSettings.getBackends().forEach(backend -> replicas.put(backend.getUrl(), backend.getReplicas()));
+        return new ReplicaLoadBalancer(replicas, decay, failuresBeforeEjection, ejectionTime, maxEjectionTime, meterRegistry);
+    }
+
+}
@@ -0,0 +1,45 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.config;
+
+import com.orange.cloud.servicebroker.filter.core.service.AsyncOperationDurationEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+
+/**
+ * Adds Retry-After hints, sized from the learnt duration of each plan async operations, to in progress last operation
+ * responses the target broker sent without one.
+ */
+@Profile("!offline-test-without-cf")
+@Configuration
+@ConditionalOnProperty(value = "broker.filter.last-operation.retry-after.enabled", havingValue = "true")
+public class RetryAfterConfig {
+
+    @Bean
+    public AsyncOperationDurationEstimator asyncOperationDurationEstimator(@Value("${broker.filter.last-operation.retry-after.alpha:0.2}") double alpha,
+                                                                           @Value("${broker.filter.last-operation.retry-after.min:PT5S}") Duration min,
+                                                                           @Value("${broker.filter.last-operation.retry-after.max:PT5M}") Duration max) {
+        return new AsyncOperationDurationEstimator(alpha, min, max);
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.config;
+
+import com.orange.cloud.servicebroker.filter.core.resilience.Bulkhead;
+import com.orange.cloud.servicebroker.filter.core.resilience.CircuitBreaker;
+import com.orange.cloud.servicebroker.filter.core.resilience.TargetBrokerGuard;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+/**
+ * Isolates OSB operations sent to the target broker from each other, and fails them fast while the target broker is
+ * unhealthy. Opt-in with {@code broker.filter.circuit-breaker.enabled=true}. Bulkhead settings may be overridden per
+ * operation, e.g. {@code broker.filter.bulkhead.provision.max-concurrent}.
+ */
+@Profile("!offline-test-without-cf")
+@Configuration
+@ConditionalOnProperty(value = "broker.filter.circuit-breaker.enabled", havingValue = "true")
+public class TargetBrokerGuardConfig {
+
+    @Autowired(required = false)
+    MeterRegistry meterRegistry;
+
+    @Bean
+    public TargetBrokerGuard targetBrokerGuard(Environment environment,
+                                               @Value("${broker.filter.bulkhead.max-concurrent:20}") int maxConcurrent,
+                                               @Value("${broker.filter.bulkhead.max-queued:20}") int maxQueued,
+                                               @Value("${broker.filter.bulkhead.max-wait:PT1S}") Duration maxWait,
+                                               @Value("${broker.filter.circuit-breaker.window-size:20}") int windowSize,
+                                               @Value("${broker.filter.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                                               @Value("${broker.filter.circuit-breaker.failure-rate-threshold:0.5}") double failureRateThreshold,
+                                               @Value("${broker.filter.circuit-breaker.open-duration:PT30S}") Duration openDuration) {
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : new SimpleMeterRegistry();
+        return new TargetBrokerGuard(
+                operation -> {
+                    String prefix = "broker.filter.bulkhead." + operation.key() + ".";
+                    return new Bulkhead(operation,
+                            environment.getProperty(prefix + "max-concurrent", Integer.class, maxConcurrent),
+                            environment.getProperty(prefix + "max-queued", Integer.class, maxQueued),
+                            environment.getProperty(prefix + "max-wait", Duration.class, maxWait),
+                            registry);
+                },
+                target -> new CircuitBreaker(target, windowSize, minimumCalls, failureRateThreshold, openDuration, registry));
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.deadline;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shortens filtered broker Feign client timeouts to the time left before the current {@link Deadline}, and does not
+ * call the target broker at all once it expired.
+ */
+public class DeadlineClient implements Client {
+
+    private final Client delegate;
+
+    public DeadlineClient(Client delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        if (!DeadlineContext.current().isPresent()) {
+            return delegate.execute(request, options);
+        }
+        DeadlineContext.checkNotExpired("target broker call " + request.httpMethod() + " " + request.url());
+        long connectTimeoutMillis = DeadlineContext.remaining(Duration.ofMillis(options.connectTimeoutMillis())).toMillis();
+        long readTimeoutMillis = DeadlineContext.remaining(Duration.ofMillis(options.readTimeoutMillis())).toMillis();
+        // zero would mean no timeout at all
+        Request.Options deadlineOptions = new Request.Options(Math.max(1, connectTimeoutMillis), TimeUnit.MILLISECONDS,
+                Math.max(1, readTimeoutMillis), TimeUnit.MILLISECONDS, options.isFollowRedirects());
+        return delegate.execute(request, deadlineOptions);
+    }
+
+}
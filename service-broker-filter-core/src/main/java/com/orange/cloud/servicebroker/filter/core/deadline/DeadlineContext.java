@@ -0,0 +1,102 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.deadline;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Holds the deadline of the OSB request the current thread serves, so that each stage of the request (target broker
+ * call, filters, Cloud Controller calls) only gets the remaining budget, and stops early once it is exceeded.
+ * Work performed in the background, e.g. asynchronous bindings, runs without deadline.
+ */
+public final class DeadlineContext {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private DeadlineContext() {
+    }
+
+    /**
+     * @return the deadline of the request the current thread serves, empty when none
+     */
+    public static Optional<Deadline> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Sets the deadline of the current thread until the returned scope is closed.
+     *
+     * @param deadline the deadline, the current one is kept when null
+     */
+    public static Scope enter(Deadline deadline) {
+        Deadline previous = CURRENT.get();
+        if (deadline != null) {
+            CURRENT.set(deadline);
+        }
+        return () -> {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    /**
+     * Performs a call within a deadline.
+     */
+    public static <T> T call(Deadline deadline, Supplier<T> call) {
+        try (Scope ignored = enter(deadline)) {
+            return call.get();
+        }
+    }
+
+    /**
+     * @param timeout the stage own timeout
+     * @return the stage own timeout, shortened to the time left before the current deadline if any
+     */
+    public static Duration remaining(Duration timeout) {
+        Deadline deadline = CURRENT.get();
+        if (deadline == null) {
+            return timeout;
+        }
+        Duration remaining = deadline.remaining();
+        return remaining.compareTo(timeout) < 0 ? remaining : timeout;
+    }
+
+    /**
+     * @param stage the stage about to start, as reported in the error
+     * @throws DeadlineExceededException when the current deadline expired
+     */
+    public static void checkNotExpired(String stage) {
+        Deadline deadline = CURRENT.get();
+        if (deadline != null && deadline.isExpired()) {
+            throw new DeadlineExceededException(stage);
+        }
+    }
+
+    public interface Scope extends AutoCloseable {
+
+        @Override
+        void close();
+
+    }
+
+}
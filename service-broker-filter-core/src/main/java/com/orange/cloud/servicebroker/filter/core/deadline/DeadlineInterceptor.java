@@ -0,0 +1,56 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.deadline;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OkHttp counterpart of the {@link DeadlineClient}: shortens timeouts of calls to the time left before the current
+ * {@link Deadline}, and does not call the target broker at all once it expired.
+ */
+public class DeadlineInterceptor implements Interceptor {
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        if (!DeadlineContext.current().isPresent()) {
+            return chain.proceed(request);
+        }
+        DeadlineContext.checkNotExpired("target broker call " + request.method() + " " + request.url());
+        return chain
+                .withConnectTimeout(remainingMillis(chain.connectTimeoutMillis()), TimeUnit.MILLISECONDS)
+                .withReadTimeout(remainingMillis(chain.readTimeoutMillis()), TimeUnit.MILLISECONDS)
+                .withWriteTimeout(remainingMillis(chain.writeTimeoutMillis()), TimeUnit.MILLISECONDS)
+                .proceed(request);
+    }
+
+    /*
+    A zero timeout means no timeout: the time left is then the only bound. Never returns zero, for the same reason.
+     */
+    private static int remainingMillis(int timeoutMillis) {
+        Duration timeout = Duration.ofMillis(timeoutMillis == 0 ? Integer.MAX_VALUE : timeoutMillis);
+        return (int) Math.max(1, DeadlineContext.remaining(timeout).toMillis());
+    }
+
+}
@@ -0,0 +1,264 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.dns;
+
+import okhttp3.Call;
+import okhttp3.Dns;
+import okhttp3.EventListener;
+import okhttp3.Protocol;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.UnknownHostException;
+import java.security.Security;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * OkHttp {@link Dns} caching resolved addresses, so that outbound calls do not stall on resolver hiccups.
+ * <p>
+ * Addresses are cached for a TTL, and refreshed in the background once most of the TTL elapsed, so that lookups of
+ * hosts in use never wait for the resolver. When resolution fails, the last resolved addresses keep being served for
+ * a max stale time. The JDK resolver does not expose record TTLs: the TTL is configured, and defaults to the
+ * {@code networkaddress.cache.ttl} security property when set.
+ * <p>
+ * Addresses are returned fastest first, as measured by connect times reported through {@link #eventListenerFactory()},
+ * since OkHttp tries addresses in order. Failed connects count as slow connects. Connect times are forgotten once their
+ * address is no longer resolved for any host.
+ */
+public class CachingDns implements Dns, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(CachingDns.class);
+
+    static final double REFRESH_AHEAD_RATIO = 0.8;
+
+    static final double CONNECT_TIME_SMOOTHING = 0.3;
+
+    /*
+    Connect time recorded for failed connects, so that failing addresses are tried last.
+     */
+    static final long FAILED_CONNECT_NANOS = Duration.ofSeconds(10).toNanos();
+
+    private final Dns delegate;
+
+    private final long ttlNanos;
+
+    private final long maxStaleNanos;
+
+    private final LongSupplier nanoClock;
+
+    private final Executor refresher;
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<InetAddress, Double> connectNanos = new ConcurrentHashMap<>();
+
+    /**
+     * @param delegate resolver performing lookups, typically {@link Dns#SYSTEM}
+     * @param ttl      how long resolved addresses are used before being resolved again
+     * @param maxStale how long expired addresses keep being served while resolution fails
+     */
+    public CachingDns(Dns delegate, Duration ttl, Duration maxStale) {
+        this(delegate, ttl, maxStale, System::nanoTime, Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dns-refresh");
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    CachingDns(Dns delegate, Duration ttl, Duration maxStale, LongSupplier nanoClock, Executor refresher) {
+        this.delegate = delegate;
+        this.ttlNanos = ttl.toNanos();
+        this.maxStaleNanos = maxStale.toNanos();
+        this.nanoClock = nanoClock;
+        this.refresher = refresher;
+    }
+
+    /**
+     * @return the TTL set by the {@code networkaddress.cache.ttl} security property, or the given default
+     */
+    public static Duration securityPropertyTtl(Duration defaultTtl) {
+        try {
+            String ttl = Security.getProperty("networkaddress.cache.ttl");
+            if (ttl != null && Integer.parseInt(ttl.trim()) > 0) {
+                return Duration.ofSeconds(Integer.parseInt(ttl.trim()));
+            }
+        } catch (NumberFormatException | SecurityException e) {
+            log.debug("Ignoring networkaddress.cache.ttl security property. Error details {}", e.toString());
+        }
+        return defaultTtl;
+    }
+
+    @Override
+    public List<InetAddress> lookup(String hostname) throws UnknownHostException {
+        long now = nanoClock.getAsLong();
+        Entry entry = entries.get(hostname);
+        if (entry != null && now - entry.expiresAt < 0) {
+            if (now - entry.refreshAt >= 0) {
+                refreshAsync(hostname, entry);
+            }
+            return fastestFirst(entry.addresses);
+        }
+        try {
+            return fastestFirst(resolve(hostname).addresses);
+        } catch (UnknownHostException e) {
+            if (entry != null && now - entry.expiresAt - maxStaleNanos < 0) {
+                log.warn("Fail to resolve {}, serving addresses resolved before. Error details {}", hostname, e.toString());
+                return fastestFirst(entry.addresses);
+            }
+            throw e;
+        }
+    }
+
+    private Entry resolve(String hostname) throws UnknownHostException {
+        List<InetAddress> addresses = delegate.lookup(hostname);
+        long now = nanoClock.getAsLong();
+        Entry entry = new Entry(Collections.unmodifiableList(new ArrayList<>(addresses)), now + (long) (ttlNanos * REFRESH_AHEAD_RATIO), now + ttlNanos);
+        entries.put(hostname, entry);
+        forgetUnresolvedAddresses();
+        return entry;
+    }
+
+    /*
+    Connect times of addresses no longer resolved for any host are dropped, so that they do not pile up as target broker
+    addresses change over time.
+     */
+    private void forgetUnresolvedAddresses() {
+        connectNanos.keySet().removeIf(address -> entries.values().stream().noneMatch(entry -> entry.addresses.contains(address)));
+    }
+
+    private void refreshAsync(String hostname, Entry entry) {
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refresher.execute(() -> {
+                try {
+                    resolve(hostname);
+                    log.debug("Refreshed addresses of {}", hostname);
+                } catch (UnknownHostException | RuntimeException e) {
+                    // the entry is resolved again synchronously once expired, and served stale if resolution still fails
+                    log.warn("Fail to refresh addresses of {}. Error details {}", hostname, e.toString());
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            entry.refreshing.set(false);
+        }
+    }
+
+    private List<InetAddress> fastestFirst(List<InetAddress> addresses) {
+        if (addresses.size() < 2 || connectNanos.isEmpty()) {
+            return addresses;
+        }
+        // connect times are snapshotted, since other calls keep updating them: the comparator must stay consistent
+        Map<InetAddress, Double> snapshot = new HashMap<>();
+        for (InetAddress address : addresses) {
+            snapshot.put(address, connectNanos.getOrDefault(address, 0d));
+        }
+        List<InetAddress> sorted = new ArrayList<>(addresses);
+        // stable sort: addresses never connected to keep the resolver order, and are tried before slower ones
+        sorted.sort(Comparator.comparingDouble(snapshot::get));
+        return sorted;
+    }
+
+    boolean hasConnectTime(InetAddress address) {
+        return connectNanos.containsKey(address);
+    }
+
+    void connected(InetAddress address, long elapsedNanos) {
+        connectNanos.merge(address, (double) elapsedNanos,
+                (previous, sample) -> previous * (1 - CONNECT_TIME_SMOOTHING) + sample * CONNECT_TIME_SMOOTHING);
+    }
+
+    /**
+     * @return a listener factory measuring connect times, to be set on the OkHttp client using this resolver
+     */
+    public EventListener.Factory eventListenerFactory() {
+        return call -> new ConnectTimeListener();
+    }
+
+    @Override
+    public void close() {
+        if (refresher instanceof ExecutorService) {
+            ((ExecutorService) refresher).shutdownNow();
+        }
+    }
+
+    private static final class Entry {
+
+        private final List<InetAddress> addresses;
+
+        private final long refreshAt;
+
+        private final long expiresAt;
+
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Entry(List<InetAddress> addresses, long refreshAt, long expiresAt) {
+            this.addresses = addresses;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /*
+    Connects of a call are attempted one at a time, a single start time is enough.
+     */
+    private final class ConnectTimeListener extends EventListener {
+
+        private long connectStart;
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = nanoClock.getAsLong();
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            if (proxy.type() == Proxy.Type.DIRECT && inetSocketAddress.getAddress() != null) {
+                connected(inetSocketAddress.getAddress(), nanoClock.getAsLong() - connectStart);
+            }
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol, IOException ioe) {
+            if (proxy.type() == Proxy.Type.DIRECT && inetSocketAddress.getAddress() != null) {
+                connected(inetSocketAddress.getAddress(), FAILED_CONNECT_NANOS);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.filters;
+
+import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingRequest;
+
+/**
+ * This interface is implemented by post bind filters able to run on the raw binding response body. When all post bind
+ * filters are, binding responses may be forwarded to the platform unchanged, without being mapped to OSB model objects.
+ */
+public interface CreateServiceInstanceBindingRawPostFilter extends CreateServiceInstanceBindingPostFilter {
+
+    /**
+     * @param request      details of the bind request
+     * @param responseBody JSON body of the target broker binding response
+     */
+    void run(CreateServiceInstanceBindingRequest request, byte[] responseBody);
+
+}
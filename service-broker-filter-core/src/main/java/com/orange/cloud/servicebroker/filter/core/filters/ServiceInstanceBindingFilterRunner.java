@@ -17,6 +17,7 @@
 
 package com.orange.cloud.servicebroker.filter.core.filters;
 
+import com.orange.cloud.servicebroker.filter.core.deadline.DeadlineContext;
 import lombok.Setter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -32,6 +33,7 @@ import java.util.Optional;
 
 /**
  * Scan and run all filters that should be processed around service instance instance binding.
+ * Filters are not started once the request deadline expired, see {@link DeadlineContext}.
  *
  * @author Sebastien Bortolussi
  */
@@ -63,7 +65,10 @@ public class ServiceInstanceBindingFilterRunner {
         log.debug("Running preBind on each filter from: {} for osb request: {}",
             createServiceInstanceBindingPreFilters, request);
         Optional.ofNullable(createServiceInstanceBindingPreFilters)
-                .ifPresent(serviceBrokerFilters -> serviceBrokerFilters.forEach(filter -> filter.run(request)));
+                .ifPresent(serviceBrokerFilters -> serviceBrokerFilters.forEach(filter -> {
+                    DeadlineContext.checkNotExpired("filter " + filter.getClass().getSimpleName());
+                    filter.run(request);
+                }));
     }
 
     /**
@@ -75,7 +80,35 @@ public class ServiceInstanceBindingFilterRunner {
         log.debug("Running postBind on each filter from: {} for osb request: {} and osb response: {}",
             createServiceInstanceBindingPostFilters, request, response);
         Optional.ofNullable(createServiceInstanceBindingPostFilters)
-                .ifPresent(serviceBrokerFilters -> serviceBrokerFilters.forEach(filter -> filter.run(request, response)));
+                .ifPresent(serviceBrokerFilters -> serviceBrokerFilters.forEach(filter -> {
+                    DeadlineContext.checkNotExpired("filter " + filter.getClass().getSimpleName());
+                    filter.run(request, response);
+                }));
+    }
+
+    /**
+     * @return true when all post bind filters run on raw binding response bodies, see {@link #postBind(CreateServiceInstanceBindingRequest, byte[])}
+     */
+    public boolean supportsRawPostBind() {
+        return createServiceInstanceBindingPostFilters == null
+                || createServiceInstanceBindingPostFilters.stream().allMatch(CreateServiceInstanceBindingRawPostFilter.class::isInstance);
+    }
+
+    /**
+     * Run all filters that should be processed after a service instance instance binding has been created, on the raw
+     * binding response body. Only supported when {@link #supportsRawPostBind()}.
+     *
+     * @param request      details of a request to bind to a service instance binding.
+     * @param responseBody JSON body of the binding response.
+     */
+    public void postBind(CreateServiceInstanceBindingRequest request, byte[] responseBody) {
+        log.debug("Running raw postBind on each filter from: {} for osb request: {}",
+            createServiceInstanceBindingPostFilters, request);
+        Optional.ofNullable(createServiceInstanceBindingPostFilters)
+                .ifPresent(serviceBrokerFilters -> serviceBrokerFilters.forEach(filter -> {
+                    DeadlineContext.checkNotExpired("filter " + filter.getClass().getSimpleName());
+                    ((CreateServiceInstanceBindingRawPostFilter) filter).run(request, responseBody);
+                }));
     }
 
     /**
@@ -87,7 +120,10 @@ public class ServiceInstanceBindingFilterRunner {
         log.debug("Running preUnbind on each filter from: {} for osb request: {}",
             deleteServiceInstanceBindingPreFilters, request);
         Optional.ofNullable(deleteServiceInstanceBindingPreFilters)
-                .ifPresent(serviceBrokerFilters -> serviceBrokerFilters.forEach(filter -> filter.run(request)));
+                .ifPresent(serviceBrokerFilters -> serviceBrokerFilters.forEach(filter -> {
+                    DeadlineContext.checkNotExpired("filter " + filter.getClass().getSimpleName());
+                    filter.run(request);
+                }));
     }
 
     /**
@@ -99,7 +135,10 @@ public class ServiceInstanceBindingFilterRunner {
         log.debug("Running postUnbind on each filter from: {} for osb request: {} and osb response: {}",
             deleteServiceInstanceBindingPostFilters, request, response);
         Optional.ofNullable(deleteServiceInstanceBindingPostFilters)
-                .ifPresent(serviceBrokerFilters -> serviceBrokerFilters.forEach(filter -> filter.run(request, response)));
+                .ifPresent(serviceBrokerFilters -> serviceBrokerFilters.forEach(filter -> {
+                    DeadlineContext.checkNotExpired("filter " + filter.getClass().getSimpleName());
+                    filter.run(request, response);
+                }));
     }
 
 }
@@ -0,0 +1,197 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.logging;
+
+import com.orange.cloud.servicebroker.filter.core.resilience.OsbOperation;
+import com.orange.cloud.servicebroker.filter.core.resilience.TargetBrokerUnavailableException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import okhttp3.Headers;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import okio.Buffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Records target broker calls into the {@code broker.filter.target.requests} timer, tagged by OSB operation and status,
+ * and logs a sample of them at DEBUG level. Calls rejected by the {@code TargetBrokerGuard} are tagged with a
+ * {@code REJECTED} status and only logged when sampled.
+ * <p>
+ * Log messages are only formatted for sampled calls, when DEBUG is enabled for this class. Credentials are redacted:
+ * authorization and cookie headers are masked, and so are sensitive JSON values of logged bodies. Binding bodies, which
+ * carry the binding credentials, are never logged, nor are one shot request bodies, which cannot be read twice. Logged
+ * bodies are truncated to a max size.
+ */
+public class SampledLoggingInterceptor implements Interceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(SampledLoggingInterceptor.class);
+
+    public enum Detail {
+        NONE,
+        BASIC,
+        HEADERS,
+        BODY
+    }
+
+    static final String REDACTED = "<redacted>";
+
+    static final Set<String> REDACTED_HEADERS = new HashSet<>(Arrays.asList(
+            "authorization", "proxy-authorization", "cookie", "set-cookie", "x-broker-api-originating-identity"));
+
+    static final Pattern SENSITIVE_JSON_VALUE = Pattern.compile(
+            "(\"[^\"]*(?:password|secret|token|credential|private|key)[^\"]*\"\\s*:\\s*)(\"(?:[^\"\\\\]|\\\\.)*\"|\\{[^{}]*}|\\[[^\\[\\]]*])",
+            Pattern.CASE_INSENSITIVE);
+
+    private final Detail detail;
+
+    private final double sampleRate;
+
+    private final long maxBodySize;
+
+    private final MeterRegistry registry;
+
+    private final DoubleSupplier random;
+
+    /**
+     * @param detail      what logged calls include
+     * @param sampleRate  share of calls logged, between 0 and 1
+     * @param maxBodySize max number of body bytes logged
+     */
+    public SampledLoggingInterceptor(Detail detail, double sampleRate, long maxBodySize, MeterRegistry registry) {
+        this(detail, sampleRate, maxBodySize, registry, () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    SampledLoggingInterceptor(Detail detail, double sampleRate, long maxBodySize, MeterRegistry registry, DoubleSupplier random) {
+        this.detail = detail;
+        this.sampleRate = sampleRate;
+        this.maxBodySize = maxBodySize;
+        this.registry = registry;
+        this.random = random;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        OsbOperation operation = OsbOperation.of(request.method(), request.url().encodedPath());
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (TargetBrokerUnavailableException e) {
+            // calls shed while the target broker is unhealthy may be numerous: only sampled ones are logged
+            record(operation, "REJECTED", System.nanoTime() - start);
+            if (isLogged()) {
+                log.debug("Target broker call rejected operation={} method={} url={}. Reason {}", operation.key(), request.method(), location(request.url()), e.getMessage());
+            }
+            throw e;
+        } catch (IOException | RuntimeException e) {
+            record(operation, e instanceof IOException ? "IO_ERROR" : "ERROR", System.nanoTime() - start);
+            log.warn("Fail to call target broker operation={} method={} url={}. Error details {}", operation.key(), request.method(), location(request.url()), e.toString());
+            throw e;
+        }
+        long elapsed = System.nanoTime() - start;
+        record(operation, String.valueOf(response.code()), elapsed);
+        if (isLogged()) {
+            log.debug("Target broker call operation={} method={} url={} status={} durationMs={}{}",
+                    operation.key(), request.method(), location(request.url()), response.code(), TimeUnit.NANOSECONDS.toMillis(elapsed), details(operation, request, response));
+        }
+        return response;
+    }
+
+    private void record(OsbOperation operation, String status, long elapsedNanos) {
+        Timer.builder("broker.filter.target.requests")
+                .description("Target broker calls")
+                .tag("operation", operation.key())
+                .tag("status", status)
+                .register(registry)
+                .record(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private boolean isLogged() {
+        return detail != Detail.NONE && log.isDebugEnabled() && (sampleRate >= 1 || random.getAsDouble() < sampleRate);
+    }
+
+    private String details(OsbOperation operation, Request request, Response response) throws IOException {
+        if (detail == Detail.BASIC) {
+            return "";
+        }
+        StringBuilder details = new StringBuilder();
+        details.append(System.lineSeparator()).append("request headers: ").append(redact(request.headers()))
+                .append(System.lineSeparator()).append("response headers: ").append(redact(response.headers()));
+        if (detail == Detail.BODY) {
+            boolean omitted = request.url().encodedPath().contains("/service_bindings/");
+            details.append(System.lineSeparator()).append("request body: ").append(omitted ? "<omitted>" : requestBody(request))
+                    .append(System.lineSeparator()).append("response body: ").append(omitted ? "<omitted>" : responseBody(response));
+        }
+        return details.toString();
+    }
+
+    private String requestBody(Request request) throws IOException {
+        if (request.body() == null) {
+            return "";
+        }
+        if (request.body().isOneShot() || request.body().isDuplex()) {
+            return "<omitted>";
+        }
+        Buffer buffer = new Buffer();
+        request.body().writeTo(buffer);
+        return redact(buffer.readUtf8(Math.min(buffer.size(), maxBodySize)));
+    }
+
+    private String responseBody(Response response) throws IOException {
+        if (response.body() == null) {
+            return "";
+        }
+        return redact(response.peekBody(maxBodySize).string());
+    }
+
+    static String redact(Headers headers) {
+        StringBuilder redacted = new StringBuilder("{");
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i);
+            redacted.append(i == 0 ? "" : ", ").append(name).append('=')
+                    .append(REDACTED_HEADERS.contains(name.toLowerCase(Locale.ROOT)) ? REDACTED : headers.value(i));
+        }
+        return redacted.append('}').toString();
+    }
+
+    static String redact(String body) {
+        return SENSITIVE_JSON_VALUE.matcher(body).replaceAll("$1\"" + REDACTED + "\"");
+    }
+
+    /*
+    Query parameters are left out of logged urls.
+     */
+    private static String location(HttpUrl url) {
+        return url.scheme() + "://" + url.host() + ":" + url.port() + url.encodedPath();
+    }
+
+}
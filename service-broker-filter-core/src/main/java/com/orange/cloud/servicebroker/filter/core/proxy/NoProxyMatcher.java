@@ -0,0 +1,208 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Tells which hosts are reached directly rather than through the configured HTTP proxy, from NO_PROXY style rules.
+ * <p>
+ * Rules are comma (or space) separated, each being either {@code *} to bypass the proxy for all hosts, an IP address,
+ * a CIDR block (e.g. {@code 10.0.0.0/8}), or a domain name, which also matches its subdomains ({@code example.org},
+ * {@code .example.org} and {@code *.example.org} are equivalent). Rules are compiled once: host names are matched with
+ * one hash lookup per label, IP addresses against the CIDR blocks. Host names are never resolved.
+ */
+public final class NoProxyMatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(NoProxyMatcher.class);
+
+    private static final Pattern IPV4 = Pattern.compile("\\d{1,3}(\\.\\d{1,3}){3}");
+
+    private static final NoProxyMatcher NONE = new NoProxyMatcher(false, new HashSet<>(), new ArrayList<>());
+
+    private final boolean all;
+
+    private final Set<String> domains;
+
+    private final List<Block> blocks;
+
+    private NoProxyMatcher(boolean all, Set<String> domains, List<Block> blocks) {
+        this.all = all;
+        this.domains = domains;
+        this.blocks = blocks;
+    }
+
+    /**
+     * @return a matcher sending all hosts through the proxy
+     */
+    public static NoProxyMatcher none() {
+        return NONE;
+    }
+
+    /**
+     * @param rules NO_PROXY style rules, may be null or empty
+     */
+    public static NoProxyMatcher compile(String rules) {
+        if (rules == null || rules.trim().isEmpty()) {
+            return NONE;
+        }
+        boolean all = false;
+        Set<String> domains = new HashSet<>();
+        List<Block> blocks = new ArrayList<>();
+        for (String rule : rules.split("[,\\s]+")) {
+            String value = rule.trim().toLowerCase(Locale.ROOT);
+            if (value.isEmpty()) {
+                continue;
+            }
+            if (value.equals("*")) {
+                all = true;
+            } else if (value.contains("/") || isIpLiteral(value)) {
+                Block block = Block.parse(value);
+                if (block != null) {
+                    blocks.add(block);
+                }
+            } else {
+                domains.add(value.startsWith("*.") ? value.substring(2) : value.startsWith(".") ? value.substring(1) : value);
+            }
+        }
+        return new NoProxyMatcher(all, domains, blocks);
+    }
+
+    /**
+     * @param host a host name or IP address, as found in a URL
+     * @return true when the host should be reached without proxy
+     */
+    public boolean matches(String host) {
+        if (all) {
+            return true;
+        }
+        if (host == null || host.isEmpty()) {
+            return false;
+        }
+        String value = host.toLowerCase(Locale.ROOT);
+        if (value.startsWith("[") && value.endsWith("]")) {
+            value = value.substring(1, value.length() - 1);
+        }
+        if (isIpLiteral(value)) {
+            byte[] address = literalAddress(value);
+            if (address != null) {
+                for (Block block : blocks) {
+                    if (block.contains(address)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+        if (value.endsWith(".")) {
+            value = value.substring(0, value.length() - 1);
+        }
+        int index = 0;
+        while (true) {
+            if (domains.contains(value.substring(index))) {
+                return true;
+            }
+            int dot = value.indexOf('.', index);
+            if (dot < 0) {
+                return false;
+            }
+            index = dot + 1;
+        }
+    }
+
+    public boolean isEmpty() {
+        return !all && domains.isEmpty() && blocks.isEmpty();
+    }
+
+    private static boolean isIpLiteral(String value) {
+        return value.indexOf(':') >= 0 || IPV4.matcher(value).matches();
+    }
+
+    /*
+    Only called on IP literals, which InetAddress parses without any name resolution.
+     */
+    private static byte[] literalAddress(String value) {
+        try {
+            return InetAddress.getByName(value).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+
+    private static final class Block {
+
+        private final byte[] network;
+
+        private final int prefixLength;
+
+        private Block(byte[] network, int prefixLength) {
+            this.network = network;
+            this.prefixLength = prefixLength;
+        }
+
+        static Block parse(String value) {
+            int slash = value.indexOf('/');
+            String address = slash < 0 ? value : value.substring(0, slash);
+            byte[] network = isIpLiteral(address) ? literalAddress(address) : null;
+            if (network == null) {
+                log.warn("Ignoring invalid no proxy rule {}", value);
+                return null;
+            }
+            try {
+                int prefixLength = slash < 0 ? network.length * 8 : Integer.parseInt(value.substring(slash + 1));
+                if (prefixLength < 0 || prefixLength > network.length * 8) {
+                    throw new NumberFormatException(value);
+                }
+                return new Block(network, prefixLength);
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring invalid no proxy rule {}", value);
+                return null;
+            }
+        }
+
+        boolean contains(byte[] address) {
+            if (address.length != network.length) {
+                return false;
+            }
+            int fullBytes = prefixLength / 8;
+            for (int i = 0; i < fullBytes; i++) {
+                if (address[i] != network[i]) {
+                    return false;
+                }
+            }
+            int remainingBits = prefixLength % 8;
+            if (remainingBits == 0) {
+                return true;
+            }
+            int mask = 0xff << (8 - remainingBits);
+            return (address[fullBytes] & mask) == (network[fullBytes] & mask);
+        }
+
+    }
+
+}
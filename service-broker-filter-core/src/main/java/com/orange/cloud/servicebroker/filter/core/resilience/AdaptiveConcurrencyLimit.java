@@ -0,0 +1,143 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrency limit learnt from observed latency, in the style of the gradient limit of Netflix concurrency-limits.
+ * <p>
+ * A long term latency average estimates the latency without queuing, a short term one the current latency. While the
+ * current latency stays within a tolerance of the long term one, the limit grows by a small queue allowance. As latency
+ * increases, the limit shrinks proportionally to the latency gradient. Dropped requests, e.g. failing as a downstream
+ * is overloaded, shrink the limit multiplicatively. The limit only grows while requests actually use it.
+ */
+public class AdaptiveConcurrencyLimit {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveConcurrencyLimit.class);
+
+    static final double SHORT_RTT_SMOOTHING = 0.1;
+
+    static final double LONG_RTT_SMOOTHING = 0.002;
+
+    static final double LIMIT_SMOOTHING = 0.2;
+
+    static final double BACKOFF_RATIO = 0.9;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double tolerance;
+
+    private final Counter rejections;
+
+    private double limit;
+
+    private double shortRttNanos = -1;
+
+    private double longRttNanos = -1;
+
+    private int inFlight;
+
+    /**
+     * @param initialLimit concurrency limit until latency is observed
+     * @param minLimit     the limit never shrinks below
+     * @param maxLimit     the limit never grows above
+     * @param tolerance    latency increase tolerated before shrinking the limit, e.g. 1.5 for 50%
+     * @param registry     where to publish limit, in flight and rejection metrics
+     */
+    public AdaptiveConcurrencyLimit(int initialLimit, int minLimit, int maxLimit, double tolerance, MeterRegistry registry) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tolerance = Math.max(1, tolerance);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        Gauge.builder("broker.filter.concurrency.limit", this, AdaptiveConcurrencyLimit::getLimit)
+                .description("Learnt limit of concurrent OSB requests")
+                .register(registry);
+        Gauge.builder("broker.filter.concurrency.in-flight", this, AdaptiveConcurrencyLimit::getInFlight)
+                .description("OSB requests in flight")
+                .register(registry);
+        this.rejections = Counter.builder("broker.filter.concurrency.rejected")
+                .description("OSB requests shed as the concurrency limit was reached")
+                .register(registry);
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return true when the request may proceed, and must then be completed with {@link #release(long, boolean)}
+     */
+    public boolean tryAcquire() {
+        synchronized (this) {
+            if (inFlight < (int) limit) {
+                inFlight++;
+                return true;
+            }
+        }
+        rejections.increment();
+        return false;
+    }
+
+    /**
+     * @param rttNanos how long the request took
+     * @param dropped  whether the request failed because of overload, its latency is then not representative
+     */
+    public synchronized void release(long rttNanos, boolean dropped) {
+        int observedInFlight = inFlight;
+        inFlight--;
+        if (dropped) {
+            limit = Math.max(minLimit, limit * BACKOFF_RATIO);
+            return;
+        }
+        if (shortRttNanos < 0) {
+            shortRttNanos = rttNanos;
+            longRttNanos = rttNanos;
+            return;
+        }
+        shortRttNanos = shortRttNanos * (1 - SHORT_RTT_SMOOTHING) + rttNanos * SHORT_RTT_SMOOTHING;
+        longRttNanos = longRttNanos * (1 - LONG_RTT_SMOOTHING) + rttNanos * LONG_RTT_SMOOTHING;
+        if (longRttNanos > 2 * shortRttNanos) {
+            // latency went back to normal after an overload, converge faster than the long term smoothing would
+            longRttNanos *= 0.95;
+        }
+        if (observedInFlight < limit / 2) {
+            return;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / shortRttNanos));
+        double queueAllowance = Math.sqrt(limit);
+        double newLimit = limit * (1 - LIMIT_SMOOTHING) + (limit * gradient + queueAllowance) * LIMIT_SMOOTHING;
+        newLimit = Math.min(maxLimit, Math.max(minLimit, newLimit));
+        if ((int) newLimit != (int) limit) {
+            log.debug("Concurrency limit changed from {} to {} (short term latency {}ms, long term {}ms)",
+                    (int) limit, (int) newLimit, (long) (shortRttNanos / 1e6), (long) (longRttNanos / 1e6));
+        }
+        limit = newLimit;
+    }
+
+}
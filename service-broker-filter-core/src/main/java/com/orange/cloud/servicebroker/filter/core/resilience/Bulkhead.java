@@ -0,0 +1,105 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.resilience;
+
+import com.orange.cloud.servicebroker.filter.core.deadline.DeadlineContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds the number of concurrent calls of one {@link OsbOperation}, so that a slow operation cannot hold all request
+ * threads. Calls beyond the bound wait in a bounded queue for at most a max wait time, then are rejected.
+ */
+public class Bulkhead {
+
+    private final OsbOperation operation;
+
+    private final int maxConcurrent;
+
+    private final int maxQueued;
+
+    private final Duration maxWait;
+
+    private final Semaphore permits;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final Counter rejections;
+
+    public Bulkhead(OsbOperation operation, int maxConcurrent, int maxQueued, Duration maxWait, MeterRegistry registry) {
+        this.operation = operation;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.maxQueued = Math.max(0, maxQueued);
+        this.maxWait = maxWait;
+        this.permits = new Semaphore(this.maxConcurrent, true);
+        Gauge.builder("broker.filter.bulkhead.active", this, bulkhead -> bulkhead.maxConcurrent - bulkhead.permits.availablePermits())
+                .description("Target broker calls in flight")
+                .tag("operation", operation.key())
+                .register(registry);
+        Gauge.builder("broker.filter.bulkhead.queued", queued, AtomicInteger::get)
+                .description("Target broker calls waiting for a bulkhead permit")
+                .tag("operation", operation.key())
+                .register(registry);
+        this.rejections = Counter.builder("broker.filter.bulkhead.rejected")
+                .description("Target broker calls rejected as too many calls of the same operation were in flight")
+                .tag("operation", operation.key())
+                .register(registry);
+    }
+
+    /**
+     * Waits for a permit, to be released once the call completed. Waits no longer than the current request deadline.
+     *
+     * @throws TargetBrokerUnavailableException when the queue is full or no permit was released in time
+     */
+    public void acquire() {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            throw rejected();
+        }
+        try {
+            if (!permits.tryAcquire(DeadlineContext.remaining(maxWait).toNanos(), TimeUnit.NANOSECONDS)) {
+                throw rejected();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw rejected();
+        } finally {
+            queued.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    private TargetBrokerUnavailableException rejected() {
+        rejections.increment();
+        return new TargetBrokerUnavailableException(String.format("Too many %s requests in progress on the target broker (max %d), please retry later.",
+                operation.key(), maxConcurrent), Duration.ofSeconds(1));
+    }
+
+}
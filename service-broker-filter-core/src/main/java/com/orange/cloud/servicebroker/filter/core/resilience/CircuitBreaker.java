@@ -0,0 +1,200 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.resilience;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Fails calls to a target broker fast while most of its recent calls failed.
+ * <p>
+ * Outcomes of the last calls are kept in a sliding window. Once the failure rate over the window reaches the threshold,
+ * the circuit opens and calls are rejected for the open duration. A single trial call is then let through: the circuit
+ * closes when it succeeds, and opens again otherwise. Calls let through before the circuit opened may still complete
+ * meanwhile: only the trial call decides.
+ */
+public class CircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED,
+        HALF_OPEN,
+        OPEN
+    }
+
+    private final String target;
+
+    private final boolean[] failedCalls;
+
+    private final int minimumCalls;
+
+    private final double failureRateThreshold;
+
+    private final Duration openDuration;
+
+    private final LongSupplier nanoClock;
+
+    private final Counter rejections;
+
+    private State state = State.CLOSED;
+
+    private int recordedCalls;
+
+    private int failures;
+
+    private int next;
+
+    private long openedAt;
+
+    private boolean trialInFlight;
+
+    /**
+     * @param target               the target broker, e.g. its URL origin
+     * @param windowSize           number of last calls the failure rate is computed over
+     * @param minimumCalls         number of calls recorded before the circuit may open
+     * @param failureRateThreshold failure rate, between 0 and 1, opening the circuit
+     * @param openDuration         how long calls are rejected once the circuit opened
+     * @param registry             where to publish state and rejection metrics
+     */
+    public CircuitBreaker(String target, int windowSize, int minimumCalls, double failureRateThreshold, Duration openDuration, MeterRegistry registry) {
+        this(target, windowSize, minimumCalls, failureRateThreshold, openDuration, registry, System::nanoTime);
+    }
+
+    CircuitBreaker(String target, int windowSize, int minimumCalls, double failureRateThreshold, Duration openDuration, MeterRegistry registry,
+                   LongSupplier nanoClock) {
+        this.target = target;
+        this.failedCalls = new boolean[Math.max(1, windowSize)];
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, failedCalls.length));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDuration = openDuration;
+        this.nanoClock = nanoClock;
+        Gauge.builder("broker.filter.circuit-breaker.state", this, breaker -> breaker.getState().ordinal())
+                .description("Target broker circuit breaker state: 0 closed, 1 half open, 2 open")
+                .tag("target", target)
+                .register(registry);
+        this.rejections = Counter.builder("broker.filter.circuit-breaker.rejected")
+                .description("Target broker calls rejected while the circuit breaker was open")
+                .tag("target", target)
+                .register(registry);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * Lets a call through, to be completed with {@link #onSuccess(boolean)} or {@link #onFailure(boolean)}.
+     *
+     * @return whether the call is the trial call of the half open circuit
+     * @throws TargetBrokerUnavailableException while the circuit is open
+     */
+    public synchronized boolean acquire() {
+        if (state == State.OPEN) {
+            long remainingNanos = openedAt + openDuration.toNanos() - nanoClock.getAsLong();
+            if (remainingNanos > 0) {
+                throw rejected(Duration.ofNanos(remainingNanos));
+            }
+            state = State.HALF_OPEN;
+            trialInFlight = false;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialInFlight) {
+                throw rejected(Duration.ofSeconds(1));
+            }
+            trialInFlight = true;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @param trial what {@link #acquire()} returned for the call
+     */
+    public synchronized void onSuccess(boolean trial) {
+        if (state == State.HALF_OPEN) {
+            if (trial) {
+                close();
+            }
+            return;
+        }
+        record(false);
+    }
+
+    /**
+     * @param trial what {@link #acquire()} returned for the call
+     */
+    public synchronized void onFailure(boolean trial) {
+        if (state == State.HALF_OPEN) {
+            if (trial) {
+                open();
+            }
+            return;
+        }
+        record(true);
+        if (state == State.CLOSED && recordedCalls >= minimumCalls && failures >= failureRateThreshold * recordedCalls) {
+            open();
+        }
+    }
+
+    private void record(boolean failed) {
+        if (state != State.CLOSED) {
+            return;
+        }
+        if (recordedCalls == failedCalls.length) {
+            if (failedCalls[next]) {
+                failures--;
+            }
+        } else {
+            recordedCalls++;
+        }
+        failedCalls[next] = failed;
+        if (failed) {
+            failures++;
+        }
+        next = (next + 1) % failedCalls.length;
+    }
+
+    private void open() {
+        log.warn("Target broker {} is unhealthy, failing calls fast for {} ({} failure(s) over {} call(s))", target, openDuration, failures, recordedCalls);
+        state = State.OPEN;
+        openedAt = nanoClock.getAsLong();
+        trialInFlight = false;
+    }
+
+    private void close() {
+        log.info("Target broker {} is healthy again", target);
+        state = State.CLOSED;
+        recordedCalls = 0;
+        failures = 0;
+        next = 0;
+        trialInFlight = false;
+    }
+
+    private TargetBrokerUnavailableException rejected(Duration retryAfter) {
+        rejections.increment();
+        return new TargetBrokerUnavailableException("Target broker is currently unavailable, please retry later.", retryAfter);
+    }
+
+}
@@ -0,0 +1,78 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.resilience;
+
+import feign.Request;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * Types of OSB requests sent to the target broker, each isolated in its own {@link Bulkhead}.
+ */
+public enum OsbOperation {
+
+    CATALOG,
+    PROVISION,
+    UPDATE,
+    DEPROVISION,
+    LAST_OPERATION,
+    BIND,
+    UNBIND,
+    /*
+    Fetches of a service instance or binding, or any other request.
+     */
+    FETCH;
+
+    /**
+     * @return the operation name used in properties and metrics, e.g. last-operation
+     */
+    public String key() {
+        return name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    public static OsbOperation of(Request request) {
+        return of(request.httpMethod().name(), URI.create(request.url()).getPath());
+    }
+
+    public static OsbOperation of(String method, String path) {
+        if (path.endsWith("/v2/catalog")) {
+            return CATALOG;
+        }
+        if (path.contains("/service_bindings/")) {
+            if ("PUT".equals(method)) {
+                return BIND;
+            }
+            return "DELETE".equals(method) ? UNBIND : FETCH;
+        }
+        if (path.contains("/service_instances/")) {
+            switch (method) {
+                case "PUT":
+                    return PROVISION;
+                case "PATCH":
+                    return UPDATE;
+                case "DELETE":
+                    return DEPROVISION;
+                default:
+                    return path.endsWith("/last_operation") ? LAST_OPERATION : FETCH;
+            }
+        }
+        return FETCH;
+    }
+
+}
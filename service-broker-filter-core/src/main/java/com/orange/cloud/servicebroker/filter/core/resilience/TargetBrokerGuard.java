@@ -0,0 +1,156 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.resilience;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import okhttp3.Interceptor;
+import okhttp3.ResponseBody;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * Guards filtered broker Feign client calls, and streamed OkHttp calls, with a {@link Bulkhead} per {@link OsbOperation} and a {@link CircuitBreaker}
+ * per target broker, so that a hanging target broker neither holds all request threads nor lets provisioning starve
+ * bind and unbind.
+ * <p>
+ * I/O errors and 502, 503 or 504 responses count as failures, other responses are valid target broker answers.
+ */
+public class TargetBrokerGuard {
+
+    private final Map<OsbOperation, Bulkhead> bulkheads = new EnumMap<>(OsbOperation.class);
+
+    private final ConcurrentMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+    private final Function<String, CircuitBreaker> circuitBreakerFactory;
+
+    /**
+     * @param bulkheadFactory       creates the bulkhead of an operation
+     * @param circuitBreakerFactory creates the circuit breaker of a target broker, given its URL origin
+     */
+    public TargetBrokerGuard(Function<OsbOperation, Bulkhead> bulkheadFactory, Function<String, CircuitBreaker> circuitBreakerFactory) {
+        for (OsbOperation operation : OsbOperation.values()) {
+            bulkheads.put(operation, bulkheadFactory.apply(operation));
+        }
+        this.circuitBreakerFactory = circuitBreakerFactory;
+    }
+
+    /**
+     * @param delegate the Feign client performing calls
+     * @return a Feign client guarding calls performed by the delegate
+     */
+    public Client decorate(Client delegate) {
+        return (request, options) -> execute(delegate, request, options);
+    }
+
+    /**
+     * @return an OkHttp interceptor guarding calls of the client it is added to. The bulkhead slot is held until the
+     * response body is closed, as the target broker is still busy while it is streamed.
+     */
+    public Interceptor interceptor() {
+        return chain -> guard(OsbOperation.of(chain.request().method(), chain.request().url().encodedPath()), chain.request().url().uri(),
+                () -> chain.proceed(chain.request()), okhttp3.Response::code, TargetBrokerGuard::releaseOnClose);
+    }
+
+    Response execute(Client delegate, Request request, Request.Options options) throws IOException {
+        return guard(OsbOperation.of(request), URI.create(request.url()), () -> delegate.execute(request, options), Response::status,
+                (response, release) -> {
+                    release.run();
+                    return response;
+                });
+    }
+
+    /*
+    The bulkhead slot is handed over to the returned response, which releases it, unless the call failed.
+     */
+    private <T> T guard(OsbOperation operation, URI uri, GuardedCall<T> call, ToIntFunction<T> status,
+                        BiFunction<T, Runnable, T> releaseOn) throws IOException {
+        Bulkhead bulkhead = bulkheads.get(operation);
+        bulkhead.acquire();
+        boolean handedOver = false;
+        try {
+            CircuitBreaker circuitBreaker = circuitBreakers.computeIfAbsent(uri.getScheme() + "://" + uri.getAuthority(), circuitBreakerFactory);
+            boolean trial = circuitBreaker.acquire();
+            T response;
+            try {
+                response = call.call();
+            } catch (IOException | RuntimeException e) {
+                circuitBreaker.onFailure(trial);
+                throw e;
+            }
+            if (isUnavailable(status.applyAsInt(response))) {
+                circuitBreaker.onFailure(trial);
+            } else {
+                circuitBreaker.onSuccess(trial);
+            }
+            T guarded = releaseOn.apply(response, bulkhead::release);
+            handedOver = true;
+            return guarded;
+        } finally {
+            if (!handedOver) {
+                bulkhead.release();
+            }
+        }
+    }
+
+    private static okhttp3.Response releaseOnClose(okhttp3.Response response, Runnable release) {
+        ResponseBody body = response.body();
+        if (body == null) {
+            release.run();
+            return response;
+        }
+        AtomicBoolean released = new AtomicBoolean();
+        ForwardingSource source = new ForwardingSource(body.source()) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    if (released.compareAndSet(false, true)) {
+                        release.run();
+                    }
+                }
+            }
+        };
+        return response.newBuilder()
+                .body(ResponseBody.create(body.contentType(), body.contentLength(), Okio.buffer(source)))
+                .build();
+    }
+
+    private static boolean isUnavailable(int status) {
+        return status == 502 || status == 503 || status == 504;
+    }
+
+    @FunctionalInterface
+    private interface GuardedCall<T> {
+        T call() throws IOException;
+    }
+
+}
@@ -0,0 +1,42 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.resilience;
+
+import java.time.Duration;
+
+/**
+ * Thrown instead of calling the target broker while it is deemed unhealthy, or while too many calls of the same
+ * operation are in flight. Answered with a 503 status and a Retry-After header.
+ */
+public class TargetBrokerUnavailableException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public TargetBrokerUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return how long the platform should wait before retrying
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+
+}
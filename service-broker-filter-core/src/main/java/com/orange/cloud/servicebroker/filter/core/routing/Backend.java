@@ -0,0 +1,91 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.routing;
+
+import com.orange.cloud.servicebroker.filter.core.service.mapper.CatalogMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.ServiceInstanceBindingRequestMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.ServiceInstanceRequestMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * A target broker fronted by this filter, among several ones, with the mappers between its catalog and requests
+ * and the ones exposed to the platform.
+ */
+public class Backend {
+
+    private final String name;
+
+    private final String url;
+
+    private final String authorization;
+
+    private final CatalogMapper catalogMapper;
+
+    private final ServiceInstanceRequestMapper serviceInstanceRequestMapper;
+
+    private final ServiceInstanceBindingRequestMapper serviceInstanceBindingRequestMapper;
+
+    public Backend(String name, String url, String user, String password, CatalogMapper catalogMapper,
+                   ServiceInstanceRequestMapper serviceInstanceRequestMapper, ServiceInstanceBindingRequestMapper serviceInstanceBindingRequestMapper) {
+        this.name = name;
+        this.url = url;
+        this.authorization = basicAuthorization(user, password);
+        this.catalogMapper = catalogMapper;
+        this.serviceInstanceRequestMapper = serviceInstanceRequestMapper;
+        this.serviceInstanceBindingRequestMapper = serviceInstanceBindingRequestMapper;
+    }
+
+    public static String basicAuthorization(String user, String password) {
+        return "Basic " + Base64.getEncoder().encodeToString((user + ":" + password).getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * @return the Authorization header value of requests to this backend
+     */
+    public String getAuthorization() {
+        return authorization;
+    }
+
+    public CatalogMapper getCatalogMapper() {
+        return catalogMapper;
+    }
+
+    public ServiceInstanceRequestMapper getServiceInstanceRequestMapper() {
+        return serviceInstanceRequestMapper;
+    }
+
+    public ServiceInstanceBindingRequestMapper getServiceInstanceBindingRequestMapper() {
+        return serviceInstanceBindingRequestMapper;
+    }
+
+    @Override
+    public String toString() {
+        return "Backend{name='" + name + "', url='" + url + "'}";
+    }
+
+}
@@ -0,0 +1,64 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.routing;
+
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Holds the backend the current thread calls, so that the filtered broker Feign clients send requests to it,
+ * and so that filters may apply backend specific policies.
+ */
+public final class BackendContext {
+
+    private static final ThreadLocal<Backend> CURRENT = new ThreadLocal<>();
+
+    private BackendContext() {
+    }
+
+    /**
+     * @return the backend the current thread calls, empty when not routing requests
+     */
+    public static Optional<Backend> current() {
+        return Optional.ofNullable(CURRENT.get());
+    }
+
+    /**
+     * Performs a call within the context of a backend.
+     *
+     * @param backend the backend to call, the call is performed without backend context when null
+     * @param call    the call, typically one or more filtered broker Feign client calls
+     */
+    public static <T> T call(Backend backend, Supplier<T> call) {
+        if (backend == null) {
+            return call.get();
+        }
+        Backend previous = CURRENT.get();
+        CURRENT.set(backend);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.routing;
+
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Sends filtered broker requests to the backend of the current {@link BackendContext}, with its credentials.
+ * Requests performed without backend context are authenticated with the default target broker credentials.
+ */
+public class BackendRequestInterceptor implements RequestInterceptor {
+
+    private final String defaultAuthorization;
+
+    public BackendRequestInterceptor(String defaultAuthorization) {
+        this.defaultAuthorization = defaultAuthorization;
+    }
+
+    @Override
+    public void apply(RequestTemplate template) {
+        Backend backend = BackendContext.current().orElse(null);
+        if (backend == null) {
+            template.header(HttpHeaders.AUTHORIZATION, defaultAuthorization);
+            return;
+        }
+        template.target(backend.getUrl());
+        template.header(HttpHeaders.AUTHORIZATION, backend.getAuthorization());
+    }
+
+}
@@ -0,0 +1,33 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.routing;
+
+/**
+ * Resolves the backend offering a service or plan, as exposed in the aggregated catalog.
+ */
+public interface BackendRouter {
+
+    /**
+     * @param serviceDefinitionId a service id as exposed to the platform, possibly null
+     * @param planId              a plan id as exposed to the platform, possibly null
+     * @return the backend offering the service, or else the plan
+     * @throws org.springframework.cloud.servicebroker.exception.ServiceDefinitionDoesNotExistException when no backend offers them
+     */
+    Backend route(String serviceDefinitionId, String planId);
+
+}
@@ -0,0 +1,324 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.routing;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+
+/**
+ * Balances requests sent to a target broker URL across its replicas, picking the least loaded of two randomly
+ * chosen replicas, where load is the latency EWMA weighted by in flight requests.
+ * <p>
+ * Replicas failing consecutive requests (I/O errors or 502, 503, 504 responses) are ejected for a growing period,
+ * after which a single request probes them back in: only its failure extends the ejection. When all replicas are
+ * ejected, requests are sent to the one ejected first rather than failed. Requests failing to connect are retried once
+ * on another replica, since nothing was sent yet.
+ * <p>
+ * Only the scheme, host and port of requests are replaced: replica URLs with a path are rejected.
+ */
+public class ReplicaLoadBalancer implements Interceptor {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaLoadBalancer.class);
+
+    private final Map<String, List<Replica>> replicasByOrigin = new HashMap<>();
+
+    private final long decayNanos;
+
+    private final int failuresBeforeEjection;
+
+    private final Duration ejectionTime;
+
+    private final Duration maxEjectionTime;
+
+    private final LongSupplier nanoClock;
+
+    /**
+     * @param replicas               replica URLs of each balanced target broker URL, without path
+     * @param decay                  time after which a latency sample weighs about a third in the latency EWMA
+     * @param failuresBeforeEjection consecutive failures ejecting a replica
+     * @param ejectionTime           first ejection period, doubled on each failed probe
+     * @param maxEjectionTime        max ejection period
+     * @param meterRegistry          where to publish per replica metrics
+     */
+    public ReplicaLoadBalancer(Map<URL, List<URL>> replicas, Duration decay, int failuresBeforeEjection,
+                               Duration ejectionTime, Duration maxEjectionTime, MeterRegistry meterRegistry) {
+        this(replicas, decay, failuresBeforeEjection, ejectionTime, maxEjectionTime, meterRegistry, System::nanoTime);
+    }
+
+    ReplicaLoadBalancer(Map<URL, List<URL>> replicas, Duration decay, int failuresBeforeEjection,
+                        Duration ejectionTime, Duration maxEjectionTime, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.decayNanos = Math.max(1, decay.toNanos());
+        this.failuresBeforeEjection = Math.max(1, failuresBeforeEjection);
+        this.ejectionTime = ejectionTime;
+        this.maxEjectionTime = maxEjectionTime;
+        this.nanoClock = nanoClock;
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : new SimpleMeterRegistry();
+        replicas.forEach((url, replicaUrls) -> {
+            if (url == null || replicaUrls == null || replicaUrls.isEmpty()) {
+                return;
+            }
+            HttpUrl target = HttpUrl.get(url.toString());
+            List<Replica> pool = replicaUrls.stream()
+                    .map(ReplicaLoadBalancer::replicaUrl)
+                    .map(replicaUrl -> new Replica(replicaUrl, target, registry))
+                    .collect(Collectors.toList());
+            replicasByOrigin.put(origin(target), Collections.unmodifiableList(pool));
+            log.info("Balancing requests to {} across {} replica(s)", origin(target), pool.size());
+        });
+    }
+
+    private static HttpUrl replicaUrl(URL url) {
+        HttpUrl replicaUrl = HttpUrl.get(url.toString());
+        if (!"/".equals(replicaUrl.encodedPath()) || replicaUrl.encodedQuery() != null) {
+            throw new IllegalArgumentException(String.format("Replica URL %s must not have a path nor a query: requests keep the target broker URL path", url));
+        }
+        return replicaUrl;
+    }
+
+    public boolean isEmpty() {
+        return replicasByOrigin.isEmpty();
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        List<Replica> pool = replicasByOrigin.get(origin(request.url()));
+        if (pool == null) {
+            return chain.proceed(request);
+        }
+        Choice choice = choose(pool, null);
+        try {
+            return proceed(chain, request, choice);
+        } catch (ConnectException e) {
+            Choice other = choose(pool, choice.replica);
+            if (other.replica == choice.replica) {
+                throw e;
+            }
+            log.warn("Fail to connect to replica {}, retrying on replica {}. Error details {}", choice.replica.name, other.replica.name, e.toString());
+            return proceed(chain, request, other);
+        }
+    }
+
+    private Response proceed(Chain chain, Request request, Choice choice) throws IOException {
+        Replica replica = choice.replica;
+        HttpUrl url = request.url().newBuilder()
+                .scheme(replica.url.scheme())
+                .host(replica.url.host())
+                .port(replica.url.port())
+                .build();
+        long start = nanoClock.getAsLong();
+        replica.inFlight.incrementAndGet();
+        try {
+            Response response = chain.proceed(request.newBuilder().url(url).build());
+            completed(choice, start, !isUnavailable(response.code()));
+            return response;
+        } catch (IOException | RuntimeException e) {
+            completed(choice, start, false);
+            throw e;
+        } finally {
+            replica.inFlight.decrementAndGet();
+        }
+    }
+
+    private void completed(Choice choice, long start, boolean success) {
+        long now = nanoClock.getAsLong();
+        choice.replica.completed(now - start, success, choice.probe, now);
+    }
+
+    /*
+    Ejected replicas due for a probe take precedence, so that they are probed back in even under low traffic. When
+    all replicas are ejected, the request sent to the one ejected first only probes it if it may claim the probe.
+     */
+    private Choice choose(List<Replica> pool, Replica excluded) {
+        long now = nanoClock.getAsLong();
+        List<Replica> available = new ArrayList<>(pool.size());
+        for (Replica replica : pool) {
+            if (replica == excluded) {
+                continue;
+            }
+            if (replica.isEjected()) {
+                if (replica.claimProbe(now)) {
+                    log.info("Probing ejected replica {}", replica.name);
+                    return new Choice(replica, true);
+                }
+                continue;
+            }
+            available.add(replica);
+        }
+        if (available.isEmpty()) {
+            Replica fallback = pool.stream()
+                    .filter(replica -> replica != excluded)
+                    .min((r1, r2) -> Long.compare(r1.ejectedUntil, r2.ejectedUntil))
+                    .orElse(excluded);
+            return new Choice(fallback, fallback.claimProbe(now));
+        }
+        if (available.size() == 1) {
+            return new Choice(available.get(0), false);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(available.size());
+        int second = random.nextInt(available.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        Replica r1 = available.get(first);
+        Replica r2 = available.get(second);
+        return new Choice(r1.cost() <= r2.cost() ? r1 : r2, false);
+    }
+
+    private static boolean isUnavailable(int code) {
+        return code == 502 || code == 503 || code == 504;
+    }
+
+    private static String origin(HttpUrl url) {
+        return url.scheme() + "://" + url.host() + ":" + url.port();
+    }
+
+    private static final class Choice {
+
+        final Replica replica;
+
+        final boolean probe;
+
+        Choice(Replica replica, boolean probe) {
+            this.replica = replica;
+            this.probe = probe;
+        }
+
+    }
+
+    final class Replica {
+
+        final HttpUrl url;
+
+        final String name;
+
+        final AtomicInteger inFlight = new AtomicInteger();
+
+        private final AtomicBoolean probing = new AtomicBoolean();
+
+        private final Timer successes;
+
+        private final Timer failures;
+
+        private volatile double latencyNanos = -1;
+
+        private long lastUpdate;
+
+        private int consecutiveFailures;
+
+        private int ejections;
+
+        private volatile long ejectedUntil;
+
+        Replica(HttpUrl url, HttpUrl target, MeterRegistry registry) {
+            this.url = url;
+            this.name = url.host() + ":" + url.port();
+            Tags tags = Tags.of("target", target.host(), "replica", name);
+            this.successes = Timer.builder("broker.filter.replicas.requests")
+                    .description("Requests sent to a target broker replica")
+                    .tags(tags).tag("outcome", "success")
+                    .register(registry);
+            this.failures = Timer.builder("broker.filter.replicas.requests")
+                    .description("Requests sent to a target broker replica")
+                    .tags(tags).tag("outcome", "failure")
+                    .register(registry);
+            Gauge.builder("broker.filter.replicas.latency", this, replica -> Math.max(0, replica.latencyNanos) / 1e6d)
+                    .description("Latency EWMA of a target broker replica, in milliseconds")
+                    .tags(tags)
+                    .register(registry);
+            Gauge.builder("broker.filter.replicas.in-flight", inFlight, AtomicInteger::get)
+                    .description("Requests in flight to a target broker replica")
+                    .tags(tags)
+                    .register(registry);
+            Gauge.builder("broker.filter.replicas.ejected", this, replica -> replica.isEjected() ? 1 : 0)
+                    .description("Whether a target broker replica is currently ejected")
+                    .tags(tags)
+                    .register(registry);
+        }
+
+        double cost() {
+            return (Math.max(0, latencyNanos) + 1) * (inFlight.get() + 1);
+        }
+
+        synchronized boolean isEjected() {
+            return ejections > 0;
+        }
+
+        synchronized boolean claimProbe(long now) {
+            return now - ejectedUntil >= 0 && probing.compareAndSet(false, true);
+        }
+
+        synchronized void completed(long elapsedNanos, boolean success, boolean probe, long now) {
+            (success ? successes : failures).record(elapsedNanos, TimeUnit.NANOSECONDS);
+            if (probe) {
+                probing.set(false);
+            }
+            if (success) {
+                // time based decay, so that a replica seldom chosen does not keep a stale latency
+                double weight = latencyNanos < 0 ? 0 : Math.exp(-(double) (now - lastUpdate) / decayNanos);
+                latencyNanos = latencyNanos * weight + elapsedNanos * (1 - weight);
+                lastUpdate = now;
+                consecutiveFailures = 0;
+                if (ejections > 0) {
+                    ejections = 0;
+                    log.info("Replica {} is back in", name);
+                }
+                return;
+            }
+            consecutiveFailures++;
+            boolean failedProbe = probe && ejections > 0;
+            if (failedProbe || (ejections == 0 && consecutiveFailures >= failuresBeforeEjection)) {
+                Duration period = ejectionTime.multipliedBy(1L << Math.min(ejections, 16));
+                if (period.compareTo(maxEjectionTime) > 0) {
+                    period = maxEjectionTime;
+                }
+                ejections++;
+                ejectedUntil = now + period.toNanos();
+                log.warn("Ejecting replica {} for {} after {} consecutive failure(s)", name, period, consecutiveFailures);
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,170 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import com.orange.cloud.servicebroker.filter.core.routing.Backend;
+import com.orange.cloud.servicebroker.filter.core.routing.BackendRouter;
+import com.orange.cloud.servicebroker.filter.core.startup.StartupCheck;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import org.springframework.cloud.servicebroker.exception.ServiceBrokerInvalidParametersException;
+import org.springframework.cloud.servicebroker.exception.ServiceDefinitionDoesNotExistException;
+import org.springframework.cloud.servicebroker.model.catalog.Catalog;
+import org.springframework.cloud.servicebroker.model.catalog.Plan;
+import org.springframework.cloud.servicebroker.model.catalog.ServiceDefinition;
+import org.springframework.cloud.servicebroker.service.CatalogService;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Aggregates the catalogs of several backends into a single catalog, and routes requests to the backend offering
+ * the requested service or plan, through an index rebuilt each time a backend catalog changes.
+ * <p>
+ * The aggregated catalog is only served once all backend catalogs are available: a partial catalog would make the
+ * platform remove the services of the missing backends.
+ */
+public class AggregatedCatalogService implements CatalogService, BackendRouter, StartupCheck {
+
+    private static final Logger log = LoggerFactory.getLogger(AggregatedCatalogService.class);
+
+    private final Map<Backend, RemoteCatalogService> catalogServices;
+
+    private volatile Aggregate current;
+
+    public AggregatedCatalogService(Map<Backend, RemoteCatalogService> catalogServices) {
+        this.catalogServices = new LinkedHashMap<>(catalogServices);
+    }
+
+    public void start() {
+        catalogServices.values().forEach(RemoteCatalogService::start);
+    }
+
+    public void stop() {
+        catalogServices.values().forEach(RemoteCatalogService::stop);
+    }
+
+    @Override
+    public Mono<Catalog> getCatalog() {
+        return Flux.fromIterable(catalogServices.values())
+                .concatMap(RemoteCatalogService::getCatalog)
+                .collectList()
+                .map(catalogs -> aggregate(catalogs).catalog);
+    }
+
+    @Override
+    public Mono<ServiceDefinition> getServiceDefinition(String serviceId) {
+        return getCatalog().flatMap(catalog -> Mono.justOrEmpty(catalog.getServiceDefinitions().stream()
+                .filter(serviceDefinition -> serviceDefinition.getId().equals(serviceId))
+                .findFirst()));
+    }
+
+    @Override
+    public Backend route(String serviceDefinitionId, String planId) {
+        if (serviceDefinitionId == null && planId == null) {
+            throw new ServiceBrokerInvalidParametersException("service_id or plan_id is required to route the request to a backend");
+        }
+        Aggregate aggregate = current;
+        if (aggregate == null) {
+            getCatalog().block();
+            aggregate = current;
+        }
+        Backend backend = serviceDefinitionId == null ? null : aggregate.backendsByServiceId.get(serviceDefinitionId);
+        if (backend == null && planId != null) {
+            backend = aggregate.backendsByPlanId.get(planId);
+        }
+        if (backend == null) {
+            throw new ServiceDefinitionDoesNotExistException(serviceDefinitionId);
+        }
+        return backend;
+    }
+
+    /*
+    Backend catalogs are only mapped again when they changed: unchanged instances mean an unchanged aggregate.
+     */
+    private synchronized Aggregate aggregate(List<Catalog> catalogs) {
+        Aggregate aggregate = current;
+        if (aggregate != null && aggregate.isAggregateOf(catalogs)) {
+            return aggregate;
+        }
+        aggregate = new Aggregate(new ArrayList<>(catalogServices.keySet()), catalogs);
+        current = aggregate;
+        log.info("Aggregated catalog of {} backend(s) with {} service(s)", catalogs.size(), aggregate.catalog.getServiceDefinitions().size());
+        return aggregate;
+    }
+
+    @Override
+    public String name() {
+        return "catalog";
+    }
+
+    @Override
+    public Mono<?> check() {
+        return getCatalog();
+    }
+
+    private static final class Aggregate {
+
+        private final List<Catalog> catalogs;
+
+        private final Catalog catalog;
+
+        private final Map<String, Backend> backendsByServiceId = new HashMap<>();
+
+        private final Map<String, Backend> backendsByPlanId = new HashMap<>();
+
+        private Aggregate(List<Backend> backends, List<Catalog> catalogs) {
+            this.catalogs = catalogs;
+            List<ServiceDefinition> serviceDefinitions = new ArrayList<>();
+            for (int i = 0; i < backends.size(); i++) {
+                Backend backend = backends.get(i);
+                for (ServiceDefinition serviceDefinition : catalogs.get(i).getServiceDefinitions()) {
+                    if (backendsByServiceId.putIfAbsent(serviceDefinition.getId(), backend) != null) {
+                        log.warn("Ignoring service {} of {}: already offered by {}", serviceDefinition.getId(), backend, backendsByServiceId.get(serviceDefinition.getId()));
+                        continue;
+                    }
+                    serviceDefinition.getPlans().stream()
+                            .map(Plan::getId)
+                            .forEach(planId -> backendsByPlanId.putIfAbsent(planId, backend));
+                    serviceDefinitions.add(serviceDefinition);
+                }
+            }
+            this.catalog = new Catalog(serviceDefinitions);
+        }
+
+        private boolean isAggregateOf(List<Catalog> others) {
+            if (others.size() != catalogs.size()) {
+                return false;
+            }
+            for (int i = 0; i < catalogs.size(); i++) {
+                if (others.get(i) != catalogs.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Learns how long asynchronous service instance operations usually take per plan and operation type, so as to hint the
+ * platform, with a Retry-After header, when to poll last operation again.
+ * <p>
+ * Durations are tracked from the async provision, update or deprovision response to the first terminal last
+ * operation state, and averaged per plan id and operation type with an exponentially weighted moving average, so that
+ * estimates follow backend slowdowns, and a quick deprovision does not shorten provision estimates. Operations started
+ * before a restart are not measured, and, their type being unknown, get hints from the shortest estimate of their plan.
+ */
+public class AsyncOperationDurationEstimator {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncOperationDurationEstimator.class);
+
+    public enum OperationType {
+        PROVISION,
+        UPDATE,
+        DEPROVISION
+    }
+
+    /*
+    Operations not completed after this duration are considered abandoned, and forgotten.
+     */
+    static final Duration MAX_TRACKED_DURATION = Duration.ofDays(1);
+
+    private final Map<String, StartedOperation> started = new ConcurrentHashMap<>();
+
+    private final Map<String, Double> averageSecondsByPlanOperation = new ConcurrentHashMap<>();
+
+    private final double alpha;
+
+    private final Duration minRetryAfter;
+
+    private final Duration maxRetryAfter;
+
+    private final Clock clock;
+
+    /**
+     * @param alpha         weight of the latest duration in the plan average, between 0 and 1
+     * @param minRetryAfter lower bound of the hints
+     * @param maxRetryAfter upper bound of the hints
+     */
+    public AsyncOperationDurationEstimator(double alpha, Duration minRetryAfter, Duration maxRetryAfter) {
+        this(alpha, minRetryAfter, maxRetryAfter, Clock.systemUTC());
+    }
+
+    AsyncOperationDurationEstimator(double alpha, Duration minRetryAfter, Duration maxRetryAfter, Clock clock) {
+        this.alpha = alpha;
+        this.minRetryAfter = minRetryAfter;
+        this.maxRetryAfter = maxRetryAfter;
+        this.clock = clock;
+    }
+
+    /**
+     * Records that an asynchronous operation started on a service instance.
+     */
+    public void started(String serviceInstanceId, String planId, OperationType type) {
+        Instant now = clock.instant();
+        started.values().removeIf(operation -> operation.startedAt.plus(MAX_TRACKED_DURATION).isBefore(now));
+        started.put(serviceInstanceId, new StartedOperation(planId, type, now));
+    }
+
+    /**
+     * Records that the asynchronous operation of a service instance reached a terminal state.
+     */
+    public void completed(String serviceInstanceId) {
+        StartedOperation operation = started.remove(serviceInstanceId);
+        if (operation == null || operation.planId == null) {
+            return;
+        }
+        double seconds = Duration.between(operation.startedAt, clock.instant()).toMillis() / 1000.0;
+        double average = averageSecondsByPlanOperation.merge(key(operation.planId, operation.type), seconds,
+                (previous, latest) -> previous + alpha * (latest - previous));
+        log.debug("Async {} on plan {} completed in {}s, average is now {}s", operation.type, operation.planId, seconds, average);
+    }
+
+    /**
+     * @param serviceInstanceId a service instance with an operation in progress
+     * @param planId            the plan of the service instance, as sent by the platform, possibly null
+     * @return how long the platform should wait before polling last operation again
+     */
+    public Duration retryAfter(String serviceInstanceId, String planId) {
+        StartedOperation operation = started.get(serviceInstanceId);
+        Double averageSeconds;
+        if (operation != null && operation.planId != null) {
+            averageSeconds = averageSecondsByPlanOperation.get(key(operation.planId, operation.type));
+        } else {
+            averageSeconds = planId == null ? null : shortestAverageSeconds(planId);
+        }
+        if (averageSeconds == null) {
+            return minRetryAfter;
+        }
+        Duration estimate = Duration.ofMillis((long) (averageSeconds * 1000));
+        Duration remaining = operation == null ? estimate : estimate.minus(Duration.between(operation.startedAt, clock.instant()));
+        if (remaining.compareTo(minRetryAfter) < 0) {
+            return minRetryAfter;
+        }
+        return remaining.compareTo(maxRetryAfter) > 0 ? maxRetryAfter : remaining;
+    }
+
+    private Double shortestAverageSeconds(String planId) {
+        Double shortest = null;
+        for (OperationType type : OperationType.values()) {
+            Double averageSeconds = averageSecondsByPlanOperation.get(key(planId, type));
+            if (averageSeconds != null && (shortest == null || averageSeconds < shortest)) {
+                shortest = averageSeconds;
+            }
+        }
+        return shortest;
+    }
+
+    private static String key(String planId, OperationType type) {
+        return type + ":" + planId;
+    }
+
+    private static final class StartedOperation {
+
+        private final String planId;
+
+        private final OperationType type;
+
+        private final Instant startedAt;
+
+        private StartedOperation(String planId, OperationType type, Instant startedAt) {
+            this.planId = planId;
+            this.type = type;
+            this.startedAt = startedAt;
+        }
+
+    }
+
+}
@@ -0,0 +1,104 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceAppBindingResponse;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
+
+import java.time.Instant;
+
+/**
+ * State of an asynchronous service instance binding, as served by binding last_operation and fetch binding endpoints.
+ */
+public class BindingOperation {
+
+    private final String bindingId;
+
+    private final String operationId;
+
+    private final OperationState state;
+
+    private final String description;
+
+    private final CreateServiceInstanceAppBindingResponse response;
+
+    private final Instant updatedAt;
+
+    private BindingOperation(String bindingId, String operationId, OperationState state, String description,
+                             CreateServiceInstanceAppBindingResponse response, Instant updatedAt) {
+        this.bindingId = bindingId;
+        this.operationId = operationId;
+        this.state = state;
+        this.description = description;
+        this.response = response;
+        this.updatedAt = updatedAt;
+    }
+
+    static BindingOperation inProgress(String bindingId, String operationId, Instant now) {
+        return new BindingOperation(bindingId, operationId, OperationState.IN_PROGRESS, "binding in progress", null, now);
+    }
+
+    BindingOperation succeeded(CreateServiceInstanceAppBindingResponse response, Instant now) {
+        return new BindingOperation(bindingId, operationId, OperationState.SUCCEEDED, "binding succeeded", response, now);
+    }
+
+    BindingOperation failed(String description, Instant now) {
+        return new BindingOperation(bindingId, operationId, OperationState.FAILED, description, null, now);
+    }
+
+    public String getBindingId() {
+        return bindingId;
+    }
+
+    public String getOperationId() {
+        return operationId;
+    }
+
+    public OperationState getState() {
+        return state;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * @return the filtered broker binding response, only set once the binding succeeded
+     */
+    public CreateServiceInstanceAppBindingResponse getResponse() {
+        return response;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public boolean isCompleted() {
+        return state != OperationState.IN_PROGRESS;
+    }
+
+    @Override
+    public String toString() {
+        return "BindingOperation{" +
+                "bindingId='" + bindingId + '\'' +
+                ", operationId='" + operationId + '\'' +
+                ", state=" + state +
+                ", description='" + description + '\'' +
+                '}';
+    }
+}
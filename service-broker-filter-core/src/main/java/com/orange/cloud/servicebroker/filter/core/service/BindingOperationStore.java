@@ -0,0 +1,139 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceAppBindingResponse;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * In-memory store of asynchronous service instance binding operations, keyed by binding id.
+ * <p>
+ * Completed operations are kept for a retention period, long enough for the platform to poll the binding
+ * last_operation and fetch the binding, then evicted. Operations still in progress after a max duration (e.g. whose
+ * completion was lost) are marked failed, so that the platform stops polling them and a new bind may be attempted.
+ * Operations are lost on restart: the platform then gets a binding not found and handles it as a failed binding.
+ */
+public class BindingOperationStore {
+
+    private static final Logger log = LoggerFactory.getLogger(BindingOperationStore.class);
+
+    private final Map<String, BindingOperation> operations = new ConcurrentHashMap<>();
+
+    static final Duration DEFAULT_MAX_DURATION = Duration.ofMinutes(15);
+
+    private final Duration retention;
+
+    private final Duration maxDuration;
+
+    private final Clock clock;
+
+    public BindingOperationStore(Duration retention) {
+        this(retention, DEFAULT_MAX_DURATION);
+    }
+
+    /**
+     * @param retention   how long completed operations are kept
+     * @param maxDuration how long an operation may stay in progress before being marked failed
+     */
+    public BindingOperationStore(Duration retention, Duration maxDuration) {
+        this(retention, maxDuration, Clock.systemUTC());
+    }
+
+    BindingOperationStore(Duration retention, Duration maxDuration, Clock clock) {
+        this.retention = retention;
+        this.maxDuration = maxDuration;
+        this.clock = clock;
+    }
+
+    /**
+     * Registers a new in progress binding operation, unless one is already in progress or succeeded for this binding.
+     *
+     * @param bindingId the binding id
+     * @param onStart   invoked with the new operation, only when one is registered
+     * @return the registered operation, or the existing one
+     */
+    public BindingOperation start(String bindingId, Consumer<BindingOperation> onStart) {
+        evictExpired();
+        AtomicReference<BindingOperation> started = new AtomicReference<>();
+        BindingOperation operation = operations.compute(bindingId, (id, existing) -> {
+            if (existing != null && existing.getState() != OperationState.FAILED) {
+                return existing;
+            }
+            started.set(BindingOperation.inProgress(id, UUID.randomUUID().toString(), clock.instant()));
+            return started.get();
+        });
+        if (started.get() != null) {
+            log.debug("Started {}", operation);
+            onStart.accept(operation);
+        } else {
+            log.debug("Reusing {}", operation);
+        }
+        return operation;
+    }
+
+    public void succeeded(BindingOperation operation, CreateServiceInstanceAppBindingResponse response) {
+        complete(operation, operation.succeeded(response, clock.instant()));
+    }
+
+    public void failed(BindingOperation operation, String description) {
+        complete(operation, operation.failed(description, clock.instant()));
+    }
+
+    private void complete(BindingOperation operation, BindingOperation completed) {
+        // a newer operation may have replaced this one in between, e.g. after an unbind then a new bind
+        if (operations.replace(operation.getBindingId(), operation, completed)) {
+            log.debug("Completed {}", completed);
+        }
+    }
+
+    public Optional<BindingOperation> get(String bindingId) {
+        evictExpired();
+        return Optional.ofNullable(operations.get(bindingId));
+    }
+
+    public void remove(String bindingId) {
+        operations.remove(bindingId);
+    }
+
+    private void evictExpired() {
+        Instant now = clock.instant();
+        Instant expiry = now.minus(retention);
+        Instant maxStart = now.minus(maxDuration);
+        operations.values().removeIf(operation -> operation.isCompleted() && operation.getUpdatedAt().isBefore(expiry));
+        for (BindingOperation operation : operations.values()) {
+            if (!operation.isCompleted() && operation.getUpdatedAt().isBefore(maxStart)) {
+                log.warn("Binding operation {} still in progress after {}, marking it as failed", operation.getOperationId(), maxDuration);
+                failed(operation, "Binding operation did not complete within " + maxDuration);
+            }
+        }
+    }
+
+}
@@ -22,6 +22,8 @@ import com.orange.cloud.servicebroker.filter.core.config.FilteredBrokerFeignConf
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.cloud.servicebroker.model.catalog.Catalog;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -37,4 +39,12 @@ public interface CatalogServiceClient {
 
     @RequestMapping(value = "/v2/catalog", method = RequestMethod.GET)
     Catalog getCatalog(@RequestHeader(value = OsbConstants.X_Broker_API_Version, defaultValue = OsbConstants.X_Broker_API_Version_Value) String apiVersion);
+
+    /**
+     * Conditional catalog fetch: when the catalog still matches the given entity tag, the filtered broker may answer
+     * 304 Not Modified, surfaced as a {@link feign.FeignException} with status 304.
+     */
+    @RequestMapping(value = "/v2/catalog", method = RequestMethod.GET)
+    ResponseEntity<Catalog> getCatalogIfModified(@RequestHeader(value = OsbConstants.X_Broker_API_Version, defaultValue = OsbConstants.X_Broker_API_Version_Value) String apiVersion,
+                                                 @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String entityTag);
 }
\ No newline at end of file
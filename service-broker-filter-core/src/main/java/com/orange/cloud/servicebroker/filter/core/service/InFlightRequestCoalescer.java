@@ -0,0 +1,188 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces identical requests: a request arriving while another one with the same key is in flight waits for,
+ * and shares, the result of the in flight one instead of calling the target broker again.
+ * <p>
+ * Successful results are also kept for a short time, so that platform retries of a request that just completed
+ * (e.g. after the platform timed out waiting for it) return immediately. Failures are never cached.
+ * The retention of a result may also depend on the result itself, a zero retention only sharing it with the
+ * requests that waited for it.
+ */
+public class InFlightRequestCoalescer {
+
+    private static final Logger log = LoggerFactory.getLogger(InFlightRequestCoalescer.class);
+
+    private final Map<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    private final Map<String, CompletedRequest> completed = new ConcurrentHashMap<>();
+
+    private final Duration completedTtl;
+
+    private final Clock clock;
+
+    public InFlightRequestCoalescer(Duration completedTtl) {
+        this(completedTtl, Clock.systemUTC());
+    }
+
+    InFlightRequestCoalescer(Duration completedTtl, Clock clock) {
+        this.completedTtl = completedTtl;
+        this.clock = clock;
+    }
+
+    /**
+     * Performs the request, unless an identical request is in flight or just completed.
+     *
+     * @param key     identifies identical requests
+     * @param request the request to perform
+     * @param <T>     the request result type
+     * @return the result of the request, possibly shared with identical requests
+     */
+    public <T> T coalesce(String key, Supplier<T> request) {
+        return coalesce(key, request, result -> completedTtl);
+    }
+
+    /**
+     * Performs the request, unless an identical request is in flight or just completed.
+     *
+     * @param key       identifies identical requests
+     * @param request   the request to perform
+     * @param resultTtl how long a given result is kept once the request completed, not kept when zero
+     * @param <T>       the request result type
+     * @return the result of the request, possibly shared with identical requests
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T coalesce(String key, Supplier<T> request, Function<? super T, Duration> resultTtl) {
+        CompletedRequest recent = recentlyCompleted(key);
+        if (recent != null) {
+            log.debug("Returning recently completed result for request {}", key);
+            return (T) recent.result;
+        }
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            log.debug("Request {} already in flight, waiting for its result", key);
+            return (T) await(existing);
+        }
+        try {
+            // an identical request may have completed between the lookup above and putIfAbsent
+            recent = recentlyCompleted(key);
+            if (recent != null) {
+                log.debug("Returning recently completed result for request {}", key);
+                mine.complete(recent.result);
+                return (T) recent.result;
+            }
+            T result = request.get();
+            evictExpired();
+            Duration ttl = resultTtl.apply(result);
+            if (ttl.isZero() || ttl.isNegative()) {
+                completed.remove(key);
+            } else {
+                completed.put(key, new CompletedRequest(result, clock.instant().plus(ttl)));
+            }
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /**
+     * Waits for the in flight request with the given key, if any, to complete, whatever its outcome.
+     *
+     * @param key identifies the request
+     */
+    public void awaitInFlight(String key) {
+        CompletableFuture<Object> existing = inFlight.get(key);
+        if (existing != null) {
+            log.debug("Waiting for in flight request {} to complete", key);
+            existing.handle((result, t) -> null).join();
+        }
+    }
+
+    /**
+     * Forgets the recently completed result of a request, e.g. when a subsequent request made it stale.
+     *
+     * @param key identifies the request
+     */
+    public void invalidate(String key) {
+        completed.remove(key);
+    }
+
+    private static Object await(CompletableFuture<Object> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private CompletedRequest recentlyCompleted(String key) {
+        CompletedRequest recent = completed.get(key);
+        if (recent == null) {
+            return null;
+        }
+        if (recent.expiresAt.isAfter(clock.instant())) {
+            return recent;
+        }
+        completed.remove(key, recent);
+        return null;
+    }
+
+    private void evictExpired() {
+        Instant now = clock.instant();
+        completed.values().removeIf(completedRequest -> !completedRequest.expiresAt.isAfter(now));
+    }
+
+    private static class CompletedRequest {
+
+        private final Object result;
+
+        private final Instant expiresAt;
+
+        private CompletedRequest(Object result, Instant expiresAt) {
+            this.result = result;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
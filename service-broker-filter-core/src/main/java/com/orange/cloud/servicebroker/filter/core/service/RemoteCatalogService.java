@@ -0,0 +1,267 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.orange.cloud.servicebroker.filter.core.routing.Backend;
+import com.orange.cloud.servicebroker.filter.core.routing.BackendContext;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.CatalogMapper;
+import com.orange.cloud.servicebroker.filter.core.startup.StartupCheck;
+import feign.FeignException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import org.springframework.cloud.servicebroker.model.catalog.Catalog;
+import org.springframework.cloud.servicebroker.model.catalog.ServiceDefinition;
+import org.springframework.cloud.servicebroker.service.CatalogService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves the catalog of the filtered broker, refreshed in the background rather than fetched once while the
+ * application context starts.
+ * <p>
+ * Refreshes are conditional fetches (If-None-Match), and the {@link CatalogMapper} only runs when the fetched catalog
+ * changed. On refresh failures, the last good catalog keeps being served. Each new catalog is saved into a local snapshot
+ * file, restored on startup so that the catalog is served even when the filtered broker is not yet reachable.
+ * <p>
+ * Catalog requests received before the first catalog is available share the in-flight fetch.
+ */
+public class RemoteCatalogService implements CatalogService, StartupCheck {
+
+    private static final Logger log = LoggerFactory.getLogger(RemoteCatalogService.class);
+
+    static final String ENTITY_TAG = "etag";
+
+    static final String CATALOG = "catalog";
+
+    private final CatalogServiceClient client;
+
+    private final Backend backend;
+
+    private final CatalogMapper catalogMapper;
+
+    private final Duration refreshInterval;
+
+    private final Path snapshotFile;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final Mono<Catalog> fetch;
+
+    private volatile Version current;
+
+    /*
+    Set while the current catalog is the one restored from the snapshot, and not yet refreshed.
+     */
+    private volatile boolean restored;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param refreshInterval interval between background refreshes, refresh is disabled when zero
+     * @param snapshotFile    local snapshot file of the last fetched catalog, snapshot is disabled when null
+     */
+    public RemoteCatalogService(CatalogServiceClient client, CatalogMapper catalogMapper, Duration refreshInterval, Path snapshotFile) {
+        this(client, null, catalogMapper, refreshInterval, snapshotFile);
+    }
+
+    /**
+     * @param backend the backend to fetch the catalog from, the default target broker when null
+     */
+    public RemoteCatalogService(CatalogServiceClient client, Backend backend, CatalogMapper catalogMapper, Duration refreshInterval, Path snapshotFile) {
+        this.client = client;
+        this.backend = backend;
+        this.catalogMapper = catalogMapper;
+        this.refreshInterval = refreshInterval;
+        this.snapshotFile = snapshotFile;
+        this.fetch = Mono.fromCallable(this::refresh)
+                .doOnSuccess(catalog -> restored = false)
+                .subscribeOn(Schedulers.boundedElastic())
+                // share the in-flight fetch between concurrent subscribers, without caching its outcome
+                .cache(fetched -> Duration.ZERO, t -> Duration.ZERO, () -> Duration.ZERO);
+        restoreSnapshot();
+    }
+
+    public void start() {
+        if (refreshInterval.isZero() || refreshInterval.isNegative()) {
+            return;
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "catalog-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // a catalog restored from the snapshot may be stale: refresh it right away
+        long initialDelay = restored ? 0 : refreshInterval.toMillis();
+        executor.scheduleWithFixedDelay(this::scheduledRefresh, initialDelay, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void scheduledRefresh() {
+        try {
+            fetch.block();
+        } catch (RuntimeException e) {
+            log.warn("Fail to refresh catalog from filtered broker, serving last good catalog. Error details {}", e.toString());
+        }
+    }
+
+    /**
+     * Fetches the catalog if it changed since the last fetch.
+     *
+     * @return the current mapped catalog
+     */
+    Catalog refresh() {
+        Version previous = current;
+        ResponseEntity<Catalog> response;
+        try {
+            response = BackendContext.call(backend, () -> client.getCatalogIfModified(OsbConstants.X_Broker_API_Version_Value, previous == null ? null : previous.entityTag));
+        } catch (FeignException e) {
+            if (previous != null && e.status() == HttpStatus.NOT_MODIFIED.value()) {
+                log.debug("Catalog not modified since last fetch");
+                return previous.catalog;
+            }
+            throw e;
+        }
+        Catalog fetched = Objects.requireNonNull(response.getBody(), "filtered broker returned an empty catalog");
+        String entityTag = response.getHeaders().getETag();
+        if (previous != null && fetched.equals(previous.fetched)) {
+            log.debug("Catalog unchanged since last fetch");
+            if (!Objects.equals(entityTag, previous.entityTag)) {
+                current = new Version(fetched, entityTag, previous.catalog);
+            }
+            return previous.catalog;
+        }
+        Version fetchedVersion = new Version(fetched, entityTag, catalogMapper.toCatalog(fetched));
+        current = fetchedVersion;
+        log.info("Catalog with {} service(s) fetched from filtered broker{}", fetched.getServiceDefinitions().size(), backend == null ? "" : " " + backend);
+        saveSnapshot(fetchedVersion);
+        return fetchedVersion.catalog;
+    }
+
+    private void restoreSnapshot() {
+        if (snapshotFile == null || !Files.exists(snapshotFile)) {
+            return;
+        }
+        try {
+            JsonNode snapshot = objectMapper.readTree(snapshotFile.toFile());
+            Catalog fetched = objectMapper.treeToValue(snapshot.get(CATALOG), Catalog.class);
+            String entityTag = snapshot.hasNonNull(ENTITY_TAG) ? snapshot.get(ENTITY_TAG).asText() : null;
+            current = new Version(fetched, entityTag, catalogMapper.toCatalog(fetched));
+            restored = true;
+            log.info("Catalog with {} service(s) restored from snapshot {}", fetched.getServiceDefinitions().size(), snapshotFile);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Fail to restore catalog snapshot {}, ignoring it. Error details {}", snapshotFile, e.toString());
+        }
+    }
+
+    private void saveSnapshot(Version version) {
+        if (snapshotFile == null) {
+            return;
+        }
+        try {
+            ObjectNode snapshot = objectMapper.createObjectNode();
+            snapshot.put(ENTITY_TAG, version.entityTag);
+            snapshot.set(CATALOG, objectMapper.valueToTree(version.fetched));
+            Path absoluteFile = snapshotFile.toAbsolutePath();
+            Files.createDirectories(absoluteFile.getParent());
+            Path temporaryFile = Files.createTempFile(absoluteFile.getParent(), absoluteFile.getFileName().toString(), ".tmp");
+            objectMapper.writeValue(temporaryFile.toFile(), snapshot);
+            Files.move(temporaryFile, absoluteFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Fail to save catalog snapshot {}. Error details {}", snapshotFile, e.toString());
+        }
+    }
+
+    @Override
+    public Mono<Catalog> getCatalog() {
+        return Mono.defer(() -> {
+            Version version = current;
+            return version != null ? Mono.just(version.catalog) : fetch;
+        });
+    }
+
+    @Override
+    public Mono<ServiceDefinition> getServiceDefinition(String serviceId) {
+        return getCatalog().flatMap(catalog -> Mono.justOrEmpty(catalog.getServiceDefinitions().stream()
+                .filter(serviceDefinition -> serviceDefinition.getId().equals(serviceId))
+                .findFirst()));
+    }
+
+    @Override
+    public String name() {
+        return "catalog";
+    }
+
+    /**
+     * Fetches the catalog when it was restored from the snapshot, so that the check does not pass on stale data while
+     * the target broker is reachable. The snapshot is still served when it is not.
+     */
+    @Override
+    public Mono<?> check() {
+        return Mono.defer(() -> {
+            if (!restored) {
+                return getCatalog();
+            }
+            return fetch.onErrorResume(t -> {
+                log.warn("Fail to refresh catalog restored from snapshot {}, serving it until the filtered broker is reachable. Error details {}",
+                        snapshotFile, t.toString());
+                return getCatalog();
+            });
+        });
+    }
+
+    /**
+     * A catalog as fetched from the filtered broker, with its entity tag and its mapped catalog.
+     */
+    private static final class Version {
+
+        private final Catalog fetched;
+
+        private final String entityTag;
+
+        private final Catalog catalog;
+
+        private Version(Catalog fetched, String entityTag, Catalog catalog) {
+            this.fetched = fetched;
+            this.entityTag = entityTag;
+            this.catalog = catalog;
+        }
+
+    }
+
+}
@@ -18,22 +18,40 @@
 package com.orange.cloud.servicebroker.filter.core.service;
 
 import com.orange.cloud.servicebroker.filter.core.filters.ServiceInstanceBindingFilterRunner;
+import com.orange.cloud.servicebroker.filter.core.routing.Backend;
+import com.orange.cloud.servicebroker.filter.core.routing.BackendContext;
+import com.orange.cloud.servicebroker.filter.core.routing.BackendRouter;
 import com.orange.cloud.servicebroker.filter.core.service.mapper.ServiceInstanceBindingRequestMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.servicebroker.exception.ServiceInstanceBindingDoesNotExistException;
 import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceAppBindingResponse;
 import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingRequest;
 import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingResponse;
 import org.springframework.cloud.servicebroker.model.binding.DeleteServiceInstanceBindingRequest;
 import org.springframework.cloud.servicebroker.model.binding.DeleteServiceInstanceBindingResponse;
+import org.springframework.cloud.servicebroker.model.binding.GetLastServiceBindingOperationRequest;
+import org.springframework.cloud.servicebroker.model.binding.GetLastServiceBindingOperationResponse;
+import org.springframework.cloud.servicebroker.model.binding.GetServiceInstanceAppBindingResponse;
+import org.springframework.cloud.servicebroker.model.binding.GetServiceInstanceBindingRequest;
+import org.springframework.cloud.servicebroker.model.binding.GetServiceInstanceBindingResponse;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
 import org.springframework.cloud.servicebroker.service.ServiceInstanceBindingService;
 import org.springframework.context.annotation.Profile;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 /**
  * Basic implementation to proxy requests to create and delete service instance bindings.
+ * <p>
+ * When a {@link BindingOperationStore} is available and the platform accepts incomplete operations, bindings are
+ * performed in the background and their state is served by the binding last_operation and fetch binding endpoints.
  *
  * @author Sebastien Bortolussi
  */
@@ -41,12 +59,20 @@ import org.springframework.stereotype.Component;
 @Component
 public class ServiceInstanceBindingServiceProxy implements ServiceInstanceBindingService {
 
+    private static final Logger log = LoggerFactory.getLogger(ServiceInstanceBindingServiceProxy.class);
+
     private final ServiceInstanceBindingServiceClient client;
 
     private final ServiceInstanceBindingFilterRunner filterRunner;
 
     private final ServiceInstanceBindingRequestMapper mapper;
 
+    private BindingOperationStore bindingOperationStore;
+
+    private InFlightRequestCoalescer requestCoalescer = new InFlightRequestCoalescer(Duration.ofSeconds(30));
+
+    private BackendRouter backendRouter;
+
     @Autowired
     public ServiceInstanceBindingServiceProxy(ServiceInstanceBindingServiceClient client, ServiceInstanceBindingFilterRunner filterRunner, ServiceInstanceBindingRequestMapper mapper) {
         this.client = client;
@@ -54,23 +80,141 @@ public class ServiceInstanceBindingServiceProxy implements ServiceInstanceBindin
         this.mapper = mapper;
     }
 
+    @Autowired(required = false)
+    public void setBindingOperationStore(BindingOperationStore bindingOperationStore) {
+        this.bindingOperationStore = bindingOperationStore;
+    }
+
+    /**
+     * Overrides how duplicate bind and unbind requests (e.g. platform retries) are coalesced.
+     */
+    @Autowired(required = false)
+    public void setRequestCoalescer(InFlightRequestCoalescer requestCoalescer) {
+        this.requestCoalescer = requestCoalescer;
+    }
+
+    /**
+     * When set, requests are routed to the backend offering the requested service, instead of the target broker.
+     * Filters run within the backend context, see {@link BackendContext#current()}.
+     */
+    @Autowired(required = false)
+    public void setBackendRouter(BackendRouter backendRouter) {
+        this.backendRouter = backendRouter;
+    }
+
+    private Backend route(String serviceDefinitionId, String planId) {
+        return backendRouter == null ? null : backendRouter.route(serviceDefinitionId, planId);
+    }
+
+    private ServiceInstanceBindingRequestMapper mapper(Backend backend) {
+        return backend == null ? mapper : backend.getServiceInstanceBindingRequestMapper();
+    }
+
     @Override
     public Mono<CreateServiceInstanceBindingResponse> createServiceInstanceBinding(CreateServiceInstanceBindingRequest request) {
-        preBinding(request);
-        final CreateServiceInstanceBindingRequest req = mapper.map(request);
-        final ResponseEntity<CreateServiceInstanceAppBindingResponse> response = client.createServiceInstanceBinding(req.getServiceInstanceId(), req.getBindingId(), OsbConstants.X_Broker_API_Version_Value,req);
-        postBinding(request, response.getBody());
-        return Mono.just(response.getBody());
+        if (bindingOperationStore != null && request.isAsyncAccepted()) {
+            return Mono.just(createServiceInstanceBindingAsync(request));
+        }
+        return Mono.just(coalescedBind(request));
+    }
+
+    private CreateServiceInstanceBindingResponse createServiceInstanceBindingAsync(CreateServiceInstanceBindingRequest request) {
+        // a retried request gets the operation already started for this binding, unless it failed
+        final BindingOperation operation = bindingOperationStore.start(request.getBindingId(), started ->
+                Mono.fromCallable(() -> coalescedBind(request))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .subscribe(response -> bindingOperationStore.succeeded(started, response),
+                                t -> {
+                                    log.error("Fail to bind {}. Error details {}", request.getBindingId(), t.toString(), t);
+                                    bindingOperationStore.failed(started, t.getMessage());
+                                }));
+        return CreateServiceInstanceAppBindingResponse.builder()
+                .async(true)
+                .operation(operation.getOperationId())
+                .build();
+    }
+
+    private CreateServiceInstanceAppBindingResponse coalescedBind(CreateServiceInstanceBindingRequest request) {
+        requestCoalescer.invalidate(unbindKey(request.getBindingId()));
+        return requestCoalescer.coalesce(bindKey(request.getBindingId()), () -> bind(request));
+    }
+
+    private CreateServiceInstanceAppBindingResponse bind(CreateServiceInstanceBindingRequest request) {
+        final Backend backend = route(request.getServiceDefinitionId(), request.getPlanId());
+        return BackendContext.call(backend, () -> {
+            preBinding(request);
+            final CreateServiceInstanceBindingRequest req = mapper(backend).map(request);
+            final ResponseEntity<CreateServiceInstanceAppBindingResponse> response = client.createServiceInstanceBinding(req.getServiceInstanceId(), req.getBindingId(), OsbConstants.X_Broker_API_Version_Value,req);
+            postBinding(request, response.getBody());
+            return response.getBody();
+        });
+    }
+
+    @Override
+    public Mono<GetLastServiceBindingOperationResponse> getLastOperation(GetLastServiceBindingOperationRequest request) {
+        final BindingOperation operation = asyncBindingOperation(request.getBindingId());
+        return Mono.just(GetLastServiceBindingOperationResponse.builder()
+                .operationState(operation.getState())
+                .description(operation.getDescription())
+                .build());
+    }
+
+    @Override
+    public Mono<GetServiceInstanceBindingResponse> getServiceInstanceBinding(GetServiceInstanceBindingRequest request) {
+        final BindingOperation operation = asyncBindingOperation(request.getBindingId());
+        if (operation.getState() != OperationState.SUCCEEDED) {
+            throw new ServiceInstanceBindingDoesNotExistException(request.getBindingId());
+        }
+        final CreateServiceInstanceAppBindingResponse response = operation.getResponse();
+        return Mono.just(GetServiceInstanceAppBindingResponse.builder()
+                .credentials(response.getCredentials())
+                .syslogDrainUrl(response.getSyslogDrainUrl())
+                .volumeMounts(response.getVolumeMounts())
+                .build());
+    }
+
+    /*
+    Without asynchronous bindings, no binding operation is ever tracked: answered as an unknown binding (410 Gone)
+    rather than as a broker error.
+     */
+    private BindingOperation asyncBindingOperation(String bindingId) {
+        if (bindingOperationStore == null) {
+            throw new ServiceInstanceBindingDoesNotExistException(bindingId);
+        }
+        return bindingOperationStore.get(bindingId)
+                .orElseThrow(() -> new ServiceInstanceBindingDoesNotExistException(bindingId));
     }
 
 
     @Override
     public Mono<DeleteServiceInstanceBindingResponse> deleteServiceInstanceBinding(DeleteServiceInstanceBindingRequest request) {
-        preUnbinding(request);
-        final DeleteServiceInstanceBindingRequest req = mapper.map(request);
-        client.deleteServiceInstanceBinding(req.getServiceInstanceId(), req.getBindingId(), req.getServiceDefinitionId(), req.getPlanId(), OsbConstants.X_Broker_API_Version_Value);
-        postUnbinding(request);
-        return Mono.just(DeleteServiceInstanceBindingResponse.builder().build());
+        // orphan mitigation may unbind while the bind is still in flight: let it complete first
+        requestCoalescer.awaitInFlight(bindKey(request.getBindingId()));
+        requestCoalescer.invalidate(bindKey(request.getBindingId()));
+        return Mono.just(requestCoalescer.coalesce(unbindKey(request.getBindingId()), () -> unbind(request)));
+    }
+
+    private DeleteServiceInstanceBindingResponse unbind(DeleteServiceInstanceBindingRequest request) {
+        final Backend backend = route(request.getServiceDefinitionId(), request.getPlanId());
+        BackendContext.call(backend, () -> {
+            preUnbinding(request);
+            final DeleteServiceInstanceBindingRequest req = mapper(backend).map(request);
+            client.deleteServiceInstanceBinding(req.getServiceInstanceId(), req.getBindingId(), req.getServiceDefinitionId(), req.getPlanId(), OsbConstants.X_Broker_API_Version_Value);
+            postUnbinding(request);
+            return null;
+        });
+        if (bindingOperationStore != null) {
+            bindingOperationStore.remove(request.getBindingId());
+        }
+        return DeleteServiceInstanceBindingResponse.builder().build();
+    }
+
+    private static String bindKey(String bindingId) {
+        return "bind:" + bindingId;
+    }
+
+    private static String unbindKey(String bindingId) {
+        return "unbind:" + bindingId;
     }
 
     private void postBinding(CreateServiceInstanceBindingRequest request, CreateServiceInstanceAppBindingResponse response) {
@@ -17,23 +17,32 @@
 
 package com.orange.cloud.servicebroker.filter.core.service;
 
+import com.orange.cloud.servicebroker.filter.core.routing.Backend;
+import com.orange.cloud.servicebroker.filter.core.routing.BackendContext;
+import com.orange.cloud.servicebroker.filter.core.routing.BackendRouter;
 import com.orange.cloud.servicebroker.filter.core.service.mapper.ServiceInstanceRequestMapper;
+import com.orange.cloud.servicebroker.filter.core.web.RetryAfterResponseBodyAdvice;
 import reactor.core.publisher.Mono;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.servicebroker.model.instance.CreateServiceInstanceRequest;
 import org.springframework.cloud.servicebroker.model.instance.CreateServiceInstanceResponse;
 import org.springframework.cloud.servicebroker.model.instance.DeleteServiceInstanceRequest;
 import org.springframework.cloud.servicebroker.model.instance.DeleteServiceInstanceResponse;
 import org.springframework.cloud.servicebroker.model.instance.GetLastServiceOperationRequest;
 import org.springframework.cloud.servicebroker.model.instance.GetLastServiceOperationResponse;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
 import org.springframework.cloud.servicebroker.model.instance.UpdateServiceInstanceRequest;
 import org.springframework.cloud.servicebroker.model.instance.UpdateServiceInstanceResponse;
 import org.springframework.cloud.servicebroker.service.ServiceInstanceService;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+
 /**
  * Basic implementation to proxy requests related to provisioning, updating,
  * and deprovisioning service instances (using {@link <a href="http://projects.spring.io/spring-cloud/spring-cloud.html#spring-cloud-feign">Feign</a>})
@@ -48,37 +57,134 @@ public class ServiceInstanceServiceProxy implements ServiceInstanceService {
 
     private ServiceInstanceRequestMapper mapper;
 
+    /*
+    Concurrent last operation polls for a same service instance share one call to the target broker.
+     */
+    private final InFlightRequestCoalescer lastOperationCoalescer = new InFlightRequestCoalescer(Duration.ZERO);
+
+    /*
+    Optional sub-second cache of in progress last operation states. Terminal states are never cached.
+     */
+    private Duration inProgressTtl = Duration.ZERO;
+
+    private AsyncOperationDurationEstimator durationEstimator;
+
+    private BackendRouter backendRouter;
+
     @Autowired
     public ServiceInstanceServiceProxy(ServiceInstanceServiceClient serviceClient, ServiceInstanceRequestMapper mapper) {
         this.serviceClient = serviceClient;
         this.mapper = mapper;
     }
 
+    @Autowired
+    public void setInProgressTtl(@Value("${broker.filter.last-operation.in-progress-ttl:PT0S}") Duration inProgressTtl) {
+        this.inProgressTtl = inProgressTtl;
+    }
+
+    @Autowired(required = false)
+    public void setDurationEstimator(AsyncOperationDurationEstimator durationEstimator) {
+        this.durationEstimator = durationEstimator;
+    }
+
+    /**
+     * When set, requests are routed to the backend offering the requested service, instead of the target broker.
+     */
+    @Autowired(required = false)
+    public void setBackendRouter(BackendRouter backendRouter) {
+        this.backendRouter = backendRouter;
+    }
+
+    private Backend route(String serviceDefinitionId, String planId) {
+        return backendRouter == null ? null : backendRouter.route(serviceDefinitionId, planId);
+    }
+
+    private ServiceInstanceRequestMapper mapper(Backend backend) {
+        return backend == null ? mapper : backend.getServiceInstanceRequestMapper();
+    }
+
     @Override
     public Mono<CreateServiceInstanceResponse> createServiceInstance(CreateServiceInstanceRequest request) {
-        final CreateServiceInstanceRequest req = mapper.map(request);
-        final ResponseEntity<CreateServiceInstanceResponse> serviceInstanceResponse = serviceClient.createServiceInstance(req.getServiceInstanceId(), req, req.isAsyncAccepted(), OsbConstants.X_Broker_API_Version_Value);
+        final Backend backend = route(request.getServiceDefinitionId(), request.getPlanId());
+        final CreateServiceInstanceRequest req = mapper(backend).map(request);
+        lastOperationCoalescer.invalidate(lastOperationKey(req.getServiceInstanceId()));
+        final ResponseEntity<CreateServiceInstanceResponse> serviceInstanceResponse = BackendContext.call(backend,
+                () -> serviceClient.createServiceInstance(req.getServiceInstanceId(), req, req.isAsyncAccepted(), OsbConstants.X_Broker_API_Version_Value));
+        if (serviceInstanceResponse.getBody() != null && serviceInstanceResponse.getBody().isAsync()) {
+            asyncOperationStarted(req.getServiceInstanceId(), req.getPlanId(), AsyncOperationDurationEstimator.OperationType.PROVISION);
+        }
         return Mono.just(serviceInstanceResponse.getBody());
     }
 
     @Override
     public Mono<GetLastServiceOperationResponse> getLastOperation(GetLastServiceOperationRequest request) {
-        final GetLastServiceOperationRequest req = mapper.map(request);
-        final ResponseEntity<GetLastServiceOperationResponse> response = serviceClient.getServiceInstanceLastOperation(req.getServiceInstanceId(), OsbConstants.X_Broker_API_Version_Value);
+        final Backend backend = route(request.getServiceDefinitionId(), request.getPlanId());
+        final GetLastServiceOperationRequest req = mapper(backend).map(request);
+        final ResponseEntity<GetLastServiceOperationResponse> response = lastOperationCoalescer.coalesce(lastOperationKey(req.getServiceInstanceId()),
+                () -> BackendContext.call(backend, () -> serviceClient.getServiceInstanceLastOperation(req.getServiceInstanceId(), OsbConstants.X_Broker_API_Version_Value)),
+                this::lastOperationTtl);
+        retryAfter(req, response);
         return Mono.just(response.getBody());
     }
 
+    private Duration lastOperationTtl(ResponseEntity<GetLastServiceOperationResponse> response) {
+        return isInProgress(response) ? inProgressTtl : Duration.ZERO;
+    }
+
+    private static boolean isInProgress(ResponseEntity<GetLastServiceOperationResponse> response) {
+        return response.getBody() != null && response.getBody().getState() == OperationState.IN_PROGRESS;
+    }
+
+    /*
+    Passes the target broker Retry-After hint through, or sizes one from the plan async operations usual duration.
+     */
+    private void retryAfter(GetLastServiceOperationRequest req, ResponseEntity<GetLastServiceOperationResponse> response) {
+        String retryAfter = response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER);
+        if (durationEstimator != null) {
+            if (!isInProgress(response)) {
+                durationEstimator.completed(req.getServiceInstanceId());
+            } else if (retryAfter == null) {
+                retryAfter = String.valueOf(durationEstimator.retryAfter(req.getServiceInstanceId(), req.getPlanId()).getSeconds());
+            }
+        }
+        if (retryAfter != null) {
+            RetryAfterResponseBodyAdvice.retryAfter(retryAfter);
+        }
+    }
+
+    private void asyncOperationStarted(String serviceInstanceId, String planId, AsyncOperationDurationEstimator.OperationType type) {
+        if (durationEstimator != null) {
+            durationEstimator.started(serviceInstanceId, planId, type);
+        }
+    }
+
+    private static String lastOperationKey(String serviceInstanceId) {
+        return "last_operation:" + serviceInstanceId;
+    }
+
     @Override
     public Mono<DeleteServiceInstanceResponse> deleteServiceInstance(DeleteServiceInstanceRequest request) {
-        final DeleteServiceInstanceRequest req = mapper.map(request);
-        final ResponseEntity<DeleteServiceInstanceResponse> response = serviceClient.deleteServiceInstance(req.getServiceInstanceId(), req.getServiceDefinitionId(), req.getPlanId(), req.isAsyncAccepted(), OsbConstants.X_Broker_API_Version_Value);
+        final Backend backend = route(request.getServiceDefinitionId(), request.getPlanId());
+        final DeleteServiceInstanceRequest req = mapper(backend).map(request);
+        lastOperationCoalescer.invalidate(lastOperationKey(req.getServiceInstanceId()));
+        final ResponseEntity<DeleteServiceInstanceResponse> response = BackendContext.call(backend,
+                () -> serviceClient.deleteServiceInstance(req.getServiceInstanceId(), req.getServiceDefinitionId(), req.getPlanId(), req.isAsyncAccepted(), OsbConstants.X_Broker_API_Version_Value));
+        if (response.getBody() != null && response.getBody().isAsync()) {
+            asyncOperationStarted(req.getServiceInstanceId(), req.getPlanId(), AsyncOperationDurationEstimator.OperationType.DEPROVISION);
+        }
         return Mono.just(response.getBody());
     }
 
     @Override
     public Mono<UpdateServiceInstanceResponse> updateServiceInstance(UpdateServiceInstanceRequest request) {
-        final UpdateServiceInstanceRequest req = mapper.map(request);
-        final ResponseEntity<UpdateServiceInstanceResponse> response = serviceClient.updateServiceInstance(req.getServiceInstanceId(), req, req.isAsyncAccepted(), OsbConstants.X_Broker_API_Version_Value);
+        final Backend backend = route(request.getServiceDefinitionId(), request.getPlanId());
+        final UpdateServiceInstanceRequest req = mapper(backend).map(request);
+        lastOperationCoalescer.invalidate(lastOperationKey(req.getServiceInstanceId()));
+        final ResponseEntity<UpdateServiceInstanceResponse> response = BackendContext.call(backend,
+                () -> serviceClient.updateServiceInstance(req.getServiceInstanceId(), req, req.isAsyncAccepted(), OsbConstants.X_Broker_API_Version_Value));
+        if (response.getBody() != null && response.getBody().isAsync()) {
+            asyncOperationStarted(req.getServiceInstanceId(), req.getPlanId(), AsyncOperationDurationEstimator.OperationType.UPDATE);
+        }
         return Mono.just(response.getBody());
 
     }
@@ -0,0 +1,77 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service.mapper;
+
+import java.util.stream.Collectors;
+
+import org.springframework.cloud.servicebroker.model.catalog.Catalog;
+import org.springframework.cloud.servicebroker.model.catalog.ServiceDefinition;
+
+/**
+ * Flags bindable service offerings with bindings_retrievable, which platforms require before sending
+ * asynchronous binding requests and polling the binding last_operation.
+ */
+public class RetrievableBindingsCatalogMapper implements CatalogMapper {
+
+    private final CatalogMapper delegate;
+
+    public RetrievableBindingsCatalogMapper(CatalogMapper delegate) {
+        this.delegate = delegate;
+    }
+
+    private ServiceDefinition withRetrievableBindings(ServiceDefinition serviceDefinition) {
+        if (!serviceDefinition.isBindable() || serviceDefinition.isBindingsRetrievable()) {
+            return serviceDefinition;
+        }
+        ServiceDefinition.ServiceDefinitionBuilder serviceDefinitionBuilder = ServiceDefinition.builder()
+            .id(serviceDefinition.getId())
+            .name(serviceDefinition.getName())
+            .description(serviceDefinition.getDescription())
+            .bindable(serviceDefinition.isBindable())
+            .bindingsRetrievable(true)
+            .instancesRetrievable(serviceDefinition.isInstancesRetrievable())
+            .planUpdateable(serviceDefinition.isPlanUpdateable())
+            .plans(serviceDefinition.getPlans());
+        if (serviceDefinition.isAllowContextUpdates() != null) {
+            serviceDefinitionBuilder.allowContextUpdates(serviceDefinition.isAllowContextUpdates());
+        }
+        if (serviceDefinition.getTags() != null) {
+            serviceDefinitionBuilder
+                .tags(serviceDefinition.getTags());
+        }
+        if (serviceDefinition.getRequires() != null) {
+            serviceDefinitionBuilder
+                .requires(serviceDefinition.getRequires());
+        }
+        if (serviceDefinition.getMetadata() != null) {
+            serviceDefinitionBuilder
+                .metadata(serviceDefinition.getMetadata());
+        }
+        return serviceDefinitionBuilder
+            .dashboardClient(serviceDefinition.getDashboardClient())
+            .build();
+    }
+
+    @Override
+    public Catalog toCatalog(Catalog catalog) {
+        return new Catalog(delegate.toCatalog(catalog).getServiceDefinitions()
+                .stream()
+                .map(this::withRetrievableBindings)
+                .collect(Collectors.toList()));
+    }
+}
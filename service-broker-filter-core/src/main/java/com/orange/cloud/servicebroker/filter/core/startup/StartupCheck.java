@@ -0,0 +1,46 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.startup;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * A downstream dependency check run by the {@link StartupRunner} off the main startup thread.
+ * Failed checks are retried with a bounded exponential backoff, unless the failure is not retryable.
+ */
+public interface StartupCheck {
+
+    /**
+     * @return the name the check is reported under in the readiness health details
+     */
+    String name();
+
+    /**
+     * @return a lazy check, completing once the dependency is reachable
+     */
+    Mono<?> check();
+
+    /**
+     * @param t the failure of a check attempt
+     * @return false when retrying cannot succeed, e.g. on bad credentials
+     */
+    default boolean isRetryable(Throwable t) {
+        return true;
+    }
+
+}
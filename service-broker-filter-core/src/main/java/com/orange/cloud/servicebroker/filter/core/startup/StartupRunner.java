@@ -0,0 +1,156 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.startup;
+
+import com.orange.cloud.servicebroker.filter.core.warmup.WarmUpRunner;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.retry.Retry;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs all {@link StartupCheck}s concurrently off the main startup thread, then warms up downstream connections.
+ * <p>
+ * Startup is never blocked by a slow dependency: the liveness probe is UP as soon as the application started, while this
+ * health indicator, included into the readiness group, reports OUT_OF_SERVICE until all checks succeeded and warm-up
+ * completed, and DOWN once a check failed for good.
+ */
+@Profile("!offline-test-without-cf")
+@Component("startup")
+public class StartupRunner implements ApplicationRunner, HealthIndicator {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupRunner.class);
+
+    static final String PENDING = "PENDING";
+
+    static final String UP = "UP";
+
+    @Autowired(required = false)
+    private List<StartupCheck> startupChecks;
+
+    @Autowired(required = false)
+    private WarmUpRunner warmUpRunner;
+
+    @Value("${broker.filter.startup.max-attempts:10}")
+    private int maxAttempts = 10;
+
+    @Value("${broker.filter.startup.min-backoff:PT1S}")
+    private Duration minBackoff = Duration.ofSeconds(1);
+
+    @Value("${broker.filter.startup.max-backoff:PT30S}")
+    private Duration maxBackoff = Duration.ofSeconds(30);
+
+    private final Map<String, String> states = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    private final CompletableFuture<Boolean> completion = new CompletableFuture<>();
+
+    @Override
+    public void run(ApplicationArguments args) {
+        start();
+    }
+
+    /**
+     * Starts all checks in the background, once.
+     *
+     * @return a future completed with true once all checks succeeded and warm-up completed, or false once a check failed
+     */
+    public CompletableFuture<Boolean> start() {
+        if (!started.compareAndSet(false, true)) {
+            return completion;
+        }
+        List<StartupCheck> checks = Optional.ofNullable(startupChecks).orElse(Collections.emptyList());
+        checks.forEach(check -> states.put(check.name(), PENDING));
+        long start = System.nanoTime();
+        Flux.fromIterable(checks)
+                .flatMap(this::run)
+                .all(Boolean::booleanValue)
+                .flatMap(succeeded -> succeeded ? warmUp().thenReturn(true) : Mono.just(false))
+                .subscribe(succeeded -> {
+                    if (succeeded) {
+                        log.info("Startup checks and warm-up completed in {}ms, ready to accept traffic",
+                                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                    } else {
+                        log.error("Startup checks failed, readiness will stay DOWN: {}", states);
+                    }
+                    completion.complete(succeeded);
+                }, completion::completeExceptionally);
+        return completion;
+    }
+
+    private Mono<Boolean> run(StartupCheck check) {
+        return Mono.defer(check::check)
+                .doOnError(t -> log.warn("Startup check {} failed. Error details {}", check.name(), t.toString()))
+                .retryWhen(Retry.backoff(Math.max(maxAttempts - 1, 0), minBackoff)
+                        .maxBackoff(maxBackoff)
+                        .filter(check::isRetryable)
+                        .onRetryExhaustedThrow((spec, signal) -> signal.failure()))
+                .then(Mono.fromCallable(() -> {
+                    states.put(check.name(), UP);
+                    return true;
+                }))
+                .onErrorResume(t -> {
+                    log.error("Fail to run startup check {}. Error details {}", check.name(), t.toString(), t);
+                    states.put(check.name(), t.toString());
+                    return Mono.just(false);
+                });
+    }
+
+    private Mono<Void> warmUp() {
+        if (warmUpRunner == null || !warmUpRunner.isEnabled()) {
+            return Mono.empty();
+        }
+        return Mono.<Void>fromRunnable(warmUpRunner::warmUp).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @Override
+    public Health health() {
+        Health.Builder health;
+        if (!completion.isDone()) {
+            health = Health.outOfService();
+        } else if (!completion.isCompletedExceptionally() && completion.getNow(false)) {
+            health = Health.up();
+        } else {
+            health = Health.down();
+        }
+        return health.withDetails(states).build();
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.warmup;
+
+import com.orange.cloud.servicebroker.filter.core.service.mapper.ServiceInstanceBindingRequestMapper;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingRequest;
+import org.springframework.cloud.servicebroker.model.binding.DeleteServiceInstanceBindingRequest;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exercises the binding request mappers enough for the JIT compiler to compile them before the first OSB requests.
+ */
+@Profile("!offline-test-without-cf")
+@Component
+public class RequestMapperWarmUpTask implements WarmUpTask {
+
+    static final int ITERATIONS = 10_000;
+
+    private final ServiceInstanceBindingRequestMapper mapper;
+
+    @Autowired
+    public RequestMapperWarmUpTask(ServiceInstanceBindingRequestMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    @Override
+    public String name() {
+        return "request mappers";
+    }
+
+    @Override
+    public void warmUp() {
+        CreateServiceInstanceBindingRequest createRequest = CreateServiceInstanceBindingRequest.builder()
+                .serviceInstanceId("warm-up-instance")
+                .bindingId("warm-up-binding")
+                .serviceDefinitionId("warm-up-service")
+                .planId("warm-up-plan")
+                .build();
+        DeleteServiceInstanceBindingRequest deleteRequest = DeleteServiceInstanceBindingRequest.builder()
+                .serviceInstanceId("warm-up-instance")
+                .bindingId("warm-up-binding")
+                .serviceDefinitionId("warm-up-service")
+                .planId("warm-up-plan")
+                .build();
+        for (int i = 0; i < ITERATIONS; i++) {
+            mapper.map(createRequest);
+            mapper.map(deleteRequest);
+        }
+    }
+
+}
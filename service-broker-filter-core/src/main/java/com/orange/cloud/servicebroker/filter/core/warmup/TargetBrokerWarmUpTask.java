@@ -0,0 +1,138 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.warmup;
+
+import com.orange.cloud.servicebroker.filter.core.config.BrokerFilterSettings;
+import com.orange.cloud.servicebroker.filter.core.service.OsbConstants;
+import okhttp3.Call;
+import okhttp3.Callback;
+import okhttp3.Credentials;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Opens pooled connections to the target broker, paying DNS resolution, TCP and TLS handshakes ahead of the first
+ * OSB requests, by concurrently fetching its catalog. Each backend is warmed up, and so is each replica, since the
+ * client calls them directly once balanced.
+ */
+@Profile("!offline-test-without-cf")
+@Component
+public class TargetBrokerWarmUpTask implements WarmUpTask {
+
+    private final OkHttpClient okHttpClient;
+
+    private final BrokerFilterSettings brokerFilterSettings;
+
+    @Value("${broker.filter.warmup.connections:4}")
+    private int connections;
+
+    @Autowired
+    public TargetBrokerWarmUpTask(OkHttpClient okHttpClient, BrokerFilterSettings brokerFilterSettings) {
+        this.okHttpClient = okHttpClient;
+        this.brokerFilterSettings = brokerFilterSettings;
+    }
+
+    @Override
+    public String name() {
+        return "target broker connections";
+    }
+
+    @Override
+    public void warmUp() throws Exception {
+        List<Request> requests = new ArrayList<>();
+        if (brokerFilterSettings.getUrl() != null) {
+            requests.addAll(catalogRequests(brokerFilterSettings.getUrl(), brokerFilterSettings.getReplicas(),
+                    brokerFilterSettings.getUser(), brokerFilterSettings.getPassword()));
+        }
+        for (BrokerFilterSettings.Backend backend : brokerFilterSettings.getBackends()) {
+            requests.addAll(catalogRequests(backend.getUrl(), backend.getReplicas(), backend.getUser(), backend.getPassword()));
+        }
+        CountDownLatch done = new CountDownLatch(requests.size() * connections);
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        List<Call> calls = new ArrayList<>();
+        // concurrent requests, so that as many connections are opened
+        for (Request request : requests) {
+            for (int i = 0; i < connections; i++) {
+                Call call = okHttpClient.newCall(request);
+                calls.add(call);
+                call.enqueue(new Callback() {
+                    @Override
+                    public void onFailure(Call call, IOException e) {
+                        failure.set(e);
+                        done.countDown();
+                    }
+
+                    @Override
+                    public void onResponse(Call call, Response response) {
+                        response.close();
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        if (!done.await(30, TimeUnit.SECONDS)) {
+            calls.forEach(Call::cancel);
+            throw new TimeoutException(String.format("%d of %d catalog request(s) not completed within 30s", done.getCount(), calls.size()));
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    /*
+    A single request to the url when it has no replicas, one request to each replica otherwise.
+     */
+    private static List<Request> catalogRequests(URL url, List<URL> replicas, String user, String password) {
+        HttpUrl catalogUrl = HttpUrl.get(url.toString().replaceAll("/$", "") + "/v2/catalog");
+        List<HttpUrl> urls = new ArrayList<>();
+        if (replicas == null || replicas.isEmpty()) {
+            urls.add(catalogUrl);
+        } else {
+            for (URL replica : replicas) {
+                HttpUrl replicaUrl = HttpUrl.get(replica.toString());
+                urls.add(catalogUrl.newBuilder().scheme(replicaUrl.scheme()).host(replicaUrl.host()).port(replicaUrl.port()).build());
+            }
+        }
+        List<Request> requests = new ArrayList<>();
+        for (HttpUrl requestUrl : urls) {
+            requests.add(new Request.Builder()
+                    .url(requestUrl)
+                    .header("Authorization", Credentials.basic(user, password))
+                    .header(OsbConstants.X_Broker_API_Version, OsbConstants.X_Broker_API_Version_Value)
+                    .build());
+        }
+        return requests;
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.warmup;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+
+/**
+ * Runs all {@link WarmUpTask}s concurrently at startup.
+ * <p>
+ * Run by the {@link com.orange.cloud.servicebroker.filter.core.startup.StartupRunner} once startup checks succeeded,
+ * before the readiness probe reports UP, so that traffic is only routed to warmed up instances.
+ */
+@Profile("!offline-test-without-cf")
+@Component
+public class WarmUpRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(WarmUpRunner.class);
+
+    @Autowired(required = false)
+    private List<WarmUpTask> warmUpTasks;
+
+    @Value("${broker.filter.warmup.enabled:true}")
+    private boolean enabled;
+
+    @Value("${broker.filter.warmup.timeout:PT1M}")
+    private Duration timeout;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Runs all warm-up tasks concurrently, waiting for them to complete at most the warm-up timeout.
+     */
+    public void warmUp() {
+        List<WarmUpTask> tasks = Optional.ofNullable(warmUpTasks).orElse(Collections.emptyList());
+        if (tasks.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size(), runnable -> {
+            Thread thread = new Thread(runnable, "warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<CompletableFuture<Void>> warmUps = tasks.stream()
+                    .map(task -> CompletableFuture.runAsync(() -> run(task), executor))
+                    .collect(Collectors.toList());
+            CompletableFuture.allOf(warmUps.toArray(new CompletableFuture[0])).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            log.info("Warm-up of {} completed in {}ms", tasks.stream().map(WarmUpTask::name).collect(Collectors.toList()),
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (TimeoutException e) {
+            log.warn("Warm-up did not complete within {}, proceeding", timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Fail to warm-up. Error details {}", e.toString());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void run(WarmUpTask task) {
+        long start = System.nanoTime();
+        try {
+            task.warmUp();
+            log.debug("Warm-up {} completed in {}ms", task.name(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        } catch (Exception e) {
+            log.warn("Fail to warm-up {}. Error details {}", task.name(), e.toString());
+        }
+    }
+
+}
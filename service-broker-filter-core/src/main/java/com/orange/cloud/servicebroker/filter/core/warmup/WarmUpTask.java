@@ -0,0 +1,39 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.warmup;
+
+/**
+ * A startup task priming a downstream connection or a hot code path, so that the first OSB requests
+ * after a deployment do not pay cold connection, TLS handshake, token or JIT costs.
+ * All warm-up tasks are run concurrently by the {@link WarmUpRunner}.
+ */
+public interface WarmUpTask {
+
+    /**
+     * @return a short name, for logs
+     */
+    String name();
+
+    /**
+     * Performs the warm-up, blocking until done. Failures are logged but do not prevent the application from starting.
+     *
+     * @throws Exception when the warm-up fails
+     */
+    void warmUp() throws Exception;
+
+}
@@ -0,0 +1,204 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cloud.servicebroker.model.catalog.Catalog;
+import org.springframework.cloud.servicebroker.service.CatalogService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serves {@code GET /v2/catalog} from pre-serialized bytes, instead of serializing the catalog on each request.
+ * <p>
+ * The JSON bytes, their gzip-compressed variant and a strong entity tag are computed once each time the catalog changes.
+ * Requests with a matching If-None-Match get a 304 Not Modified. Runs after the Spring Security filter chain, so that
+ * catalog requests are still authenticated.
+ */
+@Profile("!offline-test-without-cf")
+@Component
+public class CatalogResponseFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogResponseFilter.class);
+
+    static final String CATALOG_PATH = "/v2/catalog";
+
+    static final String GZIP = "gzip";
+
+    private final CatalogService catalogService;
+
+    private final ObjectMapper objectMapper;
+
+    private volatile CatalogResponse cached;
+
+    @Autowired
+    public CatalogResponseFilter(CatalogService catalogService, ObjectMapper objectMapper) {
+        this.catalogService = catalogService;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !HttpMethod.GET.matches(request.getMethod())
+                || !CATALOG_PATH.equals(request.getRequestURI().substring(request.getContextPath().length()));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        CatalogResponse catalogResponse = catalogResponse(catalogService.getCatalog().block());
+        response.setHeader(HttpHeaders.ETAG, catalogResponse.entityTag);
+        response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (catalogResponse.matches(request.getHeader(HttpHeaders.IF_NONE_MATCH))) {
+            response.setStatus(HttpStatus.NOT_MODIFIED.value());
+            return;
+        }
+        byte[] body = catalogResponse.json;
+        if (acceptsGzip(request.getHeader(HttpHeaders.ACCEPT_ENCODING))) {
+            body = catalogResponse.gzip;
+            response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+        }
+        response.setStatus(HttpStatus.OK.value());
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+    /*
+    gzip is accepted when listed, or matched by *, with a non zero quality value: "gzip;q=0" refuses it.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim();
+            boolean accepted = quality(parameters) > 0;
+            if (GZIP.equalsIgnoreCase(name) || "x-gzip".equalsIgnoreCase(name)) {
+                return accepted;
+            }
+            if ("*".equals(name)) {
+                wildcard = accepted;
+            }
+        }
+        return Boolean.TRUE.equals(wildcard);
+    }
+
+    private static double quality(String[] parameters) {
+        for (int i = 1; i < parameters.length; i++) {
+            String parameter = parameters[i].trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    // an invalid quality value does not accept the coding
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /*
+    Catalogs are immutable once mapped: a new catalog instance means the catalog changed.
+     */
+    CatalogResponse catalogResponse(Catalog catalog) {
+        CatalogResponse current = cached;
+        if (current == null || current.catalog != catalog) {
+            current = new CatalogResponse(catalog, serialize(catalog));
+            cached = current;
+            log.debug("Catalog response of {} bytes ({} bytes compressed) cached with entity tag {}",
+                    current.json.length, current.gzip.length, current.entityTag);
+        }
+        return current;
+    }
+
+    private byte[] serialize(Catalog catalog) {
+        try {
+            return objectMapper.writeValueAsBytes(catalog);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to serialize catalog", e);
+        }
+    }
+
+    static final class CatalogResponse {
+
+        private final Catalog catalog;
+
+        private final byte[] json;
+
+        private final byte[] gzip;
+
+        private final String entityTag;
+
+        CatalogResponse(Catalog catalog, byte[] json) {
+            this.catalog = catalog;
+            this.json = json;
+            this.gzip = gzip(json);
+            this.entityTag = "\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+        }
+
+        boolean matches(String ifNoneMatch) {
+            if (ifNoneMatch == null) {
+                return false;
+            }
+            for (String candidate : ifNoneMatch.split(",")) {
+                String entityTagCandidate = candidate.trim();
+                if (entityTagCandidate.startsWith("W/")) {
+                    entityTagCandidate = entityTagCandidate.substring(2);
+                }
+                if ("*".equals(entityTagCandidate) || entityTag.equals(entityTagCandidate)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static byte[] gzip(byte[] json) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(json.length / 4 + 64);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+                gzip.write(json);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to compress catalog", e);
+            }
+            return compressed.toByteArray();
+        }
+
+    }
+
+}
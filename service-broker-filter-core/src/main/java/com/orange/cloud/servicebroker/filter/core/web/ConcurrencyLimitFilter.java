@@ -0,0 +1,100 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.web;
+
+import com.orange.cloud.servicebroker.filter.core.resilience.AdaptiveConcurrencyLimit;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sheds OSB requests beyond the {@link AdaptiveConcurrencyLimit}, so that bursts (e.g. a pipeline binding hundreds of
+ * apps) do not push more parallel work into the Cloud Controller and the target broker than they can absorb.
+ * <p>
+ * Shed requests are answered with an OSB error and a Retry-After header. The catalog, served from memory, is never shed.
+ * Requests answered with a 502, 503 or 504 status count as dropped, and shrink the limit. Runs before the
+ * {@link PassthroughFilter}, so that streamed requests are limited too.
+ */
+@Order(Ordered.LOWEST_PRECEDENCE - 10)
+public class ConcurrencyLimitFilter extends OncePerRequestFilter {
+
+    static final String OSB_PATH_PREFIX = "/v2/";
+
+    static final String CATALOG_PATH = "/v2/catalog";
+
+    static final byte[] REJECTED_BODY = "{\"description\":\"Too many requests in progress, please retry later.\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final AdaptiveConcurrencyLimit limit;
+
+    private final HttpStatus rejectionStatus;
+
+    private final long retryAfterSeconds;
+
+    /**
+     * @param limit             the concurrency limit
+     * @param rejectionStatus   status of shed requests, either 503 or 429
+     * @param retryAfterSeconds Retry-After of shed requests
+     */
+    public ConcurrencyLimitFilter(AdaptiveConcurrencyLimit limit, HttpStatus rejectionStatus, long retryAfterSeconds) {
+        this.limit = limit;
+        this.rejectionStatus = rejectionStatus;
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith(OSB_PATH_PREFIX) || path.equals(CATALOG_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        if (!limit.tryAcquire()) {
+            response.setStatus(rejectionStatus.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            response.setContentLength(REJECTED_BODY.length);
+            response.getOutputStream().write(REJECTED_BODY);
+            return;
+        }
+        long start = System.nanoTime();
+        boolean dropped = true;
+        try {
+            filterChain.doFilter(request, response);
+            dropped = isOverloaded(response.getStatus());
+        } finally {
+            limit.release(System.nanoTime() - start, dropped);
+        }
+    }
+
+    private static boolean isOverloaded(int status) {
+        return status == 502 || status == 503 || status == 504;
+    }
+
+}
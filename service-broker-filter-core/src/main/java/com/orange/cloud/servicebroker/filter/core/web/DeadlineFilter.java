@@ -0,0 +1,100 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.web;
+
+import com.orange.cloud.servicebroker.filter.core.deadline.Deadline;
+import com.orange.cloud.servicebroker.filter.core.deadline.DeadlineContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Sets the {@link Deadline} of each OSB request: the configured budget, shortened by the timeout the client
+ * advertises in a request header (in seconds), if any. The Cloud Controller gives up on broker requests after
+ * 60 seconds by default, hence a default budget slightly below. Runs before the {@link PassthroughFilter}, so that
+ * streamed requests get a deadline too.
+ */
+@Profile("!offline-test-without-cf")
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 10)
+public class DeadlineFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(DeadlineFilter.class);
+
+    static final String OSB_PATH_PREFIX = "/v2/";
+
+    private final Duration budget;
+
+    private final String timeoutHeader;
+
+    public DeadlineFilter(@Value("${broker.filter.deadline.budget:PT55S}") Duration budget,
+                          @Value("${broker.filter.deadline.header:X-Request-Timeout}") String timeoutHeader) {
+        this.budget = budget;
+        this.timeoutHeader = timeoutHeader;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().substring(request.getContextPath().length()).startsWith(OSB_PATH_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        Duration requestBudget = budget(request);
+        if (requestBudget == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+        try (DeadlineContext.Scope ignored = DeadlineContext.enter(Deadline.after(requestBudget))) {
+            filterChain.doFilter(request, response);
+        }
+    }
+
+    /*
+    A zero or negative budget disables deadlines, unless the client advertises its own timeout.
+     */
+    Duration budget(HttpServletRequest request) {
+        Duration requestBudget = budget.isZero() || budget.isNegative() ? null : budget;
+        String timeout = timeoutHeader.isEmpty() ? null : request.getHeader(timeoutHeader);
+        if (timeout != null) {
+            try {
+                Duration advertised = Duration.ofMillis((long) (Double.parseDouble(timeout.trim()) * 1000));
+                if (requestBudget == null || advertised.compareTo(requestBudget) < 0) {
+                    requestBudget = advertised;
+                }
+            } catch (NumberFormatException e) {
+                log.debug("Ignoring unparseable {} header {}", timeoutHeader, timeout);
+            }
+        }
+        return requestBudget;
+    }
+
+}
@@ -0,0 +1,318 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.web;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orange.cloud.servicebroker.filter.core.deadline.DeadlineExceededException;
+import com.orange.cloud.servicebroker.filter.core.filters.ServiceInstanceBindingFilterRunner;
+import com.orange.cloud.servicebroker.filter.core.resilience.TargetBrokerUnavailableException;
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Streams provision, update, deprovision and last operation requests to the target broker, and streams its responses
+ * back, without mapping them to OSB model objects.
+ * <p>
+ * Only the url is rewritten: the target broker url replaces the filter one, and the service offering suffix, if any, is
+ * removed from the {@code service_id} and {@code plan_id} query parameters. Since bodies are not rewritten, provision
+ * and update requests are only streamed when no suffix is set. Streamed requests bypass the
+ * {@link org.springframework.cloud.servicebroker.service.ServiceInstanceService}: last operation polls are neither
+ * coalesced nor given estimated Retry-After hints.
+ * <p>
+ * Bind requests may be streamed too, when all post bind filters run on raw response bodies: bind filters then run on
+ * the request mapped from its (small) body and on the raw response body, which is forwarded unchanged. Asynchronous
+ * bindings, handled by the filter itself, are not streamed, and duplicate bind requests are not coalesced.
+ */
+public class PassthroughFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(PassthroughFilter.class);
+
+    static final Pattern SERVICE_INSTANCE_PATH = Pattern.compile("/v2/service_instances/[^/]+");
+
+    static final Pattern LAST_OPERATION_PATH = Pattern.compile("/v2/service_instances/[^/]+/last_operation");
+
+    static final Pattern BINDING_PATH = Pattern.compile("/v2/service_instances/([^/]+)/service_bindings/([^/]+)");
+
+    static final Set<String> QUERY_PARAMETERS_WITH_SUFFIX = new HashSet<>(Arrays.asList("service_id", "plan_id"));
+
+    /*
+    Set by the filter or the HTTP clients themselves. Accept-Encoding is left to OkHttp, which then transparently
+    decompresses responses.
+     */
+    static final Set<String> REQUEST_HEADERS_NOT_FORWARDED = new HashSet<>(Arrays.asList(
+            "authorization", "host", "content-length", "transfer-encoding", "connection", "keep-alive", "upgrade", "te", "accept-encoding"));
+
+    static final Set<String> RESPONSE_HEADERS_NOT_FORWARDED = new HashSet<>(Arrays.asList(
+            "content-length", "transfer-encoding", "connection", "keep-alive", "upgrade"));
+
+    private final OkHttpClient client;
+
+    private final String targetUrl;
+
+    private final String authorization;
+
+    private final String suffix;
+
+    private final ServiceInstanceBindingFilterRunner filterRunner;
+
+    private final ObjectMapper objectMapper;
+
+    private final boolean asyncBindings;
+
+    /**
+     * @param client        client calling the target broker
+     * @param targetUrl     target broker url
+     * @param authorization Authorization header of target broker requests
+     * @param suffix        service offering suffix, empty when none
+     */
+    public PassthroughFilter(OkHttpClient client, URL targetUrl, String authorization, String suffix) {
+        this(client, targetUrl, authorization, suffix, null, null, false);
+    }
+
+    /**
+     * @param filterRunner  runner of bind filters, bind requests are not streamed when null
+     * @param objectMapper  maps bind request bodies for bind filters
+     * @param asyncBindings whether bind requests accepting incomplete operations are handled asynchronously by the filter
+     */
+    public PassthroughFilter(OkHttpClient client, URL targetUrl, String authorization, String suffix,
+                             ServiceInstanceBindingFilterRunner filterRunner, ObjectMapper objectMapper, boolean asyncBindings) {
+        this.client = client;
+        String url = targetUrl.toString();
+        this.targetUrl = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        this.authorization = authorization;
+        this.suffix = suffix == null ? "" : suffix;
+        this.filterRunner = filterRunner;
+        this.objectMapper = objectMapper;
+        this.asyncBindings = asyncBindings;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        switch (request.getMethod()) {
+            case "PUT":
+                if (BINDING_PATH.matcher(path).matches()) {
+                    return !isBindingStreamed(request);
+                }
+                return !suffix.isEmpty() || !SERVICE_INSTANCE_PATH.matcher(path).matches();
+            case "PATCH":
+                return !suffix.isEmpty() || !SERVICE_INSTANCE_PATH.matcher(path).matches();
+            case "DELETE":
+                return !SERVICE_INSTANCE_PATH.matcher(path).matches();
+            case "GET":
+                return !LAST_OPERATION_PATH.matcher(path).matches();
+            default:
+                return true;
+        }
+    }
+
+    private boolean isBindingStreamed(HttpServletRequest request) {
+        return filterRunner != null && suffix.isEmpty() && filterRunner.supportsRawPostBind()
+                && !(asyncBindings && "true".equals(request.getParameter("accepts_incomplete")));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        Matcher binding = BINDING_PATH.matcher(request.getRequestURI().substring(request.getContextPath().length()));
+        try {
+            if (binding.matches()) {
+                bind(request, response, binding.group(1), binding.group(2));
+                return;
+            }
+            boolean hasBody = "PUT".equals(request.getMethod()) || "PATCH".equals(request.getMethod());
+            try (Response targetResponse = client.newCall(targetRequest(request, hasBody ? streamedBody(request) : null)).execute()) {
+                forwardStatusAndHeaders(targetResponse, response);
+                ResponseBody body = targetResponse.body();
+                if (body != null) {
+                    if (body.contentLength() >= 0) {
+                        response.setContentLengthLong(body.contentLength());
+                    }
+                    StreamUtils.copy(body.byteStream(), response.getOutputStream());
+                }
+            }
+        } catch (TargetBrokerUnavailableException e) {
+            error(response, HttpStatus.SERVICE_UNAVAILABLE, e.getMessage(), Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000));
+        } catch (DeadlineExceededException e) {
+            error(response, HttpStatus.GATEWAY_TIMEOUT, e.getMessage(), 0);
+        } catch (IOException e) {
+            if (response.isCommitted()) {
+                throw e;
+            }
+            log.warn("Fail to stream {} {} to target broker. Error details {}", request.getMethod(), request.getRequestURI(), e.toString());
+            error(response, e instanceof InterruptedIOException ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.BAD_GATEWAY,
+                    "Unable to reach target broker.", 0);
+        }
+    }
+
+    /*
+    Bind filters need the whole response before it is forwarded, since a post bind filter failure fails the binding:
+    the response body is buffered once, as bytes.
+     */
+    private void bind(HttpServletRequest request, HttpServletResponse response, String serviceInstanceId, String bindingId) throws IOException {
+        byte[] requestBody = StreamUtils.copyToByteArray(request.getInputStream());
+        CreateServiceInstanceBindingRequest bindingRequest;
+        try {
+            bindingRequest = objectMapper.readValue(requestBody, CreateServiceInstanceBindingRequest.class);
+        } catch (JsonProcessingException e) {
+            // answered as the mapped bind request would be, rather than as a target broker failure
+            log.debug("Fail to read bind request {}. Error details {}", bindingId, e.toString());
+            error(response, HttpStatus.UNPROCESSABLE_ENTITY, "Unable to read bind request body: " + e.getOriginalMessage(), 0);
+            return;
+        }
+        bindingRequest.setServiceInstanceId(serviceInstanceId);
+        bindingRequest.setBindingId(bindingId);
+        bindingRequest.setAsyncAccepted("true".equals(request.getParameter("accepts_incomplete")));
+        try {
+            filterRunner.preBind(bindingRequest);
+            okhttp3.MediaType contentType = request.getContentType() == null ? null : okhttp3.MediaType.parse(request.getContentType());
+            try (Response targetResponse = client.newCall(targetRequest(request, RequestBody.create(contentType, requestBody))).execute()) {
+                byte[] body = targetResponse.body() == null ? new byte[0] : targetResponse.body().bytes();
+                if (targetResponse.code() == HttpStatus.OK.value() || targetResponse.code() == HttpStatus.CREATED.value()) {
+                    filterRunner.postBind(bindingRequest, body);
+                }
+                forwardStatusAndHeaders(targetResponse, response);
+                response.setContentLength(body.length);
+                response.getOutputStream().write(body);
+            }
+        } catch (TargetBrokerUnavailableException | DeadlineExceededException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            log.error("Fail to bind {}. Error details {}", bindingId, e.toString(), e);
+            error(response, HttpStatus.INTERNAL_SERVER_ERROR, String.valueOf(e.getMessage()), 0);
+        }
+    }
+
+    private static void forwardStatusAndHeaders(Response targetResponse, HttpServletResponse response) {
+        response.setStatus(targetResponse.code());
+        for (String name : targetResponse.headers().names()) {
+            if (!RESPONSE_HEADERS_NOT_FORWARDED.contains(name.toLowerCase(Locale.ROOT))) {
+                for (String value : targetResponse.headers(name)) {
+                    response.addHeader(name, value);
+                }
+            }
+        }
+    }
+
+    private Request targetRequest(HttpServletRequest request, RequestBody body) {
+        HttpUrl url = HttpUrl.get(targetUrl + request.getRequestURI().substring(request.getContextPath().length()))
+                .newBuilder()
+                .encodedQuery(request.getQueryString())
+                .build();
+        Request.Builder targetRequest = new Request.Builder().url(suffix.isEmpty() ? url : withoutSuffix(url));
+        for (String name : Collections.list(request.getHeaderNames())) {
+            if (!REQUEST_HEADERS_NOT_FORWARDED.contains(name.toLowerCase(Locale.ROOT))) {
+                for (String value : Collections.list(request.getHeaders(name))) {
+                    targetRequest.addHeader(name, value);
+                }
+            }
+        }
+        targetRequest.header(HttpHeaders.AUTHORIZATION, authorization);
+        return targetRequest.method(request.getMethod(), body).build();
+    }
+
+    private HttpUrl withoutSuffix(HttpUrl url) {
+        HttpUrl.Builder builder = url.newBuilder().query(null);
+        for (int i = 0; i < url.querySize(); i++) {
+            String name = url.queryParameterName(i);
+            String value = url.queryParameterValue(i);
+            if (value != null && value.endsWith(suffix) && QUERY_PARAMETERS_WITH_SUFFIX.contains(name)) {
+                value = value.substring(0, value.length() - suffix.length());
+            }
+            builder.addQueryParameter(name, value);
+        }
+        return builder.build();
+    }
+
+    /*
+    Streamed from the servlet input stream, hence one shot: OkHttp does not retry once the body started to be sent.
+     */
+    private static RequestBody streamedBody(HttpServletRequest request) throws IOException {
+        okhttp3.MediaType contentType = request.getContentType() == null ? null : okhttp3.MediaType.parse(request.getContentType());
+        long contentLength = request.getContentLengthLong();
+        InputStream input = request.getInputStream();
+        return new RequestBody() {
+            @Override
+            public okhttp3.MediaType contentType() {
+                return contentType;
+            }
+
+            @Override
+            public long contentLength() {
+                return contentLength;
+            }
+
+            @Override
+            public boolean isOneShot() {
+                return true;
+            }
+
+            @Override
+            public void writeTo(BufferedSink sink) throws IOException {
+                Source source = Okio.source(input);
+                sink.writeAll(source);
+            }
+        };
+    }
+
+    private static void error(HttpServletResponse response, HttpStatus status, String description, long retryAfterSeconds) throws IOException {
+        byte[] body = ("{\"description\":\"" + description.replace("\\", "\\\\").replace("\"", "\\\"") + "\"}").getBytes(StandardCharsets.UTF_8);
+        response.reset();
+        response.setStatus(status.value());
+        if (retryAfterSeconds > 0) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        }
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setContentLength(body.length);
+        response.getOutputStream().write(body);
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.web;
+
+import org.springframework.cloud.servicebroker.model.instance.GetLastServiceOperationResponse;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Adds the Retry-After header chosen while proxying a last operation request, since
+ * {@link GetLastServiceOperationResponse} cannot carry response headers.
+ */
+@Profile("!offline-test-without-cf")
+@ControllerAdvice
+public class RetryAfterResponseBodyAdvice implements ResponseBodyAdvice<Object> {
+
+    static final String RETRY_AFTER_ATTRIBUTE = RetryAfterResponseBodyAdvice.class.getName() + ".retryAfter";
+
+    /**
+     * Sets the Retry-After header value of the response to the current request, if any.
+     *
+     * @param retryAfter a Retry-After header value, either a number of seconds or an HTTP date
+     */
+    public static void retryAfter(String retryAfter) {
+        RequestAttributes requestAttributes = RequestContextHolder.getRequestAttributes();
+        if (requestAttributes != null) {
+            requestAttributes.setAttribute(RETRY_AFTER_ATTRIBUTE, retryAfter, RequestAttributes.SCOPE_REQUEST);
+        }
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType, ServerHttpRequest request, ServerHttpResponse response) {
+        if (body instanceof GetLastServiceOperationResponse && request instanceof ServletServerHttpRequest) {
+            Object retryAfter = ((ServletServerHttpRequest) request).getServletRequest().getAttribute(RETRY_AFTER_ATTRIBUTE);
+            if (retryAfter != null && !response.getHeaders().containsKey(HttpHeaders.RETRY_AFTER)) {
+                response.getHeaders().set(HttpHeaders.RETRY_AFTER, retryAfter.toString());
+            }
+        }
+        return body;
+    }
+
+}
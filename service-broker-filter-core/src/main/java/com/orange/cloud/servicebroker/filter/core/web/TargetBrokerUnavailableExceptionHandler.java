@@ -0,0 +1,55 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.web;
+
+import com.orange.cloud.servicebroker.filter.core.resilience.TargetBrokerUnavailableException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.springframework.cloud.servicebroker.model.error.ErrorMessage;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+
+/**
+ * Answers requests failed fast by the target broker bulkheads or circuit breaker with a 503 status, an OSB error
+ * body, and a Retry-After header. Ordered before the service broker own exception handlers.
+ */
+@Profile("!offline-test-without-cf")
+@ControllerAdvice
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class TargetBrokerUnavailableExceptionHandler {
+
+    private static final Logger log = LoggerFactory.getLogger(TargetBrokerUnavailableExceptionHandler.class);
+
+    @ExceptionHandler(TargetBrokerUnavailableException.class)
+    public ResponseEntity<ErrorMessage> handleTargetBrokerUnavailable(TargetBrokerUnavailableException e) {
+        log.debug("Fail fast as target broker is unavailable. Error details {}", e.getMessage());
+        // Retry-After is a whole number of seconds, rounded up so that clients do not retry too early
+        long retryAfter = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter))
+                .body(new ErrorMessage(e.getMessage()));
+    }
+
+}
@@ -0,0 +1,72 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.config;
+
+import com.orange.cloud.servicebroker.filter.core.dns.CachingDns;
+import com.orange.cloud.servicebroker.filter.core.logging.SampledLoggingInterceptor;
+import com.orange.cloud.servicebroker.filter.core.proxy.NoProxyMatcher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Dns;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class OkHttpClientConfigTest {
+
+    private final CachingDns cachingDns = new CachingDns(Dns.SYSTEM, Duration.ofSeconds(30), Duration.ofMinutes(10));
+
+    private final SampledLoggingInterceptor loggingInterceptor = new SampledLoggingInterceptor(SampledLoggingInterceptor.Detail.BASIC, 1, 4096, new SimpleMeterRegistry());
+
+    @After
+    public void closeDns() {
+        cachingDns.close();
+    }
+
+    @Test
+    public void should_speak_http_1_1_by_default() {
+        OkHttpClient client = new OkHttpClientConfig().squareHttpClient(NoProxyMatcher.none(), cachingDns, new BrokerFilterSettings(), loggingInterceptor);
+
+        assertThat(client.protocols()).containsExactly(Protocol.HTTP_1_1);
+        assertThat(client.dispatcher().getMaxRequestsPerHost()).isEqualTo(20);
+    }
+
+    @Test
+    public void should_configure_http_2_and_connection_reuse() {
+        BrokerFilterSettings settings = new BrokerFilterSettings();
+        settings.getHttp().setVersion(BrokerFilterSettings.HttpVersion.HTTP_2);
+        settings.getHttp().setMaxRequests(100);
+        settings.getHttp().setMaxRequestsPerHost(50);
+
+        OkHttpClient client = new OkHttpClientConfig().squareHttpClient(NoProxyMatcher.none(), cachingDns, settings, loggingInterceptor);
+
+        assertThat(client.protocols()).containsExactly(Protocol.HTTP_2, Protocol.HTTP_1_1);
+        assertThat(client.dispatcher().getMaxRequests()).isEqualTo(100);
+        assertThat(client.dispatcher().getMaxRequestsPerHost()).isEqualTo(50);
+    }
+
+    @Test
+    public void should_speak_cleartext_http_2_with_prior_knowledge() {
+        assertThat(OkHttpClientConfig.protocols(BrokerFilterSettings.HttpVersion.H2C)).containsExactly(Protocol.H2_PRIOR_KNOWLEDGE);
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.deadline;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class DeadlineClientTest {
+
+    private static final Request.Options OPTIONS = new Request.Options(10, TimeUnit.SECONDS, 60, TimeUnit.SECONDS, true);
+
+    private final Client delegate = mock(Client.class);
+
+    private final DeadlineClient client = new DeadlineClient(delegate);
+
+    @Test
+    public void should_keep_client_timeouts_without_deadline() throws Exception {
+        client.execute(request(), OPTIONS);
+
+        verify(delegate).execute(any(), eq(OPTIONS));
+    }
+
+    @Test
+    public void should_shorten_timeouts_to_remaining_budget() throws Exception {
+        DeadlineContext.call(Deadline.after(Duration.ofSeconds(5)), () -> execute(OPTIONS));
+
+        ArgumentCaptor<Request.Options> options = ArgumentCaptor.forClass(Request.Options.class);
+        verify(delegate).execute(any(), options.capture());
+        assertThat(options.getValue().connectTimeoutMillis()).isBetween(1, 5000);
+        assertThat(options.getValue().readTimeoutMillis()).isBetween(1, 5000);
+        assertThat(options.getValue().isFollowRedirects()).isTrue();
+    }
+
+    @Test
+    public void should_not_call_target_broker_once_deadline_expired() throws Exception {
+        assertThatThrownBy(() -> DeadlineContext.call(Deadline.after(Duration.ZERO), () -> execute(OPTIONS)))
+                .isInstanceOf(DeadlineExceededException.class);
+        verify(delegate, never()).execute(any(), any());
+        assertThat(DeadlineContext.current()).isEmpty();
+    }
+
+    private Response execute(Request.Options options) {
+        try {
+            return client.execute(request(), options);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Request request() {
+        return Request.create(Request.HttpMethod.PUT, "https://broker.mydomain.org/v2/service_instances/instance-id/service_bindings/binding-id",
+                Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.dns;
+
+import okhttp3.Dns;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CachingDnsTest {
+
+    private static final InetAddress FIRST = address(10, 0, 0, 1);
+
+    private static final InetAddress SECOND = address(10, 0, 0, 2);
+
+    private static final InetAddress THIRD = address(10, 0, 0, 3);
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicInteger lookups = new AtomicInteger();
+
+    private final List<Runnable> refreshes = new ArrayList<>();
+
+    private volatile boolean resolverDown;
+
+    private volatile List<InetAddress> resolved = Arrays.asList(FIRST, SECOND);
+
+    private final Dns resolver = hostname -> {
+        lookups.incrementAndGet();
+        if (resolverDown) {
+            throw new UnknownHostException(hostname);
+        }
+        return resolved;
+    };
+
+    private final CachingDns dns = new CachingDns(resolver, Duration.ofSeconds(10), Duration.ofMinutes(1), clock::get, refreshes::add);
+
+    @Test
+    public void should_cache_addresses_until_refresh() throws UnknownHostException {
+        assertThat(dns.lookup("mysql-broker.mydomain.org")).containsExactly(FIRST, SECOND);
+        clock.set(Duration.ofSeconds(5).toNanos());
+        assertThat(dns.lookup("mysql-broker.mydomain.org")).containsExactly(FIRST, SECOND);
+
+        assertThat(lookups).hasValue(1);
+        assertThat(refreshes).isEmpty();
+    }
+
+    @Test
+    public void should_refresh_in_background_before_expiry() throws UnknownHostException {
+        dns.lookup("mysql-broker.mydomain.org");
+
+        clock.set(Duration.ofSeconds(9).toNanos());
+        dns.lookup("mysql-broker.mydomain.org");
+        dns.lookup("mysql-broker.mydomain.org");
+        assertThat(lookups).hasValue(1);
+        assertThat(refreshes).hasSize(1);
+
+        refreshes.get(0).run();
+        assertThat(lookups).hasValue(2);
+        clock.set(Duration.ofSeconds(15).toNanos());
+        dns.lookup("mysql-broker.mydomain.org");
+        assertThat(lookups).hasValue(2);
+    }
+
+    @Test
+    public void should_serve_stale_addresses_while_resolver_fails() throws UnknownHostException {
+        dns.lookup("mysql-broker.mydomain.org");
+        resolverDown = true;
+
+        clock.set(Duration.ofSeconds(30).toNanos());
+        assertThat(dns.lookup("mysql-broker.mydomain.org")).containsExactly(FIRST, SECOND);
+
+        clock.set(Duration.ofSeconds(80).toNanos());
+        assertThatThrownBy(() -> dns.lookup("mysql-broker.mydomain.org")).isInstanceOf(UnknownHostException.class);
+    }
+
+    @Test
+    public void should_return_fastest_addresses_first() throws UnknownHostException {
+        dns.connected(FIRST, Duration.ofMillis(200).toNanos());
+        dns.connected(SECOND, Duration.ofMillis(5).toNanos());
+        assertThat(dns.lookup("mysql-broker.mydomain.org")).containsExactly(SECOND, FIRST);
+
+        dns.connected(SECOND, CachingDns.FAILED_CONNECT_NANOS);
+        assertThat(dns.lookup("mysql-broker.mydomain.org")).containsExactly(FIRST, SECOND);
+    }
+
+    @Test
+    public void should_forget_connect_times_of_addresses_no_longer_resolved() throws UnknownHostException {
+        dns.lookup("mysql-broker.mydomain.org");
+        dns.connected(FIRST, Duration.ofMillis(200).toNanos());
+        dns.connected(SECOND, Duration.ofMillis(5).toNanos());
+
+        resolved = Arrays.asList(SECOND, THIRD);
+        clock.set(Duration.ofSeconds(15).toNanos());
+        assertThat(dns.lookup("mysql-broker.mydomain.org")).containsExactlyInAnyOrder(SECOND, THIRD);
+
+        assertThat(dns.hasConnectTime(FIRST)).isFalse();
+        assertThat(dns.hasConnectTime(SECOND)).isTrue();
+    }
+
+    private static InetAddress address(int... bytes) {
+        try {
+            return InetAddress.getByAddress(new byte[]{(byte) bytes[0], (byte) bytes[1], (byte) bytes[2], (byte) bytes[3]});
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.proxy;
+
+import org.junit.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NoProxyMatcherTest {
+
+    private final NoProxyMatcher matcher = NoProxyMatcher.compile("localhost, .internal.mydomain.org,*.service.consul 10.0.0.0/8,192.168.1.10,fd00::/8");
+
+    @Test
+    public void should_match_domains_and_their_subdomains() {
+        assertThat(matcher.matches("localhost")).isTrue();
+        assertThat(matcher.matches("internal.mydomain.org")).isTrue();
+        assertThat(matcher.matches("mysql-broker.internal.mydomain.org")).isTrue();
+        assertThat(matcher.matches("redis.service.consul.")).isTrue();
+        assertThat(matcher.matches("MySQL-Broker.Internal.MyDomain.org")).isTrue();
+
+        assertThat(matcher.matches("mydomain.org")).isFalse();
+        assertThat(matcher.matches("notinternal.mydomain.org")).isFalse();
+        assertThat(matcher.matches("api.external.org")).isFalse();
+    }
+
+    @Test
+    public void should_match_ip_addresses_and_cidr_blocks() {
+        assertThat(matcher.matches("10.1.2.3")).isTrue();
+        assertThat(matcher.matches("192.168.1.10")).isTrue();
+        assertThat(matcher.matches("[fd00::1]")).isTrue();
+
+        assertThat(matcher.matches("11.1.2.3")).isFalse();
+        assertThat(matcher.matches("192.168.1.11")).isFalse();
+        assertThat(matcher.matches("2001:db8::1")).isFalse();
+    }
+
+    @Test
+    public void should_match_all_hosts_with_wildcard() {
+        assertThat(NoProxyMatcher.compile("*").matches("api.external.org")).isTrue();
+    }
+
+    @Test
+    public void should_match_no_host_without_rules() {
+        assertThat(NoProxyMatcher.compile("").isEmpty()).isTrue();
+        assertThat(NoProxyMatcher.compile(null).matches("localhost")).isFalse();
+    }
+
+    @Test
+    public void should_ignore_invalid_rules() {
+        NoProxyMatcher lenientMatcher = NoProxyMatcher.compile("10.0.0.0/33,localhost");
+
+        assertThat(lenientMatcher.matches("10.0.0.1")).isFalse();
+        assertThat(lenientMatcher.matches("localhost")).isTrue();
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AdaptiveConcurrencyLimitTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void should_shed_requests_beyond_limit() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(2, 1, 10, 1.5, meterRegistry);
+
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isTrue();
+        assertThat(limit.tryAcquire()).isFalse();
+        assertThat(meterRegistry.get("broker.filter.concurrency.rejected").counter().count()).isEqualTo(1);
+
+        limit.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+        assertThat(limit.tryAcquire()).isTrue();
+    }
+
+    @Test
+    public void should_grow_while_latency_stays_flat() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(10, 1, 100, 1.5, meterRegistry);
+
+        saturate(limit, 20, 10);
+
+        assertThat(limit.getLimit()).isGreaterThan(20);
+    }
+
+    @Test
+    public void should_shrink_when_latency_increases() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(50, 1, 100, 1.5, meterRegistry);
+        saturate(limit, 5, 10);
+        int learntLimit = limit.getLimit();
+
+        saturate(limit, 3, 100);
+
+        assertThat(limit.getLimit()).isLessThan(learntLimit / 2);
+    }
+
+    @Test
+    public void should_back_off_when_requests_are_dropped() {
+        AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(50, 1, 100, 1.5, meterRegistry);
+
+        assertThat(limit.tryAcquire()).isTrue();
+        limit.release(TimeUnit.MILLISECONDS.toNanos(10), true);
+
+        assertThat(limit.getLimit()).isEqualTo(45);
+    }
+
+    /*
+    Sends as many concurrent requests as the limit allows, then completes them, for a number of rounds.
+     */
+    private static void saturate(AdaptiveConcurrencyLimit limit, int rounds, long latencyMillis) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (limit.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limit.release(TimeUnit.MILLISECONDS.toNanos(latencyMillis), false);
+            }
+        }
+    }
+
+}
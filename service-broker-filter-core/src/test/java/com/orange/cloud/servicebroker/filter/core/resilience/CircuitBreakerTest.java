@@ -0,0 +1,119 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.resilience;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CircuitBreakerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker("https://broker.mydomain.org", 4, 4, 0.5, Duration.ofSeconds(30), meterRegistry, clock::get);
+
+    @Test
+    public void should_stay_closed_below_failure_rate_threshold() {
+        call(true);
+        call(false);
+        call(false);
+        call(false);
+        call(true);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void should_open_once_failure_rate_reaches_threshold() {
+        call(false);
+        call(false);
+        call(true);
+        call(true);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        clock.addAndGet(Duration.ofSeconds(10).toNanos());
+        assertThatThrownBy(circuitBreaker::acquire)
+                .isInstanceOf(TargetBrokerUnavailableException.class)
+                .satisfies(e -> assertThat(((TargetBrokerUnavailableException) e).getRetryAfter()).isEqualTo(Duration.ofSeconds(20)));
+        assertThat(meterRegistry.get("broker.filter.circuit-breaker.rejected").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_let_a_single_trial_call_through_once_open_duration_elapsed() {
+        openCircuit();
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        boolean trial = circuitBreaker.acquire();
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThatThrownBy(circuitBreaker::acquire).isInstanceOf(TargetBrokerUnavailableException.class);
+
+        circuitBreaker.onSuccess(trial);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void should_open_again_when_trial_call_fails() {
+        openCircuit();
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        call(true);
+
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThatThrownBy(circuitBreaker::acquire).isInstanceOf(TargetBrokerUnavailableException.class);
+    }
+
+    @Test
+    public void should_let_only_the_trial_call_decide_while_half_open() {
+        boolean slow = circuitBreaker.acquire();
+        openCircuit();
+        clock.addAndGet(Duration.ofSeconds(30).toNanos());
+        boolean trial = circuitBreaker.acquire();
+
+        circuitBreaker.onSuccess(slow);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        circuitBreaker.onFailure(slow);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+
+        circuitBreaker.onFailure(trial);
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < 4; i++) {
+            call(true);
+        }
+        assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    private void call(boolean failed) {
+        boolean trial = circuitBreaker.acquire();
+        if (failed) {
+            circuitBreaker.onFailure(trial);
+        } else {
+            circuitBreaker.onSuccess(trial);
+        }
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.resilience;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.ResponseBody;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TargetBrokerGuardTest {
+
+    private static final String INSTANCE_URL = "https://broker.mydomain.org/v2/service_instances/instance-id";
+
+    private static final String BINDING_URL = INSTANCE_URL + "/service_bindings/binding-id";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final TargetBrokerGuard guard = new TargetBrokerGuard(
+            operation -> new Bulkhead(operation, 1, 0, Duration.ZERO, meterRegistry),
+            target -> new CircuitBreaker(target, 4, 4, 0.5, Duration.ofSeconds(30), meterRegistry));
+
+    private final Client delegate = mock(Client.class);
+
+    private final Client client = guard.decorate(delegate);
+
+    @Test
+    public void should_classify_osb_operations() {
+        assertThat(OsbOperation.of(request(Request.HttpMethod.GET, "https://broker.mydomain.org/v2/catalog"))).isEqualTo(OsbOperation.CATALOG);
+        assertThat(OsbOperation.of(request(Request.HttpMethod.PUT, INSTANCE_URL))).isEqualTo(OsbOperation.PROVISION);
+        assertThat(OsbOperation.of(request(Request.HttpMethod.PATCH, INSTANCE_URL))).isEqualTo(OsbOperation.UPDATE);
+        assertThat(OsbOperation.of(request(Request.HttpMethod.GET, INSTANCE_URL + "/last_operation"))).isEqualTo(OsbOperation.LAST_OPERATION);
+        assertThat(OsbOperation.of(request(Request.HttpMethod.PUT, BINDING_URL))).isEqualTo(OsbOperation.BIND);
+        assertThat(OsbOperation.of(request(Request.HttpMethod.DELETE, BINDING_URL + "?service_id=s&plan_id=p"))).isEqualTo(OsbOperation.UNBIND);
+    }
+
+    @Test
+    public void should_not_let_slow_provisioning_starve_bindings() throws Exception {
+        CountDownLatch provisionStarted = new CountDownLatch(1);
+        CountDownLatch provisionReleased = new CountDownLatch(1);
+        when(delegate.execute(any(), any())).thenAnswer(invocation -> {
+            Request request = invocation.getArgument(0);
+            if (request.httpMethod() == Request.HttpMethod.PUT && !request.url().contains("service_bindings")) {
+                provisionStarted.countDown();
+                provisionReleased.await(5, TimeUnit.SECONDS);
+            }
+            return response(request, 201);
+        });
+        CompletableFuture<Response> provision = CompletableFuture.supplyAsync(() -> execute(request(Request.HttpMethod.PUT, INSTANCE_URL)));
+        assertThat(provisionStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThatThrownBy(() -> client.execute(request(Request.HttpMethod.PUT, INSTANCE_URL), new Request.Options()))
+                .isInstanceOf(TargetBrokerUnavailableException.class);
+        assertThat(client.execute(request(Request.HttpMethod.PUT, BINDING_URL), new Request.Options()).status()).isEqualTo(201);
+        assertThat(meterRegistry.get("broker.filter.bulkhead.rejected").tag("operation", "provision").counter().count()).isEqualTo(1);
+
+        provisionReleased.countDown();
+        assertThat(provision.get(5, TimeUnit.SECONDS).status()).isEqualTo(201);
+    }
+
+    @Test
+    public void should_fail_fast_while_target_broker_is_unhealthy() throws Exception {
+        when(delegate.execute(any(), any())).thenAnswer(invocation -> response(invocation.getArgument(0), 503));
+        for (int i = 0; i < 4; i++) {
+            assertThat(client.execute(request(Request.HttpMethod.GET, INSTANCE_URL + "/last_operation"), new Request.Options()).status()).isEqualTo(503);
+        }
+
+        assertThatThrownBy(() -> client.execute(request(Request.HttpMethod.PUT, BINDING_URL), new Request.Options()))
+                .isInstanceOf(TargetBrokerUnavailableException.class);
+        verify(delegate, times(4)).execute(any(), any());
+        assertThat(meterRegistry.get("broker.filter.circuit-breaker.state").gauge().value()).isEqualTo(CircuitBreaker.State.OPEN.ordinal());
+    }
+
+    @Test
+    public void should_hold_bulkhead_until_streamed_response_body_is_closed() throws Exception {
+        Interceptor interceptor = guard.interceptor();
+        okhttp3.Response response = interceptor.intercept(chain(INSTANCE_URL));
+
+        assertThatThrownBy(() -> interceptor.intercept(chain(INSTANCE_URL))).isInstanceOf(TargetBrokerUnavailableException.class);
+
+        assertThat(response.body().string()).isEqualTo("{}");
+        interceptor.intercept(chain(INSTANCE_URL)).close();
+        assertThat(meterRegistry.get("broker.filter.bulkhead.rejected").tag("operation", "provision").counter().count()).isEqualTo(1);
+    }
+
+    private static Interceptor.Chain chain(String url) throws IOException {
+        okhttp3.Request request = new okhttp3.Request.Builder().url(url).put(okhttp3.RequestBody.create(null, new byte[0])).build();
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(request);
+        when(chain.proceed(any())).thenReturn(new okhttp3.Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(201)
+                .message("")
+                .body(ResponseBody.create(MediaType.get("application/json"), "{}"))
+                .build());
+        return chain;
+    }
+
+    private Response execute(Request request) {
+        try {
+            return client.execute(request, new Request.Options());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Request request(Request.HttpMethod method, String url) {
+        return Request.create(method, url, Collections.emptyMap(), null, StandardCharsets.UTF_8, null);
+    }
+
+    private static Response response(Request request, int status) {
+        return Response.builder()
+                .request(request)
+                .status(status)
+                .reason("")
+                .headers(Collections.emptyMap())
+                .build();
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.routing;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReplicaLoadBalancerTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final ReplicaLoadBalancer loadBalancer = new ReplicaLoadBalancer(
+            Collections.singletonMap(url("https://broker.mydomain.org"), Arrays.asList(url("https://replica-1:8443"), url("https://replica-2:8443"))),
+            Duration.ofSeconds(10), 3, Duration.ofSeconds(30), Duration.ofMinutes(5), meterRegistry, clock::get);
+
+    /*
+    Latency of each replica in milliseconds, 10ms when unspecified.
+     */
+    private final Map<String, Long> latencies = new HashMap<>();
+
+    /*
+    Response code each failing replica answers with, or -1 when it refuses connections.
+     */
+    private final Map<String, Integer> failures = new HashMap<>();
+
+    private final List<String> replicasCalled = new ArrayList<>();
+
+    @Test
+    public void should_reject_replica_urls_with_a_path() {
+        Map<URL, List<URL>> replicas = Collections.singletonMap(url("https://broker.mydomain.org"), Collections.singletonList(url("https://replica-1:8443/broker")));
+
+        assertThatThrownBy(() -> new ReplicaLoadBalancer(replicas, Duration.ofSeconds(10), 3, Duration.ofSeconds(30), Duration.ofMinutes(5), meterRegistry))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("https://replica-1:8443/broker");
+    }
+
+    @Test
+    public void should_not_balance_requests_to_other_urls() throws IOException {
+        Response response = loadBalancer.intercept(chain("https://other-broker.mydomain.org/v2/catalog"));
+
+        assertThat(response.request().url().host()).isEqualTo("other-broker.mydomain.org");
+    }
+
+    @Test
+    public void should_prefer_replica_with_lowest_latency() throws IOException {
+        latencies.put("replica-1", 200L);
+        latencies.put("replica-2", 20L);
+
+        for (int i = 0; i < 10; i++) {
+            loadBalancer.intercept(chain("https://broker.mydomain.org/v2/catalog"));
+        }
+
+        assertThat(replicasCalled.subList(2, 10)).containsOnly("replica-2");
+        assertThat(meterRegistry.get("broker.filter.replicas.latency").tag("replica", "replica-2:8443").gauge().value()).isCloseTo(20d, within(0.001));
+    }
+
+    @Test
+    public void should_eject_failing_replica_then_probe_it_back_in() throws IOException {
+        failures.put("replica-1", 503);
+
+        for (int i = 0; i < 20; i++) {
+            loadBalancer.intercept(chain("https://broker.mydomain.org/v2/catalog"));
+        }
+        assertThat(replicasCalled.stream().filter("replica-1"::equals).count()).isEqualTo(3);
+        assertThat(meterRegistry.get("broker.filter.replicas.ejected").tag("replica", "replica-1:8443").gauge().value()).isEqualTo(1d);
+
+        failures.clear();
+        clock.addAndGet(Duration.ofSeconds(31).toNanos());
+        replicasCalled.clear();
+        loadBalancer.intercept(chain("https://broker.mydomain.org/v2/catalog"));
+
+        assertThat(replicasCalled).containsExactly("replica-1");
+        assertThat(meterRegistry.get("broker.filter.replicas.ejected").tag("replica", "replica-1:8443").gauge().value()).isEqualTo(0d);
+    }
+
+    @Test
+    public void should_let_only_the_probe_request_extend_the_ejection() {
+        ReplicaLoadBalancer.Replica replica = loadBalancer.new Replica(HttpUrl.get("https://replica-1:8443"), HttpUrl.get("https://broker.mydomain.org"), meterRegistry);
+        for (int i = 0; i < 3; i++) {
+            replica.completed(Duration.ofMillis(10).toNanos(), false, false, clock.get());
+        }
+        clock.addAndGet(Duration.ofSeconds(31).toNanos());
+        assertThat(replica.claimProbe(clock.get())).isTrue();
+
+        // a request sent to the replica while all replicas are ejected fails before the probe
+        replica.completed(Duration.ofMillis(10).toNanos(), false, false, clock.get());
+        assertThat(replica.claimProbe(clock.get())).isFalse();
+        replica.completed(Duration.ofMillis(10).toNanos(), false, true, clock.get());
+
+        clock.addAndGet(Duration.ofSeconds(59).toNanos());
+        assertThat(replica.claimProbe(clock.get())).isFalse();
+        clock.addAndGet(Duration.ofSeconds(2).toNanos());
+        assertThat(replica.claimProbe(clock.get())).isTrue();
+    }
+
+    @Test
+    public void should_retry_on_other_replica_when_connection_is_refused() throws IOException {
+        failures.put("replica-1", -1);
+        failures.put("replica-2", -1);
+
+        assertThat(catchConnectException()).isTrue();
+        assertThat(replicasCalled).containsExactlyInAnyOrder("replica-1", "replica-2");
+
+        failures.remove("replica-2");
+        replicasCalled.clear();
+        Response response = loadBalancer.intercept(chain("https://broker.mydomain.org/v2/catalog"));
+
+        assertThat(response.request().url().host()).isEqualTo("replica-2");
+    }
+
+    private boolean catchConnectException() throws IOException {
+        try {
+            loadBalancer.intercept(chain("https://broker.mydomain.org/v2/catalog"));
+            return false;
+        } catch (ConnectException e) {
+            return true;
+        }
+    }
+
+    private Interceptor.Chain chain(String url) throws IOException {
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.request()).thenReturn(new Request.Builder().url(url).build());
+        when(chain.proceed(any())).thenAnswer(invocation -> {
+            Request request = invocation.getArgument(0);
+            String host = request.url().host();
+            replicasCalled.add(host);
+            int failure = failures.getOrDefault(host, 0);
+            if (failure < 0) {
+                throw new ConnectException("Connection refused");
+            }
+            clock.addAndGet(Duration.ofMillis(latencies.getOrDefault(host, 10L)).toNanos());
+            return new Response.Builder()
+                    .request(request)
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(failure > 0 ? failure : 200)
+                    .message("")
+                    .build();
+        });
+        return chain;
+    }
+
+    private static URL url(String url) {
+        try {
+            return new URL(url);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+}
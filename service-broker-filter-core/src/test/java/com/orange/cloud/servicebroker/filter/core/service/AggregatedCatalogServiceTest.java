@@ -0,0 +1,100 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import com.orange.cloud.servicebroker.filter.core.routing.Backend;
+import com.orange.cloud.servicebroker.filter.core.routing.BackendContext;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.DefaultServiceInstanceBindingRequestMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.DefaultServiceInstanceRequestMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.SuffixedCatalogMapper;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import org.springframework.cloud.servicebroker.exception.ServiceDefinitionDoesNotExistException;
+import org.springframework.cloud.servicebroker.model.catalog.Catalog;
+import org.springframework.cloud.servicebroker.model.catalog.Plan;
+import org.springframework.cloud.servicebroker.model.catalog.ServiceDefinition;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+public class AggregatedCatalogServiceTest {
+
+    private final Backend mysql = backend("mysql", "-mysql");
+
+    private final Backend redis = backend("redis", "-redis");
+
+    private final AggregatedCatalogService catalogService = aggregatedCatalogService();
+
+    @Test
+    public void should_aggregate_backend_catalogs() {
+        Catalog catalog = catalogService.getCatalog().block();
+
+        assertThat(catalog.getServiceDefinitions().stream().map(ServiceDefinition::getId).collect(Collectors.toList()))
+                .containsExactly("mysql-service-id-mysql", "redis-service-id-redis");
+        assertThat(catalogService.getCatalog().block()).isSameAs(catalog);
+    }
+
+    @Test
+    public void should_route_to_backend_offering_service_or_plan() {
+        assertThat(catalogService.route("redis-service-id-redis", null)).isSameAs(redis);
+        assertThat(catalogService.route(null, "mysql-plan-id-mysql")).isSameAs(mysql);
+        assertThatThrownBy(() -> catalogService.route("unknown-service-id", null)).isInstanceOf(ServiceDefinitionDoesNotExistException.class);
+    }
+
+    private AggregatedCatalogService aggregatedCatalogService() {
+        CatalogServiceClient client = Mockito.mock(CatalogServiceClient.class);
+        // a single Feign client is shared by all backends, the backend context selects the target broker
+        when(client.getCatalogIfModified(any(), any())).thenAnswer(invocation ->
+                ResponseEntity.ok(catalog(BackendContext.current().map(Backend::getName).orElse("default"))));
+        Map<Backend, RemoteCatalogService> catalogServices = new LinkedHashMap<>();
+        catalogServices.put(mysql, new RemoteCatalogService(client, mysql, mysql.getCatalogMapper(), Duration.ZERO, null));
+        catalogServices.put(redis, new RemoteCatalogService(client, redis, redis.getCatalogMapper(), Duration.ZERO, null));
+        return new AggregatedCatalogService(catalogServices);
+    }
+
+    private static Backend backend(String name, String suffix) {
+        return new Backend(name, "https://" + name + "-broker.mydomain.org", "user", "password", new SuffixedCatalogMapper(suffix),
+                new DefaultServiceInstanceRequestMapper(), new DefaultServiceInstanceBindingRequestMapper());
+    }
+
+    private static Catalog catalog(String name) {
+        return Catalog.builder()
+                .serviceDefinitions(ServiceDefinition.builder()
+                        .id(name + "-service-id")
+                        .name(name)
+                        .description("Description for " + name)
+                        .bindable(true)
+                        .plans(Plan.builder()
+                                .id(name + "-plan-id")
+                                .name("default")
+                                .description("Default plan")
+                                .build())
+                        .build())
+                .build();
+    }
+
+}
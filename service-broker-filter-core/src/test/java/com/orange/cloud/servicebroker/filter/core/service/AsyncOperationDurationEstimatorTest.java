@@ -0,0 +1,125 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import com.orange.cloud.servicebroker.filter.core.service.AsyncOperationDurationEstimator.OperationType;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsyncOperationDurationEstimatorTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2020-01-01T00:00:00Z"));
+
+    private final AsyncOperationDurationEstimator estimator = new AsyncOperationDurationEstimator(0.5, Duration.ofSeconds(5), Duration.ofMinutes(5), clock);
+
+    @Test
+    public void should_hint_minimum_retry_after_without_plan_history() {
+        estimator.started("instance-1", "plan-id", OperationType.PROVISION);
+
+        assertThat(estimator.retryAfter("instance-1", "plan-id")).isEqualTo(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void should_hint_remaining_duration_from_plan_average() {
+        operation("instance-1", Duration.ofSeconds(60));
+        operation("instance-2", Duration.ofSeconds(120));
+
+        estimator.started("instance-3", "plan-id", OperationType.PROVISION);
+        clock.advance(Duration.ofSeconds(30));
+
+        //average is 60 + 0.5 * (120 - 60) = 90s, 30s already elapsed
+        assertThat(estimator.retryAfter("instance-3", "plan-id")).isEqualTo(Duration.ofSeconds(60));
+    }
+
+    @Test
+    public void should_bound_hints() {
+        operation("instance-1", Duration.ofHours(1));
+        estimator.started("instance-2", "plan-id", OperationType.PROVISION);
+
+        assertThat(estimator.retryAfter("instance-2", "plan-id")).isEqualTo(Duration.ofMinutes(5));
+
+        clock.advance(Duration.ofMinutes(61));
+
+        assertThat(estimator.retryAfter("instance-2", "plan-id")).isEqualTo(Duration.ofSeconds(5));
+    }
+
+    @Test
+    public void should_hint_plan_average_for_operations_started_before_restart() {
+        operation("instance-1", Duration.ofSeconds(60));
+
+        assertThat(estimator.retryAfter("unknown-instance", "plan-id")).isEqualTo(Duration.ofSeconds(60));
+    }
+
+    @Test
+    public void should_estimate_each_operation_type_separately() {
+        operation("instance-1", Duration.ofSeconds(120));
+        operation("instance-2", OperationType.DEPROVISION, Duration.ofSeconds(10));
+
+        estimator.started("instance-1", "plan-id", OperationType.UPDATE);
+        assertThat(estimator.retryAfter("instance-1", "plan-id")).isEqualTo(Duration.ofSeconds(5));
+        estimator.started("instance-3", "plan-id", OperationType.PROVISION);
+        assertThat(estimator.retryAfter("instance-3", "plan-id")).isEqualTo(Duration.ofSeconds(120));
+        assertThat(estimator.retryAfter("unknown-instance", "plan-id")).isEqualTo(Duration.ofSeconds(10));
+    }
+
+    private void operation(String serviceInstanceId, Duration duration) {
+        operation(serviceInstanceId, OperationType.PROVISION, duration);
+    }
+
+    private void operation(String serviceInstanceId, OperationType type, Duration duration) {
+        estimator.started(serviceInstanceId, "plan-id", type);
+        clock.advance(duration);
+        estimator.completed(serviceInstanceId);
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import org.junit.Test;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BindingOperationStoreTest {
+
+    private final MutableClock clock = new MutableClock(Instant.parse("2020-01-01T00:00:00Z"));
+
+    private final BindingOperationStore store = new BindingOperationStore(Duration.ofHours(1), Duration.ofMinutes(15), clock);
+
+    @Test
+    public void should_mark_operations_in_progress_for_too_long_as_failed() {
+        BindingOperation stuck = store.start("binding-id", operation -> {
+        });
+
+        clock.advance(Duration.ofMinutes(16));
+
+        BindingOperation failed = store.get("binding-id").orElseThrow(IllegalStateException::new);
+        assertThat(failed.getOperationId()).isEqualTo(stuck.getOperationId());
+        assertThat(failed.getState()).isEqualTo(OperationState.FAILED);
+        assertThat(store.start("binding-id", operation -> {
+        }).getOperationId()).isNotEqualTo(stuck.getOperationId());
+    }
+
+    @Test
+    public void should_evict_completed_operations_after_retention() {
+        store.failed(store.start("binding-id", operation -> {
+        }), "target broker failure");
+
+        clock.advance(Duration.ofMinutes(61));
+
+        assertThat(store.get("binding-id")).isEmpty();
+    }
+
+    private static class MutableClock extends Clock {
+
+        private Instant instant;
+
+        private MutableClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void advance(Duration duration) {
+            instant = instant.plus(duration);
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class InFlightRequestCoalescerTest {
+
+    private final Clock clock = Clock.fixed(Instant.parse("2020-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+    @Test
+    public void duplicate_request_should_share_in_flight_request_result() throws Exception {
+        InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer(Duration.ZERO, clock);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(() -> coalescer.coalesce("bind:id", () -> {
+                calls.incrementAndGet();
+                started.countDown();
+                await(release);
+                return "result";
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<String> duplicate = executor.submit(() -> coalescer.coalesce("bind:id", () -> {
+                calls.incrementAndGet();
+                return "other result";
+            }));
+            Thread.sleep(100);
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+            assertThat(duplicate.get(5, TimeUnit.SECONDS)).isEqualTo("result");
+            assertThat(calls.get()).isEqualTo(1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void concurrent_requests_should_perform_each_request_once() throws Exception {
+        InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer(Duration.ofSeconds(30), clock);
+        int keys = 2000;
+        AtomicIntegerArray calls = new AtomicIntegerArray(keys);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 4; thread++) {
+                futures.add(executor.submit(() -> {
+                    for (int key = 0; key < keys; key++) {
+                        int index = key;
+                        coalescer.coalesce("bind:" + key, () -> calls.incrementAndGet(index));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+
+            for (int key = 0; key < keys; key++) {
+                assertThat(calls.get(key)).as("calls of request %d", key).isEqualTo(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void retried_request_should_get_recently_completed_result() {
+        InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer(Duration.ofSeconds(30), clock);
+
+        coalescer.coalesce("bind:id", () -> "result");
+
+        assertThat(coalescer.<String>coalesce("bind:id", () -> "other result")).isEqualTo("result");
+    }
+
+    @Test
+    public void result_with_zero_ttl_should_not_be_cached() {
+        InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer(Duration.ofSeconds(30), clock);
+        Function<String, Duration> resultTtl = result -> "in progress".equals(result) ? Duration.ofMillis(500) : Duration.ZERO;
+
+        coalescer.coalesce("last_operation:id", () -> "in progress", resultTtl);
+        assertThat(coalescer.coalesce("last_operation:id", () -> "succeeded", resultTtl)).isEqualTo("in progress");
+
+        coalescer.invalidate("last_operation:id");
+        coalescer.coalesce("last_operation:id", () -> "succeeded", resultTtl);
+        assertThat(coalescer.coalesce("last_operation:id", () -> "failed", resultTtl)).isEqualTo("failed");
+    }
+
+    @Test
+    public void invalidated_request_should_be_performed_again() {
+        InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer(Duration.ofSeconds(30), clock);
+        coalescer.coalesce("bind:id", () -> "result");
+
+        coalescer.invalidate("bind:id");
+
+        assertThat(coalescer.<String>coalesce("bind:id", () -> "other result")).isEqualTo("other result");
+    }
+
+    @Test
+    public void failed_request_should_not_be_cached() {
+        InFlightRequestCoalescer coalescer = new InFlightRequestCoalescer(Duration.ofSeconds(30), clock);
+
+        assertThatThrownBy(() -> coalescer.coalesce("bind:id", () -> {
+            throw new IllegalStateException("backend failure");
+        })).hasMessage("backend failure");
+
+        assertThat(coalescer.<String>coalesce("bind:id", () -> "result")).isEqualTo("result");
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
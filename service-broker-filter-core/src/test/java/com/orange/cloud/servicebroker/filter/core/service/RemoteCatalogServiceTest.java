@@ -0,0 +1,147 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import com.orange.cloud.servicebroker.filter.core.service.mapper.CatalogMapper;
+import com.orange.cloud.servicebroker.filter.core.service.mapper.SuffixedCatalogMapper;
+import feign.FeignException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.Mockito;
+
+import org.springframework.cloud.servicebroker.model.catalog.Catalog;
+import org.springframework.cloud.servicebroker.model.catalog.Plan;
+import org.springframework.cloud.servicebroker.model.catalog.ServiceDefinition;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RemoteCatalogServiceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final CatalogServiceClient client = Mockito.mock(CatalogServiceClient.class);
+
+    private final CatalogMapper catalogMapper = spy(new SuffixedCatalogMapper("-suffix"));
+
+    @Test
+    public void should_only_map_catalog_when_modified() {
+        when(client.getCatalogIfModified(any(), isNull())).thenReturn(ResponseEntity.ok().eTag("v1").body(catalog("service-one-id")));
+        when(client.getCatalogIfModified(any(), eq("\"v1\""))).thenThrow(notModified());
+        RemoteCatalogService catalogService = catalogService(null);
+
+        Catalog fetched = catalogService.refresh();
+        Catalog refreshed = catalogService.refresh();
+
+        assertThat(refreshed).isSameAs(fetched);
+        assertThat(catalogService.getCatalog().block().getServiceDefinitions().get(0).getId()).isEqualTo("service-one-id-suffix");
+        verify(catalogMapper, times(1)).toCatalog(any());
+    }
+
+    @Test
+    public void should_keep_serving_last_good_catalog_on_refresh_failure() {
+        when(client.getCatalogIfModified(any(), any()))
+                .thenReturn(ResponseEntity.ok(catalog("service-one-id")))
+                .thenThrow(new IllegalStateException("filtered broker unreachable"));
+        RemoteCatalogService catalogService = catalogService(null);
+        catalogService.refresh();
+
+        assertThatThrownBy(catalogService::refresh).isInstanceOf(IllegalStateException.class);
+
+        assertThat(catalogService.getServiceDefinition("service-one-id-suffix").block()).isNotNull();
+    }
+
+    @Test
+    public void should_serve_snapshot_on_cold_start_without_filtered_broker() throws Exception {
+        Path snapshotFile = folder.getRoot().toPath().resolve("catalog-snapshot.json");
+        when(client.getCatalogIfModified(any(), any())).thenReturn(ResponseEntity.ok().eTag("v1").body(catalog("service-one-id")));
+        catalogService(snapshotFile).refresh();
+
+        CatalogServiceClient unreachable = Mockito.mock(CatalogServiceClient.class);
+        when(unreachable.getCatalogIfModified(any(), any())).thenThrow(new IllegalStateException("filtered broker unreachable"));
+        RemoteCatalogService restarted = new RemoteCatalogService(unreachable, catalogMapper, Duration.ZERO, snapshotFile);
+
+        assertThat(restarted.getServiceDefinition("service-one-id-suffix").block()).isNotNull();
+    }
+
+    @Test
+    public void should_refresh_snapshot_catalog_on_startup_check() throws Exception {
+        Path snapshotFile = folder.getRoot().toPath().resolve("catalog-snapshot.json");
+        when(client.getCatalogIfModified(any(), any())).thenReturn(ResponseEntity.ok().eTag("v1").body(catalog("service-one-id")));
+        catalogService(snapshotFile).refresh();
+
+        CatalogServiceClient updated = Mockito.mock(CatalogServiceClient.class);
+        when(updated.getCatalogIfModified(any(), any())).thenReturn(ResponseEntity.ok().eTag("v2").body(catalog("service-two-id")));
+        RemoteCatalogService restarted = new RemoteCatalogService(updated, catalogMapper, Duration.ZERO, snapshotFile);
+        restarted.check().block();
+
+        assertThat(restarted.getServiceDefinition("service-two-id-suffix").block()).isNotNull();
+    }
+
+    @Test
+    public void should_pass_startup_check_with_snapshot_catalog_without_filtered_broker() throws Exception {
+        Path snapshotFile = folder.getRoot().toPath().resolve("catalog-snapshot.json");
+        when(client.getCatalogIfModified(any(), any())).thenReturn(ResponseEntity.ok().eTag("v1").body(catalog("service-one-id")));
+        catalogService(snapshotFile).refresh();
+
+        CatalogServiceClient unreachable = Mockito.mock(CatalogServiceClient.class);
+        when(unreachable.getCatalogIfModified(any(), any())).thenThrow(new IllegalStateException("filtered broker unreachable"));
+        RemoteCatalogService restarted = new RemoteCatalogService(unreachable, catalogMapper, Duration.ZERO, snapshotFile);
+
+        assertThat(restarted.check().block()).isNotNull();
+    }
+
+    private RemoteCatalogService catalogService(Path snapshotFile) {
+        return new RemoteCatalogService(client, catalogMapper, Duration.ZERO, snapshotFile);
+    }
+
+    private static FeignException notModified() {
+        return new FeignException(304, "Not Modified") {
+        };
+    }
+
+    private static Catalog catalog(String serviceId) {
+        return Catalog.builder()
+                .serviceDefinitions(ServiceDefinition.builder()
+                        .id(serviceId)
+                        .name("Service One")
+                        .description("Description for Service One")
+                        .bindable(true)
+                        .plans(Plan.builder()
+                                .id("plan-one-id")
+                                .name("Plan One")
+                                .description("Description for Plan One")
+                                .build())
+                        .build())
+                .build();
+    }
+
+}
@@ -29,12 +29,21 @@ import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
 
+import org.springframework.cloud.servicebroker.exception.ServiceInstanceBindingDoesNotExistException;
 import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceAppBindingResponse;
 import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingRequest;
+import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingResponse;
 import org.springframework.cloud.servicebroker.model.binding.DeleteServiceInstanceBindingRequest;
+import org.springframework.cloud.servicebroker.model.binding.GetLastServiceBindingOperationRequest;
+import org.springframework.cloud.servicebroker.model.binding.GetLastServiceBindingOperationResponse;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
 /**
  * @author Sebastien Bortolussi
  */
@@ -114,4 +123,69 @@ public class ServiceInstanceBindingServiceProxyTest {
         Mockito.verify(client).deleteServiceInstanceBinding("instance_id", "binding_id", "service_definition_id", "plan_id", OsbConstants.X_Broker_API_Version_Value);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void should_bind_in_background_when_async_bindings_are_accepted() throws Exception {
+        Mockito.when(client.createServiceInstanceBinding("instance_id", "binding_id", OsbConstants.X_Broker_API_Version_Value, asyncCreateServiceInstanceBindingRequest()))
+                .thenReturn(created());
+        BindingOperationStore bindingOperationStore = new BindingOperationStore(Duration.ofHours(1));
+        serviceInstanceBindingServiceProxy.setBindingOperationStore(bindingOperationStore);
+
+        CreateServiceInstanceBindingResponse response = serviceInstanceBindingServiceProxy.createServiceInstanceBinding(asyncCreateServiceInstanceBindingRequest()).block();
+
+        assertThat(response.isAsync()).isTrue();
+        assertThat(response.getOperation()).isNotEmpty();
+        Mockito.verify(filterRunner, Mockito.timeout(5000)).postBind(asyncCreateServiceInstanceBindingRequest(), new CreateServiceInstanceAppBindingResponse());
+        GetLastServiceBindingOperationResponse lastOperation = awaitCompletion(GetLastServiceBindingOperationRequest.builder()
+                .serviceInstanceId("instance_id")
+                .bindingId("binding_id")
+                .operation(response.getOperation())
+                .build());
+        assertThat(lastOperation.getState()).isEqualTo(OperationState.SUCCEEDED);
+    }
+
+    @Test
+    public void should_report_failed_binding_operation_when_any_post_filter_fails() throws Exception {
+        Mockito.when(client.createServiceInstanceBinding("instance_id", "binding_id", OsbConstants.X_Broker_API_Version_Value, asyncCreateServiceInstanceBindingRequest()))
+                .thenReturn(created());
+        Mockito.doThrow(new RuntimeException("filter failed"))
+                .when(filterRunner).postBind(asyncCreateServiceInstanceBindingRequest(), new CreateServiceInstanceAppBindingResponse());
+        serviceInstanceBindingServiceProxy.setBindingOperationStore(new BindingOperationStore(Duration.ofHours(1)));
+
+        serviceInstanceBindingServiceProxy.createServiceInstanceBinding(asyncCreateServiceInstanceBindingRequest()).block();
+
+        GetLastServiceBindingOperationResponse lastOperation = awaitCompletion(GetLastServiceBindingOperationRequest.builder()
+                .serviceInstanceId("instance_id")
+                .bindingId("binding_id")
+                .build());
+        assertThat(lastOperation.getState()).isEqualTo(OperationState.FAILED);
+        assertThat(lastOperation.getDescription()).isEqualTo("filter failed");
+    }
+
+    @Test
+    public void should_answer_binding_last_operation_as_gone_when_async_bindings_are_disabled() {
+        this.thrown.expect(ServiceInstanceBindingDoesNotExistException.class);
+
+        serviceInstanceBindingServiceProxy.getLastOperation(GetLastServiceBindingOperationRequest.builder()
+                .serviceInstanceId("instance_id")
+                .bindingId("binding_id")
+                .build());
+    }
+
+    private static CreateServiceInstanceBindingRequest asyncCreateServiceInstanceBindingRequest() {
+        return CreateServiceInstanceBindingRequest.builder()
+                .serviceInstanceId("instance_id")
+                .bindingId("binding_id")
+                .asyncAccepted(true)
+                .build();
+    }
+
+    private GetLastServiceBindingOperationResponse awaitCompletion(GetLastServiceBindingOperationRequest request) throws InterruptedException {
+        GetLastServiceBindingOperationResponse lastOperation = serviceInstanceBindingServiceProxy.getLastOperation(request).block();
+        for (int i = 0; i < 50 && lastOperation.getState() == OperationState.IN_PROGRESS; i++) {
+            Thread.sleep(100);
+            lastOperation = serviceInstanceBindingServiceProxy.getLastOperation(request).block();
+        }
+        return lastOperation;
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.service;
+
+import com.orange.cloud.servicebroker.filter.core.service.mapper.DefaultServiceInstanceRequestMapper;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import org.springframework.cloud.servicebroker.model.instance.GetLastServiceOperationRequest;
+import org.springframework.cloud.servicebroker.model.instance.GetLastServiceOperationResponse;
+import org.springframework.cloud.servicebroker.model.instance.OperationState;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ServiceInstanceServiceProxyTest {
+
+    @Spy
+    DefaultServiceInstanceRequestMapper mapper;
+    @Mock
+    private ServiceInstanceServiceClient client;
+    @InjectMocks
+    private ServiceInstanceServiceProxy serviceInstanceServiceProxy;
+
+    private static GetLastServiceOperationRequest lastOperationRequest() {
+        return GetLastServiceOperationRequest.builder()
+                .serviceInstanceId("instance_id")
+                .build();
+    }
+
+    private static ResponseEntity<GetLastServiceOperationResponse> lastOperation(OperationState state) {
+        return ResponseEntity.ok(GetLastServiceOperationResponse.builder().operationState(state).build());
+    }
+
+    @Test
+    public void should_cache_in_progress_last_operation_when_enabled() {
+        serviceInstanceServiceProxy.setInProgressTtl(Duration.ofSeconds(10));
+        Mockito.when(client.getServiceInstanceLastOperation("instance_id", OsbConstants.X_Broker_API_Version_Value))
+                .thenReturn(lastOperation(OperationState.IN_PROGRESS), lastOperation(OperationState.SUCCEEDED));
+
+        serviceInstanceServiceProxy.getLastOperation(lastOperationRequest()).block();
+        GetLastServiceOperationResponse response = serviceInstanceServiceProxy.getLastOperation(lastOperationRequest()).block();
+
+        assertThat(response.getState()).isEqualTo(OperationState.IN_PROGRESS);
+        Mockito.verify(client, Mockito.times(1)).getServiceInstanceLastOperation("instance_id", OsbConstants.X_Broker_API_Version_Value);
+    }
+
+    @Test
+    public void should_never_cache_terminal_last_operation() {
+        serviceInstanceServiceProxy.setInProgressTtl(Duration.ofSeconds(10));
+        Mockito.when(client.getServiceInstanceLastOperation("instance_id", OsbConstants.X_Broker_API_Version_Value))
+                .thenReturn(lastOperation(OperationState.SUCCEEDED), lastOperation(OperationState.IN_PROGRESS));
+
+        serviceInstanceServiceProxy.getLastOperation(lastOperationRequest()).block();
+        GetLastServiceOperationResponse response = serviceInstanceServiceProxy.getLastOperation(lastOperationRequest()).block();
+
+        assertThat(response.getState()).isEqualTo(OperationState.IN_PROGRESS);
+    }
+
+    @Test
+    public void should_not_cache_in_progress_last_operation_by_default() {
+        Mockito.when(client.getServiceInstanceLastOperation("instance_id", OsbConstants.X_Broker_API_Version_Value))
+                .thenReturn(lastOperation(OperationState.IN_PROGRESS), lastOperation(OperationState.SUCCEEDED));
+
+        serviceInstanceServiceProxy.getLastOperation(lastOperationRequest()).block();
+        GetLastServiceOperationResponse response = serviceInstanceServiceProxy.getLastOperation(lastOperationRequest()).block();
+
+        assertThat(response.getState()).isEqualTo(OperationState.SUCCEEDED);
+    }
+
+}
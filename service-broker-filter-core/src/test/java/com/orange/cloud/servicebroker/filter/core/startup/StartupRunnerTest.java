@@ -0,0 +1,106 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.startup;
+
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class StartupRunnerTest {
+
+    @Test
+    public void should_be_out_of_service_until_checks_completed() {
+        StartupRunner startupRunner = startupRunner(check("catalog", Mono.never(), t -> true));
+
+        startupRunner.start();
+
+        assertThat(startupRunner.health().getStatus()).isEqualTo(Status.OUT_OF_SERVICE);
+        assertThat(startupRunner.health().getDetails()).containsEntry("catalog", StartupRunner.PENDING);
+    }
+
+    @Test
+    public void should_retry_failed_checks_until_up() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        StartupRunner startupRunner = startupRunner(
+                check("catalog", Mono.fromCallable(() -> {
+                    if (attempts.incrementAndGet() < 3) {
+                        throw new IllegalStateException("target broker unreachable");
+                    }
+                    return "catalog";
+                }), t -> true),
+                check("cloudfoundry", Mono.just("info"), t -> true));
+
+        assertThat(startupRunner.start().get(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(attempts.get()).isEqualTo(3);
+        assertThat(startupRunner.health().getStatus()).isEqualTo(Status.UP);
+    }
+
+    @Test
+    public void should_be_down_without_retrying_non_retryable_failures() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        StartupRunner startupRunner = startupRunner(
+                check("cloudfoundry", Mono.fromCallable(() -> {
+                    attempts.incrementAndGet();
+                    throw new IllegalArgumentException("bad credentials");
+                }), t -> !(t instanceof IllegalArgumentException)));
+
+        assertThat(startupRunner.start().get(5, TimeUnit.SECONDS)).isFalse();
+
+        assertThat(attempts.get()).isEqualTo(1);
+        assertThat(startupRunner.health().getStatus()).isEqualTo(Status.DOWN);
+        assertThat(startupRunner.health().getDetails().get("cloudfoundry").toString()).contains("bad credentials");
+    }
+
+    private static StartupRunner startupRunner(StartupCheck... checks) {
+        StartupRunner startupRunner = new StartupRunner();
+        ReflectionTestUtils.setField(startupRunner, "startupChecks", Arrays.asList(checks));
+        ReflectionTestUtils.setField(startupRunner, "minBackoff", Duration.ofMillis(10));
+        return startupRunner;
+    }
+
+    private static StartupCheck check(String name, Mono<?> check, Predicate<Throwable> retryable) {
+        return new StartupCheck() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public Mono<?> check() {
+                return check;
+            }
+
+            @Override
+            public boolean isRetryable(Throwable t) {
+                return retryable.test(t);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.warmup;
+
+import org.junit.Test;
+
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WarmUpRunnerTest {
+
+    @Test
+    public void should_run_warm_up_tasks_concurrently_despite_failures() {
+        CountDownLatch bothStarted = new CountDownLatch(2);
+        CountDownLatch completed = new CountDownLatch(1);
+        WarmUpRunner warmUpRunner = warmUpRunner(
+                task("failing", () -> {
+                    bothStarted.countDown();
+                    throw new IllegalStateException("target broker unreachable");
+                }),
+                task("waiting for the other one", () -> {
+                    bothStarted.countDown();
+                    if (bothStarted.await(5, TimeUnit.SECONDS)) {
+                        completed.countDown();
+                    }
+                }));
+
+        warmUpRunner.warmUp();
+
+        assertThat(completed.getCount()).isZero();
+    }
+
+    private static WarmUpRunner warmUpRunner(WarmUpTask... tasks) {
+        WarmUpRunner warmUpRunner = new WarmUpRunner();
+        ReflectionTestUtils.setField(warmUpRunner, "warmUpTasks", Arrays.asList(tasks));
+        ReflectionTestUtils.setField(warmUpRunner, "timeout", Duration.ofSeconds(10));
+        return warmUpRunner;
+    }
+
+    private static WarmUpTask task(String name, Action action) {
+        return new WarmUpTask() {
+            @Override
+            public String name() {
+                return name;
+            }
+
+            @Override
+            public void warmUp() throws Exception {
+                action.run();
+            }
+        };
+    }
+
+    private interface Action {
+        void run() throws Exception;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import org.springframework.cloud.servicebroker.model.catalog.Catalog;
+import org.springframework.cloud.servicebroker.model.catalog.Plan;
+import org.springframework.cloud.servicebroker.model.catalog.ServiceDefinition;
+import org.springframework.cloud.servicebroker.service.BeanCatalogService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CatalogResponseFilterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final CatalogResponseFilter filter = new CatalogResponseFilter(new BeanCatalogService(catalog()), objectMapper);
+
+    @Test
+    public void should_serve_serialized_catalog_with_entity_tag() throws Exception {
+        MockHttpServletResponse response = get(new MockHttpServletRequest("GET", "/v2/catalog"));
+
+        assertThat(response.getStatus()).isEqualTo(200);
+        assertThat(response.getHeader(HttpHeaders.ETAG)).startsWith("\"");
+        assertThat(objectMapper.readValue(response.getContentAsByteArray(), Catalog.class)).isEqualTo(catalog());
+    }
+
+    @Test
+    public void should_serve_compressed_catalog_when_accepted() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v2/catalog");
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+
+        MockHttpServletResponse response = get(request);
+
+        assertThat(response.getHeader(HttpHeaders.CONTENT_ENCODING)).isEqualTo("gzip");
+        try (GZIPInputStream json = new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))) {
+            assertThat(objectMapper.readValue(json, Catalog.class)).isEqualTo(catalog());
+        }
+    }
+
+    @Test
+    public void should_honor_accept_encoding_quality_values() {
+        assertThat(CatalogResponseFilter.acceptsGzip("gzip;q=0, deflate")).isFalse();
+        assertThat(CatalogResponseFilter.acceptsGzip("deflate, GZIP ; q=0.5")).isTrue();
+        assertThat(CatalogResponseFilter.acceptsGzip("identity, *;q=0")).isFalse();
+        assertThat(CatalogResponseFilter.acceptsGzip("*")).isTrue();
+        assertThat(CatalogResponseFilter.acceptsGzip("*, gzip;q=0")).isFalse();
+        assertThat(CatalogResponseFilter.acceptsGzip("x-gzip-custom, deflate")).isFalse();
+        assertThat(CatalogResponseFilter.acceptsGzip(null)).isFalse();
+    }
+
+    @Test
+    public void should_answer_not_modified_when_entity_tag_matches() throws Exception {
+        String entityTag = get(new MockHttpServletRequest("GET", "/v2/catalog")).getHeader(HttpHeaders.ETAG);
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/v2/catalog");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, entityTag);
+
+        MockHttpServletResponse response = get(request);
+
+        assertThat(response.getStatus()).isEqualTo(304);
+        assertThat(response.getContentLength()).isZero();
+    }
+
+    @Test
+    public void should_not_filter_other_requests() throws Exception {
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/v2/service_instances/instance-id"), new MockHttpServletResponse(), chain);
+
+        assertThat(chain.getRequest()).isNotNull();
+    }
+
+    private MockHttpServletResponse get(MockHttpServletRequest request) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, new MockFilterChain());
+        return response;
+    }
+
+    private static Catalog catalog() {
+        return Catalog.builder()
+                .serviceDefinitions(ServiceDefinition.builder()
+                        .id("service-one-id")
+                        .name("Service One")
+                        .description("Description for Service One")
+                        .bindable(true)
+                        .plans(Plan.builder()
+                                .id("plan-one-id")
+                                .name("Plan One")
+                                .description("Description for Plan One")
+                                .build())
+                        .build())
+                .build();
+    }
+
+}
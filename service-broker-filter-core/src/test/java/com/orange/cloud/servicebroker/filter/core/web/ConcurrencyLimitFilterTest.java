@@ -0,0 +1,73 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.web;
+
+import com.orange.cloud.servicebroker.filter.core.resilience.AdaptiveConcurrencyLimit;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConcurrencyLimitFilterTest {
+
+    private final AdaptiveConcurrencyLimit limit = new AdaptiveConcurrencyLimit(1, 1, 1, 1.5, new SimpleMeterRegistry());
+
+    private final ConcurrencyLimitFilter filter = new ConcurrencyLimitFilter(limit, HttpStatus.TOO_MANY_REQUESTS, 2);
+
+    @Test
+    public void should_shed_osb_requests_beyond_limit() throws Exception {
+        assertThat(limit.tryAcquire()).isTrue();
+        MockFilterChain chain = new MockFilterChain();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("PUT", "/v2/service_instances/instance-id/service_bindings/binding-id"), response, chain);
+
+        assertThat(response.getStatus()).isEqualTo(429);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+        assertThat(response.getContentAsString()).contains("description");
+        assertThat(chain.getRequest()).isNull();
+    }
+
+    @Test
+    public void should_never_shed_catalog_nor_non_osb_requests() throws Exception {
+        assertThat(limit.tryAcquire()).isTrue();
+
+        MockFilterChain catalogChain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", "/v2/catalog"), new MockHttpServletResponse(), catalogChain);
+        MockFilterChain healthChain = new MockFilterChain();
+        filter.doFilter(new MockHttpServletRequest("GET", "/actuator/health"), new MockHttpServletResponse(), healthChain);
+
+        assertThat(catalogChain.getRequest()).isNotNull();
+        assertThat(healthChain.getRequest()).isNotNull();
+    }
+
+    @Test
+    public void should_release_limit_once_request_completed() throws Exception {
+        filter.doFilter(new MockHttpServletRequest("DELETE", "/v2/service_instances/instance-id"), new MockHttpServletResponse(), new MockFilterChain());
+
+        assertThat(limit.getInFlight()).isZero();
+        assertThat(limit.tryAcquire()).isTrue();
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.web;
+
+import com.orange.cloud.servicebroker.filter.core.deadline.Deadline;
+import com.orange.cloud.servicebroker.filter.core.deadline.DeadlineContext;
+import org.junit.Test;
+
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class DeadlineFilterTest {
+
+    private final DeadlineFilter filter = new DeadlineFilter(Duration.ofSeconds(55), "X-Request-Timeout");
+
+    @Test
+    public void should_set_configured_budget_while_serving_osb_requests() throws Exception {
+        Deadline deadline = deadlineSeenBy(new MockHttpServletRequest("PUT", "/v2/service_instances/instance-id/service_bindings/binding-id"));
+
+        assertThat(deadline.remaining()).isGreaterThan(Duration.ofSeconds(50)).isLessThanOrEqualTo(Duration.ofSeconds(55));
+        assertThat(DeadlineContext.current()).isEmpty();
+    }
+
+    @Test
+    public void should_shorten_budget_to_client_advertised_timeout() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/v2/service_instances/instance-id");
+        request.addHeader("X-Request-Timeout", "10");
+
+        assertThat(deadlineSeenBy(request).remaining()).isLessThanOrEqualTo(Duration.ofSeconds(10));
+    }
+
+    @Test
+    public void should_not_set_deadline_on_other_requests() throws Exception {
+        assertThat(deadlineSeenBy(new MockHttpServletRequest("GET", "/actuator/health"))).isNull();
+    }
+
+    private Deadline deadlineSeenBy(MockHttpServletRequest request) throws Exception {
+        AtomicReference<Deadline> deadline = new AtomicReference<>();
+        filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> deadline.set(DeadlineContext.current().orElse(null)));
+        return deadline.get();
+    }
+
+}
@@ -0,0 +1,212 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.core.web;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.orange.cloud.servicebroker.filter.core.filters.CreateServiceInstanceBindingRawPostFilter;
+import com.orange.cloud.servicebroker.filter.core.filters.ServiceInstanceBindingFilterRunner;
+import com.orange.cloud.servicebroker.filter.core.resilience.TargetBrokerUnavailableException;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import org.junit.Test;
+
+import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceAppBindingResponse;
+import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.net.URL;
+import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class PassthroughFilterTest {
+
+    private final List<Request> targetRequests = new ArrayList<>();
+
+    private final List<String> targetBodies = new ArrayList<>();
+
+    private int targetStatus = 202;
+
+    private final OkHttpClient client = new OkHttpClient.Builder()
+            .addInterceptor(chain -> {
+                Request request = chain.request();
+                targetRequests.add(request);
+                if (request.body() != null) {
+                    Buffer buffer = new Buffer();
+                    request.body().writeTo(buffer);
+                    targetBodies.add(buffer.readUtf8());
+                }
+                return new Response.Builder()
+                        .request(request)
+                        .protocol(Protocol.HTTP_1_1)
+                        .code(targetStatus)
+                        .message("")
+                        .header(HttpHeaders.RETRY_AFTER, "10")
+                        .body(ResponseBody.create(okhttp3.MediaType.get("application/json"), "{\"operation\":\"provisioning\"}"))
+                        .build();
+            })
+            .build();
+
+    @Test
+    public void should_stream_provision_request_and_response() throws Exception {
+        PassthroughFilter filter = filter("");
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/v2/service_instances/instance-id");
+        request.setQueryString("accepts_incomplete=true");
+        request.addHeader("X-Broker-API-Version", "2.14");
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Basic Y2M6Y2M=");
+        request.setContentType("application/json");
+        request.setContent("{\"service_id\":\"mysql\",\"plan_id\":\"small\",\"parameters\":{\"size\":\"10GB\"}}".getBytes());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(chain.getRequest()).isNull();
+        Request targetRequest = targetRequests.get(0);
+        assertThat(targetRequest.method()).isEqualTo("PUT");
+        assertThat(targetRequest.url().toString()).isEqualTo("https://broker.mydomain.org/base/v2/service_instances/instance-id?accepts_incomplete=true");
+        assertThat(targetRequest.header("X-Broker-API-Version")).isEqualTo("2.14");
+        assertThat(targetRequest.header(HttpHeaders.AUTHORIZATION)).isEqualTo("Basic dGFyZ2V0");
+        assertThat(targetBodies).containsExactly("{\"service_id\":\"mysql\",\"plan_id\":\"small\",\"parameters\":{\"size\":\"10GB\"}}");
+        assertThat(response.getStatus()).isEqualTo(202);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("10");
+        assertThat(response.getContentAsString()).isEqualTo("{\"operation\":\"provisioning\"}");
+    }
+
+    @Test
+    public void should_remove_suffix_from_query_parameters() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("DELETE", "/v2/service_instances/instance-id");
+        request.setQueryString("service_id=mysql-sec&plan_id=small-sec&accepts_incomplete=true");
+
+        filter("-sec").doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        assertThat(targetRequests.get(0).url().query()).isEqualTo("service_id=mysql&plan_id=small&accepts_incomplete=true");
+    }
+
+    @Test
+    public void should_not_stream_requests_needing_body_rewrite_nor_other_requests() throws Exception {
+        PassthroughFilter filter = filter("-sec");
+        for (MockHttpServletRequest request : new MockHttpServletRequest[]{
+                new MockHttpServletRequest("PUT", "/v2/service_instances/instance-id"),
+                new MockHttpServletRequest("PUT", "/v2/service_instances/instance-id/service_bindings/binding-id"),
+                new MockHttpServletRequest("GET", "/v2/service_instances/instance-id"),
+                new MockHttpServletRequest("GET", "/v2/catalog")}) {
+            MockFilterChain chain = new MockFilterChain();
+
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+
+            assertThat(chain.getRequest()).isSameAs(request);
+        }
+        assertThat(targetRequests).isEmpty();
+    }
+
+    @Test
+    public void should_run_raw_post_bind_filters_and_forward_binding_response_unchanged() throws Exception {
+        List<String> postBindings = new ArrayList<>();
+        ServiceInstanceBindingFilterRunner filterRunner = new ServiceInstanceBindingFilterRunner();
+        filterRunner.setCreateServiceInstanceBindingPostFilters(Collections.singletonList(new CreateServiceInstanceBindingRawPostFilter() {
+            @Override
+            public void run(CreateServiceInstanceBindingRequest request, byte[] responseBody) {
+                postBindings.add(request.getBindingId() + " " + new String(responseBody, StandardCharsets.UTF_8));
+            }
+
+            @Override
+            public void run(CreateServiceInstanceBindingRequest request, CreateServiceInstanceAppBindingResponse response) {
+                throw new AssertionError("binding response should not be mapped");
+            }
+        }));
+        PassthroughFilter filter = new PassthroughFilter(client, new URL("https://broker.mydomain.org/base"), "Basic dGFyZ2V0", "",
+                filterRunner, new ObjectMapper(), false);
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/v2/service_instances/instance-id/service_bindings/binding-id");
+        request.setContentType("application/json");
+        request.setContent("{\"service_id\":\"mysql\",\"plan_id\":\"small\"}".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        targetStatus = 201;
+
+        filter.doFilter(request, response, chain);
+
+        assertThat(chain.getRequest()).isNull();
+        assertThat(targetBodies).containsExactly("{\"service_id\":\"mysql\",\"plan_id\":\"small\"}");
+        assertThat(postBindings).containsExactly("binding-id {\"operation\":\"provisioning\"}");
+        assertThat(response.getStatus()).isEqualTo(201);
+        assertThat(response.getContentAsString()).isEqualTo("{\"operation\":\"provisioning\"}");
+    }
+
+    @Test
+    public void should_reject_unreadable_bind_request_without_calling_target_broker() throws Exception {
+        ServiceInstanceBindingFilterRunner filterRunner = new ServiceInstanceBindingFilterRunner();
+        filterRunner.setCreateServiceInstanceBindingPostFilters(Collections.singletonList(new CreateServiceInstanceBindingRawPostFilter() {
+            @Override
+            public void run(CreateServiceInstanceBindingRequest request, byte[] responseBody) {
+                throw new AssertionError("no binding should be filtered");
+            }
+
+            @Override
+            public void run(CreateServiceInstanceBindingRequest request, CreateServiceInstanceAppBindingResponse response) {
+                throw new AssertionError("no binding should be filtered");
+            }
+        }));
+        PassthroughFilter filter = new PassthroughFilter(client, new URL("https://broker.mydomain.org/base"), "Basic dGFyZ2V0", "",
+                filterRunner, new ObjectMapper(), false);
+        MockHttpServletRequest request = new MockHttpServletRequest("PUT", "/v2/service_instances/instance-id/service_bindings/binding-id");
+        request.setContentType("application/json");
+        request.setContent("{\"service_id\":".getBytes(StandardCharsets.UTF_8));
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request, response, new MockFilterChain());
+
+        assertThat(targetRequests).isEmpty();
+        assertThat(response.getStatus()).isEqualTo(422);
+        assertThat(response.getContentAsString()).contains("Unable to read bind request body");
+    }
+
+    @Test
+    public void should_answer_unavailable_when_target_broker_is_guarded() throws Exception {
+        OkHttpClient guardedClient = new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    throw new TargetBrokerUnavailableException("Target broker unavailable.", Duration.ofMillis(1500));
+                })
+                .build();
+        PassthroughFilter filter = new PassthroughFilter(guardedClient, new URL("https://broker.mydomain.org/base"), "Basic dGFyZ2V0", "");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/v2/service_instances/instance-id/last_operation"), response, new MockFilterChain());
+
+        assertThat(response.getStatus()).isEqualTo(503);
+        assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("2");
+        assertThat(response.getContentAsString()).contains("Target broker unavailable.");
+    }
+
+    private PassthroughFilter filter(String suffix) throws IOException {
+        return new PassthroughFilter(client, new URL("https://broker.mydomain.org/base/"), "Basic dGFyZ2V0", suffix);
+    }
+
+}
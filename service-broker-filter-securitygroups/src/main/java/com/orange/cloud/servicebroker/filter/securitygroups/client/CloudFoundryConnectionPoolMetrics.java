@@ -0,0 +1,156 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.client;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.netty.ConnectionObserver;
+import reactor.netty.http.client.HttpClient;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Instruments the Cloud Foundry client connection pool: pool acquire latency, and active, idle and pending
+ * connection gauges. Reactor Netty own client metrics (connect, TLS handshake, DNS resolution, request timings)
+ * are enabled as well, and published under {@code reactor.netty.http.client}. Their uri tag is the request path with
+ * GUIDs collapsed, so that security groups, bindings and instances do not each get their own meters.
+ * <p>
+ * Optionally closes pooled connections left idle longer than a max idle time, so that connections to a
+ * failed over Cloud Controller instance do not linger in the pool.
+ */
+public class CloudFoundryConnectionPoolMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(CloudFoundryConnectionPoolMetrics.class);
+
+    static final String IDLE_HANDLER = "cloudfoundry.idleConnectionCloser";
+
+    static final String GUID_PLACEHOLDER = "{guid}";
+
+    private static final Pattern GUID = Pattern.compile("[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}");
+
+    private final Set<Channel> openConnections = ConcurrentHashMap.newKeySet();
+
+    private final Set<Channel> activeConnections = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger pendingAcquires = new AtomicInteger();
+
+    private final Timer acquireTimer;
+
+    private final Duration maxIdleTime;
+
+    /**
+     * @param meterRegistry where to publish metrics
+     * @param maxIdleTime   how long a pooled connection may stay idle before being closed, or null to keep them
+     */
+    public CloudFoundryConnectionPoolMetrics(MeterRegistry meterRegistry, Duration maxIdleTime) {
+        this.maxIdleTime = maxIdleTime;
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : new SimpleMeterRegistry();
+        this.acquireTimer = Timer.builder("cloudfoundry.connections.acquire")
+                .description("Time to acquire a connection to the Cloud Controller or UAA from the pool, including connection establishment")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(registry);
+        Gauge.builder("cloudfoundry.connections.active", activeConnections, Set::size)
+                .description("Connections to the Cloud Controller or UAA currently serving a request")
+                .register(registry);
+        Gauge.builder("cloudfoundry.connections.idle", this, metrics -> Math.max(0, metrics.openConnections.size() - metrics.activeConnections.size()))
+                .description("Connections to the Cloud Controller or UAA idle in the pool")
+                .register(registry);
+        Gauge.builder("cloudfoundry.connections.pending", pendingAcquires, AtomicInteger::get)
+                .description("Requests waiting for a connection to the Cloud Controller or UAA")
+                .register(registry);
+    }
+
+    /**
+     * @param httpClient the Cloud Foundry client http client
+     * @return the instrumented http client
+     */
+    public HttpClient instrument(HttpClient httpClient) {
+        return httpClient
+                .metrics(true, CloudFoundryConnectionPoolMetrics::uriTemplate)
+                .mapConnect((connection, bootstrap) -> Mono.defer(() -> {
+                    long start = System.nanoTime();
+                    pendingAcquires.incrementAndGet();
+                    return connection
+                            .doOnSuccess(c -> acquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS))
+                            .doFinally(signal -> pendingAcquires.decrementAndGet());
+                }))
+                .observe((connection, state) -> {
+                    Channel channel = connection.channel();
+                    if (state == ConnectionObserver.State.CONNECTED) {
+                        if (openConnections.add(channel)) {
+                            channel.closeFuture().addListener(future -> {
+                                openConnections.remove(channel);
+                                activeConnections.remove(channel);
+                            });
+                            closeWhenIdle(channel);
+                        }
+                        activeConnections.add(channel);
+                    } else if (state == ConnectionObserver.State.ACQUIRED) {
+                        activeConnections.add(channel);
+                    } else if (state == ConnectionObserver.State.RELEASED) {
+                        activeConnections.remove(channel);
+                    }
+                });
+    }
+
+    /*
+    e.g. /v2/security_groups/{guid}/spaces/{guid}, query strings are dropped as they carry names and filters.
+     */
+    static String uriTemplate(String uri) {
+        int end = uri.length();
+        for (char delimiter : new char[]{'?', '#'}) {
+            int index = uri.indexOf(delimiter);
+            if (index >= 0 && index < end) {
+                end = index;
+            }
+        }
+        return GUID.matcher(uri.substring(0, end)).replaceAll(GUID_PLACEHOLDER);
+    }
+
+    private void closeWhenIdle(Channel channel) {
+        if (maxIdleTime == null || channel.pipeline().get(IDLE_HANDLER) != null) {
+            return;
+        }
+        channel.pipeline().addFirst(IDLE_HANDLER, new IdleStateHandler(0, 0, maxIdleTime.toMillis(), TimeUnit.MILLISECONDS) {
+            @Override
+            protected void channelIdle(ChannelHandlerContext ctx, IdleStateEvent evt) throws Exception {
+                if (!activeConnections.contains(ctx.channel())) {
+                    log.debug("Closing Cloud Foundry connection {} idle for more than {}", ctx.channel(), maxIdleTime);
+                    ctx.close();
+                    return;
+                }
+                super.channelIdle(ctx, evt);
+            }
+        });
+    }
+
+}
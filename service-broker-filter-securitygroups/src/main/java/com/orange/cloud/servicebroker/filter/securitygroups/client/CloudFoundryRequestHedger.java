@@ -0,0 +1,145 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Hedges idempotent Cloud Controller reads: when a response takes longer than a percentile of recently observed
+ * latencies, a second identical request is sent, the first response is kept and the other request is cancelled.
+ * Observed latencies are measured from the first request start, whichever request responds.
+ * <p>
+ * Hedged requests are capped by a budget, a ratio of all requests, so that hedging never adds more than a few
+ * percent of extra load on the Cloud Controller, even when it is uniformly slow. Only use for idempotent requests.
+ */
+public class CloudFoundryRequestHedger {
+
+    private static final CloudFoundryRequestHedger DISABLED = new CloudFoundryRequestHedger();
+
+    static final int LATENCY_SAMPLES = 256;
+
+    private static final double MAX_BUDGET = 10;
+
+    private final boolean enabled;
+
+    private final double percentile;
+
+    private final Duration minDelay;
+
+    private final double budgetRatio;
+
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+
+    private int recorded;
+
+    private double budget;
+
+    private final Counter hedged;
+
+    private CloudFoundryRequestHedger() {
+        this.enabled = false;
+        this.percentile = 0;
+        this.minDelay = Duration.ZERO;
+        this.budgetRatio = 0;
+        this.hedged = null;
+    }
+
+    /**
+     * @param percentile    percentile of recent latencies after which a request is hedged, e.g. 0.95
+     * @param minDelay      minimum delay before hedging a request, also used until enough latencies are observed
+     * @param budgetRatio   maximum ratio of hedged requests, e.g. 0.05
+     * @param meterRegistry where to publish the number of hedged requests
+     */
+    public CloudFoundryRequestHedger(double percentile, Duration minDelay, double budgetRatio, MeterRegistry meterRegistry) {
+        this.enabled = true;
+        this.percentile = percentile;
+        this.minDelay = minDelay;
+        this.budgetRatio = budgetRatio;
+        this.hedged = Counter.builder("cloudfoundry.requests.hedged")
+                .description("Idempotent Cloud Controller requests sent twice because the first one was slow")
+                .register(meterRegistry != null ? meterRegistry : new SimpleMeterRegistry());
+    }
+
+    /**
+     * @return a hedger never hedging requests
+     */
+    public static CloudFoundryRequestHedger disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * @param request an idempotent request, subscribed again when hedged
+     * @param <T>     the response type
+     * @return the first response of the request or its hedge
+     */
+    public <T> Mono<T> hedge(Mono<T> request) {
+        if (!enabled) {
+            return request;
+        }
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            earnBudget();
+            // the hedge never wins by failing or being denied: the primary request outcome is then awaited
+            Mono<T> hedge = Mono.delay(hedgeDelay())
+                    .flatMap(tick -> spendBudget() ? request : Mono.<T>never())
+                    .onErrorResume(t -> Mono.never());
+            // the winning response is timed from the primary start: primaries lost to their hedge were at least that slow,
+            // so that the delay does not drift down to the fastest primaries. Cancelled requests are not recorded.
+            return Mono.first(request, hedge)
+                    .doOnSuccess(response -> record(System.nanoTime() - start));
+        });
+    }
+
+    synchronized Duration hedgeDelay() {
+        int samples = Math.min(recorded, LATENCY_SAMPLES);
+        if (samples < LATENCY_SAMPLES / 4) {
+            return minDelay;
+        }
+        long[] sorted = Arrays.copyOf(latencies, samples);
+        Arrays.sort(sorted);
+        long delay = sorted[Math.min(samples - 1, (int) Math.ceil(percentile * samples) - 1)];
+        return delay > minDelay.toNanos() ? Duration.ofNanos(delay) : minDelay;
+    }
+
+    private synchronized void record(long latencyNanos) {
+        latencies[recorded++ % LATENCY_SAMPLES] = latencyNanos;
+        if (recorded == Integer.MAX_VALUE) {
+            recorded = LATENCY_SAMPLES;
+        }
+    }
+
+    private synchronized void earnBudget() {
+        budget = Math.min(MAX_BUDGET, budget + budgetRatio);
+    }
+
+    private synchronized boolean spendBudget() {
+        if (budget < 1) {
+            return false;
+        }
+        budget--;
+        hedged.increment();
+        return true;
+    }
+
+}
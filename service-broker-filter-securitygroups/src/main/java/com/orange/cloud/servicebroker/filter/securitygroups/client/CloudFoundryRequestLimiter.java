@@ -0,0 +1,306 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.HttpHeaders;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client side token bucket rate limiter for Cloud Controller requests.
+ * <p>
+ * Requests wait for a token before being sent. Waiting requests are granted tokens by {@link Priority}:
+ * bind and unbind requests are served before background ones. The bucket is also aligned with the Cloud Controller
+ * own per user rate limit, as advertised in {@code X-RateLimit-*} response headers: when the Cloud Controller
+ * reports no remaining requests, no token is granted until its rate limit window resets.
+ * <p>
+ * The priority of a request is read from the Reactor subscriber context, see {@link #withPriority(Priority)}.
+ */
+public class CloudFoundryRequestLimiter {
+
+    private static final Logger log = LoggerFactory.getLogger(CloudFoundryRequestLimiter.class);
+
+    static final String RATE_LIMIT_REMAINING = "X-RateLimit-Remaining";
+
+    static final String RATE_LIMIT_RESET = "X-RateLimit-Reset";
+
+    public enum Priority {
+        /*
+        Requests an OSB client is waiting for, e.g. a bind or unbind.
+         */
+        INTERACTIVE,
+        /*
+        Requests nobody is waiting for, e.g. outbox replays.
+         */
+        BACKGROUND
+    }
+
+    private static final CloudFoundryRequestLimiter UNLIMITED = new CloudFoundryRequestLimiter();
+
+    private final boolean enabled;
+
+    private final double requestsPerSecond;
+
+    private final double burst;
+
+    private final int maxQueued;
+
+    private final Scheduler scheduler;
+
+    private final Map<Priority, Deque<Waiter>> queues = new EnumMap<>(Priority.class);
+
+    private final Map<Priority, Timer> waitTimers = new EnumMap<>(Priority.class);
+
+    private final Map<Priority, Counter> rejections = new EnumMap<>(Priority.class);
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    private long pausedUntilMillis;
+
+    private int queued;
+
+    private boolean drainScheduled;
+
+    private CloudFoundryRequestLimiter() {
+        this.enabled = false;
+        this.requestsPerSecond = 0;
+        this.burst = 0;
+        this.maxQueued = 0;
+        this.scheduler = null;
+    }
+
+    /**
+     * @param requestsPerSecond sustained rate of requests
+     * @param burst             maximum number of requests sent at once after an idle period
+     * @param maxQueued         maximum number of requests waiting for a token, further requests are rejected
+     * @param meterRegistry     where to publish wait time and rejection metrics
+     */
+    public CloudFoundryRequestLimiter(double requestsPerSecond, int burst, int maxQueued, MeterRegistry meterRegistry) {
+        this(requestsPerSecond, burst, maxQueued, meterRegistry, Schedulers.parallel());
+    }
+
+    CloudFoundryRequestLimiter(double requestsPerSecond, int burst, int maxQueued, MeterRegistry meterRegistry, Scheduler scheduler) {
+        this.enabled = true;
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.maxQueued = maxQueued;
+        this.scheduler = scheduler;
+        this.tokens = this.burst;
+        this.lastRefillNanos = System.nanoTime();
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : new SimpleMeterRegistry();
+        for (Priority priority : Priority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            waitTimers.put(priority, Timer.builder("cloudfoundry.requests.ratelimit.wait")
+                    .description("Time Cloud Controller requests waited for the client side rate limiter")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(registry));
+            rejections.put(priority, Counter.builder("cloudfoundry.requests.ratelimit.rejected")
+                    .description("Cloud Controller requests rejected by the client side rate limiter")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(registry));
+        }
+    }
+
+    /**
+     * @return a limiter letting all requests through
+     */
+    public static CloudFoundryRequestLimiter unlimited() {
+        return UNLIMITED;
+    }
+
+    /**
+     * Sets the priority of the limited requests performed by the decorated publisher.
+     */
+    public static Context withPriority(Priority priority) {
+        return Context.of(Priority.class, priority);
+    }
+
+    /**
+     * Delays the subscription to a Cloud Controller request until the rate limit allows it.
+     *
+     * @param request the request to limit
+     * @param <T>     the response type
+     * @return the limited request
+     */
+    public <T> Mono<T> limit(Mono<T> request) {
+        if (!enabled) {
+            return request;
+        }
+        return Mono.subscriberContext()
+                .flatMap(context -> acquire(context.getOrDefault(Priority.class, Priority.INTERACTIVE)))
+                .then(request);
+    }
+
+    Mono<Void> acquire(Priority priority) {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(sink, priority, System.nanoTime());
+            boolean granted = false;
+            boolean rejected = false;
+            synchronized (this) {
+                refill();
+                if (queued == 0 && tokens >= 1 && !isPaused()) {
+                    tokens--;
+                    granted = true;
+                } else if (queued >= maxQueued) {
+                    rejected = true;
+                } else {
+                    queues.get(priority).addLast(waiter);
+                    queued++;
+                    sink.onCancel(() -> cancel(waiter));
+                }
+            }
+            if (granted) {
+                waiter.grant();
+            } else if (rejected) {
+                rejections.get(priority).increment();
+                sink.error(new RequestRateLimitExceeded(maxQueued));
+            } else {
+                scheduleDrain();
+            }
+        });
+    }
+
+    /**
+     * Aligns the bucket with the rate limit reported by the Cloud Controller.
+     *
+     * @param headers response headers of a Cloud Controller request
+     */
+    public void onResponseHeaders(HttpHeaders headers) {
+        if (!enabled) {
+            return;
+        }
+        String remaining = headers.get(RATE_LIMIT_REMAINING);
+        if (remaining == null) {
+            return;
+        }
+        try {
+            long remainingRequests = Long.parseLong(remaining.trim());
+            String reset = headers.get(RATE_LIMIT_RESET);
+            synchronized (this) {
+                tokens = Math.min(tokens, remainingRequests);
+                if (remainingRequests <= 0 && reset != null) {
+                    pausedUntilMillis = TimeUnit.SECONDS.toMillis(Long.parseLong(reset.trim()));
+                    log.warn("Cloud Controller rate limit exhausted, pausing requests until {}", pausedUntilMillis);
+                }
+            }
+        } catch (NumberFormatException e) {
+            log.debug("Ignoring unparseable Cloud Controller rate limit headers {}", headers);
+        }
+    }
+
+    private void cancel(Waiter waiter) {
+        synchronized (this) {
+            if (queues.get(waiter.priority).remove(waiter)) {
+                queued--;
+            }
+        }
+    }
+
+    private boolean isPaused() {
+        return System.currentTimeMillis() < pausedUntilMillis;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefillNanos) * requestsPerSecond / TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+
+    private void scheduleDrain() {
+        long delayNanos;
+        synchronized (this) {
+            if (drainScheduled || queued == 0) {
+                return;
+            }
+            drainScheduled = true;
+            if (isPaused()) {
+                delayNanos = TimeUnit.MILLISECONDS.toNanos(pausedUntilMillis - System.currentTimeMillis());
+            } else {
+                delayNanos = (long) (Math.max(0, 1 - tokens) * TimeUnit.SECONDS.toNanos(1) / requestsPerSecond);
+            }
+        }
+        scheduler.schedule(this::drain, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void drain() {
+        List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            drainScheduled = false;
+            refill();
+            if (!isPaused()) {
+                for (Priority priority : Priority.values()) {
+                    Deque<Waiter> queue = queues.get(priority);
+                    while (tokens >= 1 && !queue.isEmpty()) {
+                        granted.add(queue.removeFirst());
+                        queued--;
+                        tokens--;
+                    }
+                }
+            }
+        }
+        granted.forEach(Waiter::grant);
+        scheduleDrain();
+    }
+
+    private class Waiter {
+
+        private final MonoSink<Void> sink;
+
+        private final Priority priority;
+
+        private final long enqueuedNanos;
+
+        private Waiter(MonoSink<Void> sink, Priority priority, long enqueuedNanos) {
+            this.sink = sink;
+            this.priority = priority;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        private void grant() {
+            waitTimers.get(priority).record(System.nanoTime() - enqueuedNanos, TimeUnit.NANOSECONDS);
+            sink.success();
+        }
+    }
+
+    public static class RequestRateLimitExceeded extends RuntimeException {
+
+        public RequestRateLimitExceeded(int maxQueued) {
+            super(String.format("Too many Cloud Controller requests waiting for the rate limiter (max %d).", maxQueued));
+        }
+    }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.cloudfoundry.reactor.ConnectionContext;
+import org.cloudfoundry.reactor.TokenProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Optional;
+
+/**
+ * Caches the UAA access token and refreshes it in the background ahead of its expiry, so that Cloud Controller
+ * requests never wait for UAA in steady state.
+ * <p>
+ * The token expiry is read from the JWT {@code exp} claim. Tokens without a readable expiry are not cached,
+ * the delegate token provider is then used as is. When a background refresh fails, the current token keeps being
+ * served until it expires, and the refresh is retried.
+ */
+public class RefreshAheadTokenProvider implements TokenProvider {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshAheadTokenProvider.class);
+
+    static final Duration EXPIRY_MARGIN = Duration.ofSeconds(10);
+
+    static final Duration RETRY_DELAY = Duration.ofSeconds(10);
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
+    private final TokenProvider delegate;
+
+    private final Duration refreshAhead;
+
+    private final Clock clock;
+
+    private final Counter refreshFailures;
+
+    private volatile CachedToken current;
+
+    private volatile boolean passThrough;
+
+    private Mono<String> refreshing;
+
+    private Disposable scheduledRefresh;
+
+    private boolean disposed;
+
+    /**
+     * @param delegate      the token provider requesting tokens to UAA
+     * @param refreshAhead  how long before expiry tokens are refreshed, at most half of the token lifetime
+     * @param meterRegistry where to publish token age metrics
+     */
+    public RefreshAheadTokenProvider(TokenProvider delegate, Duration refreshAhead, MeterRegistry meterRegistry) {
+        this(delegate, refreshAhead, meterRegistry, Clock.systemUTC());
+    }
+
+    RefreshAheadTokenProvider(TokenProvider delegate, Duration refreshAhead, MeterRegistry meterRegistry, Clock clock) {
+        this.delegate = delegate;
+        this.refreshAhead = refreshAhead;
+        this.clock = clock;
+        MeterRegistry registry = meterRegistry != null ? meterRegistry : new SimpleMeterRegistry();
+        Gauge.builder("cloudfoundry.token.age", this, provider -> provider.tokenAge().map(Duration::getSeconds).orElse(-1L))
+                .description("Age of the cached UAA access token")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder("cloudfoundry.token.remaining", this, provider -> provider.tokenRemaining().map(Duration::getSeconds).orElse(-1L))
+                .description("Remaining validity of the cached UAA access token")
+                .baseUnit("seconds")
+                .register(registry);
+        this.refreshFailures = Counter.builder("cloudfoundry.token.refresh.failures")
+                .description("Failed background refreshes of the UAA access token")
+                .register(registry);
+    }
+
+    @Override
+    public Mono<String> getToken(ConnectionContext connectionContext) {
+        if (passThrough) {
+            return delegate.getToken(connectionContext);
+        }
+        CachedToken token = this.current;
+        if (token != null && token.isUsable(clock.instant())) {
+            return Mono.just(token.value);
+        }
+        return refresh(connectionContext);
+    }
+
+    @Override
+    public void invalidate(ConnectionContext connectionContext) {
+        log.debug("Invalidating cached UAA access token");
+        this.current = null;
+        delegate.invalidate(connectionContext);
+    }
+
+    /**
+     * Stops background refreshes.
+     */
+    public synchronized void dispose() {
+        disposed = true;
+        if (scheduledRefresh != null) {
+            scheduledRefresh.dispose();
+        }
+    }
+
+    Optional<Duration> tokenAge() {
+        return Optional.ofNullable(current).map(token -> Duration.between(token.obtainedAt, clock.instant()));
+    }
+
+    Optional<Duration> tokenRemaining() {
+        return Optional.ofNullable(current).map(token -> Duration.between(clock.instant(), token.expiresAt));
+    }
+
+    private synchronized Mono<String> refresh(ConnectionContext connectionContext) {
+        if (refreshing == null) {
+            refreshing = Mono.defer(() -> {
+                        // the delegate caches tokens as well: have it request a new one
+                        delegate.invalidate(connectionContext);
+                        return delegate.getToken(connectionContext);
+                    })
+                    .doOnNext(token -> onRefreshed(connectionContext, token))
+                    .doFinally(signal -> refreshed())
+                    .cache();
+        }
+        return refreshing;
+    }
+
+    private synchronized void refreshed() {
+        refreshing = null;
+    }
+
+    private void onRefreshed(ConnectionContext connectionContext, String token) {
+        Instant now = clock.instant();
+        Optional<Instant> expiresAt = expiry(token);
+        if (!expiresAt.isPresent()) {
+            log.warn("Unable to read UAA access token expiry, not refreshing it ahead");
+            passThrough = true;
+            return;
+        }
+        this.current = new CachedToken(token, now, expiresAt.get());
+        Duration lifetime = Duration.between(now, expiresAt.get());
+        Duration ahead = refreshAhead.compareTo(lifetime.dividedBy(2)) < 0 ? refreshAhead : lifetime.dividedBy(2);
+        log.debug("Obtained UAA access token expiring at {}, refreshing it in {}", expiresAt.get(), lifetime.minus(ahead));
+        scheduleRefresh(connectionContext, lifetime.minus(ahead));
+    }
+
+    private synchronized void scheduleRefresh(ConnectionContext connectionContext, Duration delay) {
+        if (disposed) {
+            return;
+        }
+        if (scheduledRefresh != null) {
+            scheduledRefresh.dispose();
+        }
+        scheduledRefresh = Mono.delay(delay.isNegative() ? Duration.ZERO : delay)
+                .then(Mono.defer(() -> refresh(connectionContext)))
+                .subscribe(token -> {
+                }, t -> {
+                    refreshFailures.increment();
+                    log.warn("Fail to refresh UAA access token ahead of expiry, will retry in {}. Error details {}", RETRY_DELAY, t.toString());
+                    scheduleRefresh(connectionContext, RETRY_DELAY);
+                });
+    }
+
+    static Optional<Instant> expiry(String token) {
+        try {
+            String jwt = token.substring(token.lastIndexOf(' ') + 1);
+            String[] parts = jwt.split("\\.");
+            if (parts.length < 2) {
+                return Optional.empty();
+            }
+            JsonNode claims = OBJECT_MAPPER.readTree(new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8));
+            return Optional.ofNullable(claims.get("exp"))
+                    .filter(JsonNode::canConvertToLong)
+                    .map(exp -> Instant.ofEpochSecond(exp.asLong()));
+        } catch (IOException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static class CachedToken {
+
+        private final String value;
+
+        private final Instant obtainedAt;
+
+        private final Instant expiresAt;
+
+        private CachedToken(String value, Instant obtainedAt, Instant expiresAt) {
+            this.value = value;
+            this.obtainedAt = obtainedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        private boolean isUsable(Instant now) {
+            return now.isBefore(expiresAt.minus(EXPIRY_MARGIN));
+        }
+    }
+
+}
@@ -1,29 +1,51 @@
 package com.orange.cloud.servicebroker.filter.securitygroups.config;
 
+import com.orange.cloud.servicebroker.filter.core.startup.StartupCheck;
+import org.cloudfoundry.AbstractCloudFoundryException;
 import org.cloudfoundry.client.CloudFoundryClient;
 import org.cloudfoundry.client.v2.info.GetInfoRequest;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.boot.CommandLineRunner;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
 import java.time.Duration;
 
 /**
  * This code forces a connection to CloudFoundry with provided credentials on app startup.
- * When bad credentials exception, app fails to start.
+ * The check runs in the background: when bad credentials exception, the app starts but its readiness stays DOWN.
  *
  */
 @Component
 @Profile("!offline-test-without-cf")
-public class CheckCloudFoundryConnection implements CommandLineRunner {
+public class CheckCloudFoundryConnection implements StartupCheck {
 
     @Autowired
     CloudFoundryClient cloudFoundryClient;
 
+    @Value("${broker.filter.startup.attempt-timeout:PT30S}")
+    Duration attemptTimeout = Duration.ofSeconds(30);
+
     @Override
-    public void run(String... strings) throws Exception {
+    public String name() {
+        return "cloudfoundry";
+    }
+
+    @Override
+    public Mono<?> check() {
         //basic get on info endpoint so as to perform a CloudFoundry CC API connection and thus assert credentials are valid
-        cloudFoundryClient.info().get(GetInfoRequest.builder().build()).block(Duration.ofMinutes(3));
+        return cloudFoundryClient.info().get(GetInfoRequest.builder().build()).timeout(attemptTimeout);
+    }
+
+    @Override
+    public boolean isRetryable(Throwable t) {
+        //retrying with the same bad credentials cannot succeed
+        return !(t instanceof AbstractCloudFoundryException && isUnauthorized(((AbstractCloudFoundryException) t).getStatusCode()));
     }
+
+    private static boolean isUnauthorized(int statusCode) {
+        return statusCode == 401 || statusCode == 403;
+    }
+
 }
@@ -22,6 +22,8 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+
 /**
  * Filtered broker connection settings
  *
@@ -36,10 +38,61 @@ public class CloudFoundryClientSettings {
     private String host;
     private String user;
     private String password;
+    /*
+    When set, a client_credentials grant is used instead of a password grant with user and password.
+     */
+    private String clientId;
+    private String clientSecret;
+    /*
+    How long before expiry the UAA access token is refreshed in the background.
+     */
+    private Duration tokenRefreshAhead = Duration.ofMinutes(2);
     private String proxyHost;
     private Integer proxyPort;
     private String proxyUsername;
     private String proxyPassword;
     private Boolean skipSslValidation = Boolean.FALSE;
+    /*
+    Maximum number of pooled connections to the Cloud Controller and UAA. Defaults to the Cloud Foundry client default.
+     */
+    private Integer connectionPoolSize;
+    /*
+    Number of event loop threads. Defaults to the Cloud Foundry client default.
+     */
+    private Integer threadPoolSize;
+    private Boolean keepAlive;
+    private Duration connectTimeout;
+    /*
+    How long a pooled connection may stay idle before being closed. Unset keeps idle connections open.
+     */
+    private Duration connectionMaxIdleTime;
+    private RateLimit rateLimit = new RateLimit();
+    private Hedging hedging = new Hedging();
+
+    /**
+     * Client side rate limiting of Cloud Controller requests
+     */
+    @Data
+    public static class RateLimit {
+
+        private boolean enabled = false;
+        private double requestsPerSecond = 10;
+        private int burst = 20;
+        private int maxQueued = 500;
+
+    }
+
+    /**
+     * Hedging of idempotent Cloud Controller reads
+     */
+    @Data
+    public static class Hedging {
+
+        private boolean enabled = false;
+        private double percentile = 0.95;
+        private Duration minDelay = Duration.ofMillis(100);
+        private double budgetRatio = 0.05;
+
+    }
 
 }
@@ -17,12 +17,20 @@
 
 package com.orange.cloud.servicebroker.filter.securitygroups.config;
 
+import com.orange.cloud.servicebroker.filter.core.proxy.NoProxyMatcher;
+import com.orange.cloud.servicebroker.filter.securitygroups.client.CloudFoundryConnectionPoolMetrics;
+import com.orange.cloud.servicebroker.filter.securitygroups.client.CloudFoundryRequestHedger;
+import com.orange.cloud.servicebroker.filter.securitygroups.client.CloudFoundryRequestLimiter;
+import com.orange.cloud.servicebroker.filter.securitygroups.client.RefreshAheadTokenProvider;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.cloudfoundry.reactor.ConnectionContext;
 import org.cloudfoundry.reactor.DefaultConnectionContext;
 import org.cloudfoundry.reactor.ProxyConfiguration;
 import org.cloudfoundry.reactor.TokenProvider;
 import org.cloudfoundry.reactor.client.ReactorCloudFoundryClient;
+import org.cloudfoundry.reactor.tokenprovider.ClientCredentialsGrantTokenProvider;
 import org.cloudfoundry.reactor.tokenprovider.PasswordGrantTokenProvider;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -30,6 +38,7 @@ import org.springframework.context.annotation.Profile;
 import org.springframework.util.StringUtils;
 
 import java.time.Duration;
+import java.util.Optional;
 
 /**
  * @author Sebastien Bortolussi
@@ -42,14 +51,47 @@ public class CloudfoundryClientConfig {
     CloudFoundryClientSettings cloudFoundryClientSettings;
 
     @Bean
-    DefaultConnectionContext connectionContext(CloudFoundryClientSettings cloudFoundryClientSettings) {
+    CloudFoundryRequestLimiter cloudFoundryRequestLimiter(CloudFoundryClientSettings cloudFoundryClientSettings, ObjectProvider<MeterRegistry> meterRegistry) {
+        CloudFoundryClientSettings.RateLimit rateLimit = cloudFoundryClientSettings.getRateLimit();
+        if (!rateLimit.isEnabled()) {
+            return CloudFoundryRequestLimiter.unlimited();
+        }
+        return new CloudFoundryRequestLimiter(rateLimit.getRequestsPerSecond(), rateLimit.getBurst(), rateLimit.getMaxQueued(), meterRegistry.getIfAvailable());
+    }
+
+    @Bean
+    CloudFoundryRequestHedger cloudFoundryRequestHedger(CloudFoundryClientSettings cloudFoundryClientSettings, ObjectProvider<MeterRegistry> meterRegistry) {
+        CloudFoundryClientSettings.Hedging hedging = cloudFoundryClientSettings.getHedging();
+        if (!hedging.isEnabled()) {
+            return CloudFoundryRequestHedger.disabled();
+        }
+        return new CloudFoundryRequestHedger(hedging.getPercentile(), hedging.getMinDelay(), hedging.getBudgetRatio(), meterRegistry.getIfAvailable());
+    }
+
+    @Bean
+    CloudFoundryConnectionPoolMetrics cloudFoundryConnectionPoolMetrics(CloudFoundryClientSettings cloudFoundryClientSettings, ObjectProvider<MeterRegistry> meterRegistry) {
+        return new CloudFoundryConnectionPoolMetrics(meterRegistry.getIfAvailable(), cloudFoundryClientSettings.getConnectionMaxIdleTime());
+    }
+
+    @Bean
+    DefaultConnectionContext connectionContext(CloudFoundryClientSettings cloudFoundryClientSettings, CloudFoundryRequestLimiter cloudFoundryRequestLimiter,
+                                               CloudFoundryConnectionPoolMetrics cloudFoundryConnectionPoolMetrics, ObjectProvider<NoProxyMatcher> noProxyMatcher) {
 
         DefaultConnectionContext.Builder connectionContext = DefaultConnectionContext.builder()
                 .apiHost(cloudFoundryClientSettings.getHost())
                 .sslHandshakeTimeout(Duration.ofSeconds(30))
-                .skipSslValidation(cloudFoundryClientSettings.getSkipSslValidation());
+                .skipSslValidation(cloudFoundryClientSettings.getSkipSslValidation())
+                .additionalHttpClientConfiguration(httpClient -> cloudFoundryConnectionPoolMetrics.instrument(httpClient)
+                        .doOnResponse((response, connection) -> cloudFoundryRequestLimiter.onResponseHeaders(response.responseHeaders())));
+
+        Optional.ofNullable(cloudFoundryClientSettings.getConnectionPoolSize()).ifPresent(connectionContext::connectionPoolSize);
+        Optional.ofNullable(cloudFoundryClientSettings.getThreadPoolSize()).ifPresent(connectionContext::threadPoolSize);
+        Optional.ofNullable(cloudFoundryClientSettings.getKeepAlive()).ifPresent(connectionContext::keepAlive);
+        Optional.ofNullable(cloudFoundryClientSettings.getConnectTimeout()).ifPresent(connectionContext::connectTimeout);
 
-        if (StringUtils.hasText(cloudFoundryClientSettings.getProxyHost())) {
+        // the connection context applies a single proxy configuration, to the api host and the UAA it advertises alike
+        if (StringUtils.hasText(cloudFoundryClientSettings.getProxyHost())
+                && !noProxyMatcher.getIfAvailable(NoProxyMatcher::none).matches(cloudFoundryClientSettings.getHost())) {
             ProxyConfiguration.Builder proxyConfiguration = ProxyConfiguration.builder()
                     .host(cloudFoundryClientSettings.getProxyHost())
                     .port(cloudFoundryClientSettings.getProxyPort());
@@ -65,12 +107,21 @@ public class CloudfoundryClientConfig {
         return connectionContext.build();
     }
 
-    @Bean
-    PasswordGrantTokenProvider tokenProvider(CloudFoundryClientSettings cloudFoundryClientSettings) {
-        return PasswordGrantTokenProvider.builder()
-                .password(cloudFoundryClientSettings.getPassword())
-                .username(cloudFoundryClientSettings.getUser())
-                .build();
+    @Bean(destroyMethod = "dispose")
+    RefreshAheadTokenProvider tokenProvider(CloudFoundryClientSettings cloudFoundryClientSettings, ObjectProvider<MeterRegistry> meterRegistry) {
+        TokenProvider uaaTokenProvider;
+        if (StringUtils.hasText(cloudFoundryClientSettings.getClientId())) {
+            uaaTokenProvider = ClientCredentialsGrantTokenProvider.builder()
+                    .clientId(cloudFoundryClientSettings.getClientId())
+                    .clientSecret(cloudFoundryClientSettings.getClientSecret())
+                    .build();
+        } else {
+            uaaTokenProvider = PasswordGrantTokenProvider.builder()
+                    .password(cloudFoundryClientSettings.getPassword())
+                    .username(cloudFoundryClientSettings.getUser())
+                    .build();
+        }
+        return new RefreshAheadTokenProvider(uaaTokenProvider, cloudFoundryClientSettings.getTokenRefreshAhead(), meterRegistry.getIfAvailable());
     }
 
     @Bean
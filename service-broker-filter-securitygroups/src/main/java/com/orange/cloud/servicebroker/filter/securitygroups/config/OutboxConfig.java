@@ -0,0 +1,56 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.config;
+
+import com.orange.cloud.servicebroker.filter.securitygroups.filter.CreateSecurityGroup;
+import com.orange.cloud.servicebroker.filter.securitygroups.filter.DeleteSecurityGroup;
+import com.orange.cloud.servicebroker.filter.securitygroups.outbox.FileSecurityGroupJournal;
+import com.orange.cloud.servicebroker.filter.securitygroups.outbox.SecurityGroupOutboxWorker;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.nio.file.Paths;
+
+/**
+ * Records security group operations into a local journal, applied asynchronously by a background worker.
+ */
+@Configuration
+@Profile("!offline-test-without-cf")
+@ConditionalOnProperty(name = "broker.filter.outbox.enabled", havingValue = "true")
+@EnableConfigurationProperties(OutboxSettings.class)
+public class OutboxConfig {
+
+    @Bean(destroyMethod = "close")
+    public FileSecurityGroupJournal securityGroupJournal(OutboxSettings outboxSettings) {
+        return new FileSecurityGroupJournal(Paths.get(outboxSettings.getJournalFile()));
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "stop")
+    public SecurityGroupOutboxWorker securityGroupOutboxWorker(FileSecurityGroupJournal securityGroupJournal,
+                                                               CreateSecurityGroup createSecurityGroup,
+                                                               DeleteSecurityGroup deleteSecurityGroup,
+                                                               OutboxSettings outboxSettings) {
+        return new SecurityGroupOutboxWorker(securityGroupJournal, createSecurityGroup, deleteSecurityGroup,
+                outboxSettings.getBatchSize(), outboxSettings.getConcurrency(), outboxSettings.getPollInterval(),
+                outboxSettings.getMaxBackoff(), outboxSettings.getOperationTimeout());
+    }
+
+}
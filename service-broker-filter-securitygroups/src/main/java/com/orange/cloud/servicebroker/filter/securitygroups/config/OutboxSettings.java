@@ -0,0 +1,59 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+/**
+ * Security group outbox settings
+ */
+@Data
+@ConfigurationProperties(prefix = "broker.filter.outbox")
+public class OutboxSettings {
+
+    /*
+    When enabled, bind and unbind only record security group operations into a local journal,
+    Cloud Controller calls are performed asynchronously.
+     */
+    private boolean enabled = false;
+
+    /*
+    Journal file location. Should be on a persistent volume so that pending operations survive restarts.
+     */
+    private String journalFile = "security-group-outbox.journal";
+
+    /*
+    Maximum number of pending operations applied per drain.
+     */
+    private int batchSize = 50;
+
+    /*
+    Maximum number of security groups concurrently updated against the Cloud Controller.
+     */
+    private int concurrency = 4;
+
+    private Duration pollInterval = Duration.ofMillis(500);
+
+    private Duration maxBackoff = Duration.ofMinutes(1);
+
+    private Duration operationTimeout = Duration.ofSeconds(60);
+
+}
@@ -8,6 +8,8 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -47,40 +49,7 @@ public class SpecificationConfig {
 
         @Bean
         TrustedDestination trustedDestination(TrustedDestinationConfig destinationConfig) {
-            ImmutableTrustedDestination.Builder builder = ImmutableTrustedDestination.builder();
-            if (destinationConfig.getHosts() != null && !destinationConfig.getHosts().isEmpty()) {
-                final String[] range = destinationConfig.getHosts().split("-");
-                if (range.length == 1) { // a cidr or a single ip address
-                    if (range[0].contains("/")) { // a cidr
-                        builder.hosts(ImmutableCIDR.builder().value(range[0]).build());
-                    } else { // a single ip address
-                        builder.hosts(ImmutableIPAddress.builder().value(range[0]).build());
-                    }
-                } else { // a range of ports
-                    builder.hosts(ImmutableIPRange.builder()
-                            .from(ImmutableIPAddress.of(range[0]))
-                            .to(ImmutableIPAddress.of(range[1]))
-                            .build());
-                }
-
-            }
-            if (destinationConfig.getPorts() != null && !destinationConfig.getPorts().isEmpty()) {
-                final String[] range = destinationConfig.getPorts().split("-");
-                if (range.length == 1) { // a single port or multiple comma-separated ports
-                    builder.ports(ImmutablePorts.of(
-                            Stream.of(range[0].split(","))
-                                    .map(Integer::parseInt)
-                                    .map(ImmutablePort::of)
-                                    .collect(Collectors.toList())));
-                } else { // a range of ports
-                    builder.ports(ImmutablePortRange.builder()
-                            .from(ImmutablePort.of(Integer.parseInt(range[0])))
-                            .to(ImmutablePort.of(Integer.parseInt(range[1])))
-                            .build());
-                }
-
-            }
-            return builder.build();
+            return SpecificationConfig.trustedDestination(destinationConfig.getHosts(), destinationConfig.getPorts());
         }
 
 
@@ -90,5 +59,55 @@ public class SpecificationConfig {
         }
     }
 
+    @Configuration
+    @EnableConfigurationProperties(TrustedDestinationConfig.class)
+    protected static class BackendSpecificationConfig {
+
+        @Bean
+        BackendTrustedDestinationSpecifications backendTrustedDestinationSpecifications(TrustedDestinationConfig destinationConfig) {
+            Map<String, TrustedDestinationSpecification> specifications = new HashMap<>();
+            destinationConfig.getBackends().forEach((backendName, backend) ->
+                    specifications.put(backendName, new TrustedDestinationSpecification(trustedDestination(backend.getHosts(), backend.getPorts()))));
+            return new BackendTrustedDestinationSpecifications(specifications);
+        }
+
+    }
+
+    static TrustedDestination trustedDestination(String hosts, String ports) {
+        ImmutableTrustedDestination.Builder builder = ImmutableTrustedDestination.builder();
+        if (hosts != null && !hosts.isEmpty()) {
+            final String[] range = hosts.split("-");
+            if (range.length == 1) { // a cidr or a single ip address
+                if (range[0].contains("/")) { // a cidr
+                    builder.hosts(ImmutableCIDR.builder().value(range[0]).build());
+                } else { // a single ip address
+                    builder.hosts(ImmutableIPAddress.builder().value(range[0]).build());
+                }
+            } else { // a range of ports
+                builder.hosts(ImmutableIPRange.builder()
+                        .from(ImmutableIPAddress.of(range[0]))
+                        .to(ImmutableIPAddress.of(range[1]))
+                        .build());
+            }
+
+        }
+        if (ports != null && !ports.isEmpty()) {
+            final String[] range = ports.split("-");
+            if (range.length == 1) { // a single port or multiple comma-separated ports
+                builder.ports(ImmutablePorts.of(
+                        Stream.of(range[0].split(","))
+                                .map(Integer::parseInt)
+                                .map(ImmutablePort::of)
+                                .collect(Collectors.toList())));
+            } else { // a range of ports
+                builder.ports(ImmutablePortRange.builder()
+                        .from(ImmutablePort.of(Integer.parseInt(range[0])))
+                        .to(ImmutablePort.of(Integer.parseInt(range[1])))
+                        .build());
+            }
+
+        }
+        return builder.build();
+    }
 
 }
@@ -2,6 +2,9 @@ package com.orange.cloud.servicebroker.filter.securitygroups.config;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author Sebastien Bortolussi
  */
@@ -19,6 +22,12 @@ public class TrustedDestinationConfig {
      */
     private String ports;
 
+    /*
+    Optional trusted destinations per backend name, when the filter fronts several backends.
+    Backends without trusted destinations use the ones above.
+     */
+    private Map<String, Backend> backends = new HashMap<>();
+
 //    public TrustedDestinationConfig() {
 //    }
 
@@ -37,4 +46,35 @@ public class TrustedDestinationConfig {
     public void setPorts(String ports) {
         this.ports = ports;
     }
+
+    public Map<String, Backend> getBackends() {
+        return backends;
+    }
+
+    public void setBackends(Map<String, Backend> backends) {
+        this.backends = backends;
+    }
+
+    public static class Backend {
+
+        private String hosts;
+
+        private String ports;
+
+        public String getHosts() {
+            return hosts;
+        }
+
+        public void setHosts(String hosts) {
+            this.hosts = hosts;
+        }
+
+        public String getPorts() {
+            return ports;
+        }
+
+        public void setPorts(String ports) {
+            this.ports = ports;
+        }
+    }
 }
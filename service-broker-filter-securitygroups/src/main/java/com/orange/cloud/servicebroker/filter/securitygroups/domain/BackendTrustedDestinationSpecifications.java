@@ -0,0 +1,43 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.domain;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Trusted destinations specific to some backends, when the filter fronts several backends.
+ */
+public class BackendTrustedDestinationSpecifications {
+
+    private final Map<String, TrustedDestinationSpecification> specifications;
+
+    public BackendTrustedDestinationSpecifications(Map<String, TrustedDestinationSpecification> specifications) {
+        this.specifications = new HashMap<>(specifications);
+    }
+
+    /**
+     * @param backendName a backend name
+     * @return the trusted destinations of the backend, empty when the backend uses the default trusted destinations
+     */
+    public Optional<TrustedDestinationSpecification> forBackend(String backendName) {
+        return Optional.ofNullable(specifications.get(backendName));
+    }
+
+}
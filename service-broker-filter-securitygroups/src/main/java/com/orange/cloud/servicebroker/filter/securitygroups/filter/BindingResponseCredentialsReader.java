@@ -0,0 +1,109 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.filter;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the connection fields of a binding response credentials in a single streaming pass over the response bytes.
+ * Other fields, such as certificate bundles, are skipped without being decoded nor materialized.
+ */
+public final class BindingResponseCredentialsReader {
+
+    static final String CREDENTIALS = "credentials";
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private BindingResponseCredentialsReader() {
+    }
+
+    /**
+     * @param bindingResponse JSON body of a binding response
+     * @return the connection fields of the response credentials, host list entries included, as expected by
+     * {@link CredentialsScanner#destinations(Map)}
+     * @throws IllegalArgumentException when the response has no credentials
+     */
+    public static Map<String, Object> connectionFields(byte[] bindingResponse) {
+        try (JsonParser parser = JSON_FACTORY.createParser(bindingResponse)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IllegalArgumentException("expecting a JSON object binding response");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_OBJECT && CREDENTIALS.equals(name)) {
+                    return readObject(parser, true);
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read binding response credentials", e);
+        }
+        throw new IllegalArgumentException("expecting a non-null response credentials");
+    }
+
+    /*
+    Other values (e.g. passwords, certificates, nested objects other than host list entries) and null values are skipped
+    without being decoded.
+     */
+    private static Map<String, Object> readObject(JsonParser parser, boolean topLevel) throws IOException {
+        Map<String, Object> fields = new HashMap<>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if (topLevel && value == JsonToken.START_ARRAY && CredentialsScanner.HOST_LIST_KEYS.contains(name)) {
+                List<Object> hostList = readHostList(parser);
+                if (!hostList.isEmpty()) {
+                    fields.put(name, hostList);
+                }
+            } else if (CredentialsScanner.isEndpointKey(name) && value.isScalarValue() && value != JsonToken.VALUE_NULL) {
+                fields.put(name, value == JsonToken.VALUE_NUMBER_INT ? parser.getIntValue() : parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return fields;
+    }
+
+    private static List<Object> readHostList(JsonParser parser) throws IOException {
+        List<Object> elements = new ArrayList<>();
+        JsonToken value;
+        while ((value = parser.nextToken()) != JsonToken.END_ARRAY) {
+            if (value == JsonToken.START_OBJECT) {
+                Map<String, Object> object = readObject(parser, false);
+                if (!object.isEmpty()) {
+                    elements.add(object);
+                }
+            } else if (value == JsonToken.VALUE_STRING) {
+                elements.add(parser.getText());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return elements;
+    }
+
+}
@@ -17,13 +17,26 @@
 
 package com.orange.cloud.servicebroker.filter.securitygroups.filter;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
-import com.orange.cloud.servicebroker.filter.core.filters.CreateServiceInstanceBindingPostFilter;
+import com.orange.cloud.servicebroker.filter.core.deadline.DeadlineContext;
+import com.orange.cloud.servicebroker.filter.core.filters.CreateServiceInstanceBindingRawPostFilter;
 import com.orange.cloud.servicebroker.filter.core.filters.ServiceBrokerPostFilter;
+import com.orange.cloud.servicebroker.filter.core.routing.BackendContext;
+import com.orange.cloud.servicebroker.filter.securitygroups.client.CloudFoundryRequestHedger;
+import com.orange.cloud.servicebroker.filter.securitygroups.client.CloudFoundryRequestLimiter;
+import com.orange.cloud.servicebroker.filter.securitygroups.domain.BackendTrustedDestinationSpecifications;
 import com.orange.cloud.servicebroker.filter.securitygroups.domain.Destination;
+import com.orange.cloud.servicebroker.filter.securitygroups.domain.Port;
 import com.orange.cloud.servicebroker.filter.securitygroups.domain.TrustedDestinationSpecification;
+import com.orange.cloud.servicebroker.filter.securitygroups.outbox.SecurityGroupJournal;
+import com.orange.cloud.servicebroker.filter.securitygroups.outbox.SecurityGroupOperation;
 import org.cloudfoundry.client.CloudFoundryClient;
 import org.cloudfoundry.client.v2.securitygroups.CreateSecurityGroupRequest;
 import org.cloudfoundry.client.v2.securitygroups.Protocol;
@@ -43,6 +56,7 @@ import org.slf4j.LoggerFactory;
 import reactor.core.publisher.Mono;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.servicebroker.model.CloudFoundryContext;
 import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceAppBindingResponse;
 import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingRequest;
@@ -55,13 +69,18 @@ import static org.cloudfoundry.util.tuple.TupleUtils.function;
 
 @Profile("!offline-test-without-cf")
 @Component
-public class CreateSecurityGroup implements CreateServiceInstanceBindingPostFilter, ServiceBrokerPostFilter<CreateServiceInstanceBindingRequest, CreateServiceInstanceAppBindingResponse> {
+public class CreateSecurityGroup implements CreateServiceInstanceBindingRawPostFilter, ServiceBrokerPostFilter<CreateServiceInstanceBindingRequest, CreateServiceInstanceAppBindingResponse> {
 
     private static final Logger log = LoggerFactory.getLogger(CreateSecurityGroup.class);
 
     static final Protocol DEFAULT_PROTOCOL = Protocol.TCP;
     private CloudFoundryClient cloudFoundryClient;
     private TrustedDestinationSpecification trustedDestinationSpecification;
+    private BackendTrustedDestinationSpecifications backendTrustedDestinationSpecifications;
+    private SecurityGroupJournal securityGroupJournal;
+    private CloudFoundryRequestLimiter requestLimiter = CloudFoundryRequestLimiter.unlimited();
+    private CloudFoundryRequestHedger requestHedger = CloudFoundryRequestHedger.disabled();
+    private Duration timeout = Duration.ofSeconds(60);
 
     @Autowired
     public CreateSecurityGroup(CloudFoundryClient cloudFoundryClient, TrustedDestinationSpecification trustedDestinationSpecification) {
@@ -69,31 +88,66 @@ public class CreateSecurityGroup implements CreateServiceInstanceBindingPostFilt
         this.trustedDestinationSpecification = trustedDestinationSpecification;
     }
 
-    private static Mono<ServiceEntity> getService(CloudFoundryClient cloudFoundryClient, String serviceId) {
-        return cloudFoundryClient.services()
+    /**
+     * When set, security group creations are recorded into this outbox and applied asynchronously
+     * instead of being created before the binding response is returned.
+     */
+    @Autowired(required = false)
+    public void setSecurityGroupJournal(SecurityGroupJournal securityGroupJournal) {
+        this.securityGroupJournal = securityGroupJournal;
+    }
+
+    /**
+     * When set, bindings routed to a backend with its own trusted destinations are checked against them.
+     */
+    @Autowired(required = false)
+    public void setBackendTrustedDestinationSpecifications(BackendTrustedDestinationSpecifications backendTrustedDestinationSpecifications) {
+        this.backendTrustedDestinationSpecifications = backendTrustedDestinationSpecifications;
+    }
+
+    /**
+     * Bounds Cloud Controller calls creating a security group, further shortened to the remaining request deadline.
+     */
+    @Autowired
+    public void setTimeout(@Value("${broker.filter.cloudfoundry.timeout:PT60S}") Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    @Autowired(required = false)
+    public void setRequestLimiter(CloudFoundryRequestLimiter requestLimiter) {
+        this.requestLimiter = requestLimiter;
+    }
+
+    @Autowired(required = false)
+    public void setRequestHedger(CloudFoundryRequestHedger requestHedger) {
+        this.requestHedger = requestHedger;
+    }
+
+    private Mono<ServiceEntity> getService(CloudFoundryClient cloudFoundryClient, String serviceId) {
+        return requestHedger.hedge(requestLimiter.limit(cloudFoundryClient.services()
                 .get(GetServiceRequest.builder()
                         .serviceId(serviceId)
                         .build()
-                )
+                )))
                 .map(ResourceUtils::getEntity);
     }
 
-    private static Mono<ServiceBrokerEntity> getServiceBroker(CloudFoundryClient cloudFoundryClient, String serviceBrokerId) {
-        return cloudFoundryClient.serviceBrokers().get(GetServiceBrokerRequest.builder()
-                .serviceBrokerId(serviceBrokerId).build())
+    private Mono<ServiceBrokerEntity> getServiceBroker(CloudFoundryClient cloudFoundryClient, String serviceBrokerId) {
+        return requestHedger.hedge(requestLimiter.limit(cloudFoundryClient.serviceBrokers().get(GetServiceBrokerRequest.builder()
+                .serviceBrokerId(serviceBrokerId).build())))
                 .map(ResourceUtils::getEntity);
     }
 
-    private static Mono<ServiceInstanceEntity> getServiceInstance(CloudFoundryClient cloudFoundryClient, String serviceInstanceId) {
-        return cloudFoundryClient.serviceInstances()
+    private Mono<ServiceInstanceEntity> getServiceInstance(CloudFoundryClient cloudFoundryClient, String serviceInstanceId) {
+        return requestHedger.hedge(requestLimiter.limit(cloudFoundryClient.serviceInstances()
                 .get(GetServiceInstanceRequest.builder()
                         .serviceInstanceId(serviceInstanceId)
                         .build()
-                )
+                )))
                 .map(ResourceUtils::getEntity);
     }
 
-    private static Mono<String> getRuleDescription(CloudFoundryClient cloudFoundryClient, String bindingId, String serviceInstanceId) {
+    private Mono<String> getRuleDescription(CloudFoundryClient cloudFoundryClient, String bindingId, String serviceInstanceId) {
         return getServiceInstance(cloudFoundryClient, serviceInstanceId)
                 .flatMap(serviceInstance -> Mono.zip(
                         Mono.just(bindingId),
@@ -117,42 +171,74 @@ public class CreateSecurityGroup implements CreateServiceInstanceBindingPostFilt
                         .value()));
     }
 
-    private static Mono<ServicePlanEntity> getPlan(CloudFoundryClient cloudFoundryClient, String planId) {
-        return cloudFoundryClient.servicePlans()
+    private Mono<ServicePlanEntity> getPlan(CloudFoundryClient cloudFoundryClient, String planId) {
+        return requestHedger.hedge(requestLimiter.limit(cloudFoundryClient.servicePlans()
                 .get(GetServicePlanRequest.builder()
                         .servicePlanId(planId)
                         .build()
-                )
+                )))
                 .map(ResourceUtils::getEntity);
     }
 
-    private static Mono<String> getServiceBrokerName(CloudFoundryClient cloudFoundryClient, String serviceBrokerId) {
+    private Mono<String> getServiceBrokerName(CloudFoundryClient cloudFoundryClient, String serviceBrokerId) {
         return getServiceBroker(cloudFoundryClient, serviceBrokerId)
                 .map(ServiceBrokerEntity::getName);
     }
 
+    private TrustedDestinationSpecification trustedDestinationSpecification() {
+        if (backendTrustedDestinationSpecifications == null) {
+            return trustedDestinationSpecification;
+        }
+        return BackendContext.current()
+                .flatMap(backend -> backendTrustedDestinationSpecifications.forBackend(backend.getName()))
+                .orElse(trustedDestinationSpecification);
+    }
+
     @Override
     public void run(CreateServiceInstanceBindingRequest request, CreateServiceInstanceAppBindingResponse response) {
         Assert.notNull(response, "expecting a non-null response");
         Assert.notNull(response.getCredentials(), "expecting a non-null response credentials");
+        open(request, response.getCredentials());
+    }
+
+    /**
+     * Only reads the connection fields of the response credentials, see {@link BindingResponseCredentialsReader}.
+     */
+    @Override
+    public void run(CreateServiceInstanceBindingRequest request, byte[] responseBody) {
+        Assert.notNull(responseBody, "expecting a non-null response");
+        open(request, BindingResponseCredentialsReader.connectionFields(responseBody));
+    }
+
+    private void open(CreateServiceInstanceBindingRequest request, Map<String, Object> credentials) {
         Assert.notNull(request.getContext(), "expecting a non-null OSB context");
         Assert.isInstanceOf(CloudFoundryContext.class, request.getContext(), "only supporting CloudFoundry " +
             "clients, but received unsupported context in OSB request");
 
-        final Destination destination = ConnectionInfoFactory.fromCredentials(response.getCredentials());
+        final List<Destination> destinations = CredentialsScanner.destinations(credentials);
 
-        if (!trustedDestinationSpecification.isSatisfiedBy(destination)) {
-            log.warn("Cannot open security group for destination {}. Destination is out of allowed range [{}].", destination, trustedDestinationSpecification);
-            throw new NotAllowedDestination(destination);
+        final TrustedDestinationSpecification specification = trustedDestinationSpecification();
+        for (Destination destination : destinations) {
+            if (!specification.isSatisfiedBy(destination)) {
+                log.warn("Cannot open security group for destination {}. Destination is out of allowed range [{}].", destination, specification);
+                throw new NotAllowedDestination(destination);
+            }
+        }
+        final Map<Port, List<String>> ipsByPort = ipsByPort(destinations);
+        CloudFoundryContext cloudFoundryContext = (CloudFoundryContext) request.getContext();
+        if (securityGroupJournal != null) {
+            Map<Integer, List<String>> destinationsByPort = new LinkedHashMap<>();
+            ipsByPort.forEach((port, ips) -> destinationsByPort.put(port.value(), ips));
+            securityGroupJournal.append(SecurityGroupOperation.create(getSecurityGroupName(request), request.getBindingId(),
+                request.getServiceInstanceId(), cloudFoundryContext.getSpaceGuid(), destinationsByPort));
+            log.debug("Security Group {} creation recorded into outbox", getSecurityGroupName(request));
+            return;
         }
-        log.debug("creating security group for credentials {}.", response.getCredentials());
+        log.debug("creating security group for destinations {}.", destinations);
         try {
-            CloudFoundryContext cloudFoundryContext = (CloudFoundryContext) request.getContext();
-            final SecurityGroupEntity securityGroup = Mono.zip(
-                    getRuleDescription(cloudFoundryClient, request.getBindingId(), request.getServiceInstanceId()),
-                    Mono.just(cloudFoundryContext.getSpaceGuid())
-            ).flatMap(function((description, spaceId) -> create(getSecurityGroupName(request), destination, description
-                , spaceId)))
+            final SecurityGroupEntity securityGroup = createSecurityGroup(getSecurityGroupName(request), request.getBindingId(),
+                request.getServiceInstanceId(), cloudFoundryContext.getSpaceGuid(), ipsByPort)
+                    .timeout(DeadlineContext.remaining(timeout))
                     .doOnError(t -> log.error("Fail to create security group. Error details {}", t.toString(), t))
                     .block();
 
@@ -165,27 +251,64 @@ public class CreateSecurityGroup implements CreateServiceInstanceBindingPostFilt
 
     }
 
-    private Mono<SecurityGroupEntity> create(String securityGroupName, Destination destination, String description, String spaceId) {
-        return getRules(destination, description)
+    /*
+    Distinct IPs of each port. Destinations of a clustered service usually share the same port.
+     */
+    static Map<Port, List<String>> ipsByPort(List<Destination> destinations) {
+        Map<Port, List<String>> ipsByPort = new LinkedHashMap<>();
+        for (Destination destination : destinations) {
+            List<String> ips = ipsByPort.computeIfAbsent(destination.getPort(), port -> new ArrayList<>());
+            destination.getIPs()
+                    .filter(ip -> !ips.contains(ip))
+                    .forEach(ips::add);
+        }
+        return ipsByPort;
+    }
+
+    /**
+     * Creates a security group opening the given destination IPs and port to the space.
+     * Destinations are expected to have been checked against the trusted destinations already.
+     */
+    public Mono<SecurityGroupEntity> createSecurityGroup(String securityGroupName, String bindingId, String serviceInstanceId,
+                                                         String spaceId, List<String> ips, Port port) {
+        return createSecurityGroup(securityGroupName, bindingId, serviceInstanceId, spaceId, Collections.singletonMap(port, ips));
+    }
+
+    /**
+     * Creates a security group opening the given destination IPs of each port to the space, with a rule per IP and port
+     * so that IPs are never opened on ports of other destinations.
+     * Destinations are expected to have been checked against the trusted destinations already.
+     */
+    public Mono<SecurityGroupEntity> createSecurityGroup(String securityGroupName, String bindingId, String serviceInstanceId,
+                                                         String spaceId, Map<Port, List<String>> ipsByPort) {
+        return Mono.zip(
+                getRuleDescription(cloudFoundryClient, bindingId, serviceInstanceId),
+                Mono.just(spaceId)
+        ).flatMap(function((description, space) -> create(securityGroupName, ipsByPort, description, space)));
+    }
+
+    private Mono<SecurityGroupEntity> create(String securityGroupName, Map<Port, List<String>> ipsByPort, String description, String spaceId) {
+        return getRules(ipsByPort, description)
                 .flatMap(rules ->
-                        cloudFoundryClient.securityGroups()
+                        requestLimiter.limit(cloudFoundryClient.securityGroups()
                                 .create(CreateSecurityGroupRequest.builder()
                                         .name(securityGroupName)
                                         .rules(rules)
                                         .spaceId(spaceId)
-                                        .build()))
+                                        .build())))
                 .map(ResourceUtils::getEntity)
                 .checkpoint();
     }
 
-    private Mono<List<RuleEntity>> getRules(Destination destination, String description) {
-        return Mono.justOrEmpty(destination.getIPs()
-                .map(ip -> RuleEntity.builder()
-                        .protocol(DEFAULT_PROTOCOL)
-                        .destination(ip)
-                        .description(description)
-                        .ports(String.valueOf(destination.getPort().value()))
-                        .build())
+    private Mono<List<RuleEntity>> getRules(Map<Port, List<String>> ipsByPort, String description) {
+        return Mono.justOrEmpty(ipsByPort.entrySet().stream()
+                .flatMap(ips -> ips.getValue().stream()
+                        .map(ip -> RuleEntity.builder()
+                                .protocol(DEFAULT_PROTOCOL)
+                                .destination(ip)
+                                .description(description)
+                                .ports(String.valueOf(ips.getKey().value()))
+                                .build()))
                 .collect(Collectors.toList()))
                 .checkpoint();
     }
@@ -0,0 +1,195 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.filter;
+
+import com.orange.cloud.servicebroker.filter.securitygroups.domain.Destination;
+import com.orange.cloud.servicebroker.filter.securitygroups.domain.ImmutablePort;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Collects every endpoint of binding credentials in a single pass, so that clustered services get all their nodes
+ * opened. Endpoints are read from the top level credentials fields:
+ * <ul>
+ * <li>{@code uri} and {@code jdbcUrl}, including multi-host URIs such as {@code mongodb://h1:27017,h2:27017}</li>
+ * <li>{@code host} or {@code hostname}, along with the sibling {@code port} field</li>
+ * <li>host lists, such as {@code hosts} arrays or Kafka {@code bootstrap_servers}, whose entries are either
+ * {@code host:port} strings, bare hosts using the sibling {@code port} field, or objects holding the above fields</li>
+ * </ul>
+ * Other nested objects and arrays are not scanned, as they may hold URLs which are not service endpoints (e.g.
+ * dashboard or management URLs). URI authorities are split by hand rather than parsed by {@link java.net.URI}.
+ * Endpoints whose port is neither set nor implied by an http or https scheme are ignored.
+ */
+public final class CredentialsScanner {
+
+    static final Set<String> URI_KEYS = new HashSet<>(Arrays.asList("uri", "jdbcUrl"));
+
+    static final Set<String> HOST_KEYS = new HashSet<>(Arrays.asList("host", "hostname"));
+
+    static final Set<String> HOST_LIST_KEYS = new HashSet<>(Arrays.asList("hosts", "bootstrap_servers", "brokers", "nodes"));
+
+    static final String PORT_KEY = "port";
+
+    private static final String JDBC_PREFIX = "jdbc:";
+
+    private static final String SCHEME_SEPARATOR = "://";
+
+    private static final Map<String, Integer> DEFAULT_PORTS = new HashMap<>();
+
+    static {
+        DEFAULT_PORTS.put("http", 80);
+        DEFAULT_PORTS.put("https", 443);
+    }
+
+    private CredentialsScanner() {
+    }
+
+    /**
+     * @param credentials binding credentials
+     * @return the distinct endpoints found in the credentials, in encounter order
+     * @throws IllegalArgumentException when no endpoint is found
+     */
+    public static List<Destination> destinations(Map<String, Object> credentials) {
+        Set<Destination> destinations = new LinkedHashSet<>();
+        scanObject(credentials, true, destinations);
+        if (destinations.isEmpty()) {
+            // credentials values are not logged, as they hold secrets
+            throw new IllegalArgumentException(String.format("Cannot extract host and port from credentials with fields %s", credentials.keySet()));
+        }
+        return new ArrayList<>(destinations);
+    }
+
+    static boolean isEndpointKey(String key) {
+        return URI_KEYS.contains(key) || HOST_KEYS.contains(key) || HOST_LIST_KEYS.contains(key) || PORT_KEY.equals(key);
+    }
+
+    /*
+    Host lists are only followed from the top level object: their element objects are not expected to hold host lists.
+     */
+    private static void scanObject(Map<?, ?> object, boolean topLevel, Set<Destination> destinations) {
+        int siblingPort = port(object.get(PORT_KEY));
+        for (Map.Entry<?, ?> entry : object.entrySet()) {
+            String key = String.valueOf(entry.getKey());
+            Object value = entry.getValue();
+            if (topLevel && HOST_LIST_KEYS.contains(key)) {
+                scanHostList(value, siblingPort, destinations);
+            } else if (value instanceof String && URI_KEYS.contains(key)) {
+                addUri((String) value, destinations);
+            } else if (value instanceof String && HOST_KEYS.contains(key)) {
+                addHosts((String) value, siblingPort, destinations);
+            }
+        }
+    }
+
+    private static void scanHostList(Object hostList, int siblingPort, Set<Destination> destinations) {
+        if (hostList instanceof String) {
+            addHosts((String) hostList, siblingPort, destinations);
+        } else if (hostList instanceof Collection) {
+            for (Object element : (Collection<?>) hostList) {
+                if (element instanceof Map) {
+                    scanObject((Map<?, ?>) element, false, destinations);
+                } else if (element instanceof String) {
+                    addHosts((String) element, siblingPort, destinations);
+                }
+            }
+        }
+    }
+
+    /*
+    scheme://[userinfo@]host1[:port1][,host2[:port2]...][/path][?query], optionally prefixed with jdbc:
+     */
+    private static void addUri(String uri, Set<Destination> destinations) {
+        int schemeStart = uri.regionMatches(true, 0, JDBC_PREFIX, 0, JDBC_PREFIX.length()) ? JDBC_PREFIX.length() : 0;
+        int schemeEnd = uri.indexOf(SCHEME_SEPARATOR, schemeStart);
+        if (schemeEnd < 0) {
+            return;
+        }
+        Integer defaultPort = DEFAULT_PORTS.get(uri.substring(schemeStart, schemeEnd).toLowerCase());
+        int authorityStart = schemeEnd + SCHEME_SEPARATOR.length();
+        int authorityEnd = authorityStart;
+        while (authorityEnd < uri.length() && "/?#;".indexOf(uri.charAt(authorityEnd)) < 0) {
+            authorityEnd++;
+        }
+        int userInfoEnd = uri.lastIndexOf('@', authorityEnd - 1);
+        int hostsStart = userInfoEnd >= authorityStart ? userInfoEnd + 1 : authorityStart;
+        addHosts(uri.substring(hostsStart, authorityEnd), defaultPort != null ? defaultPort : -1, destinations);
+    }
+
+    /*
+    Comma separated host[:port] entries, IPv6 addresses being enclosed in brackets when followed by a port.
+     */
+    private static void addHosts(String hosts, int defaultPort, Set<Destination> destinations) {
+        int from = 0;
+        while (from <= hosts.length()) {
+            int end = hosts.indexOf(',', from);
+            if (end < 0) {
+                end = hosts.length();
+            }
+            addHost(hosts.substring(from, end).trim(), defaultPort, destinations);
+            from = end + 1;
+        }
+    }
+
+    private static void addHost(String hostAndPort, int defaultPort, Set<Destination> destinations) {
+        String host = hostAndPort;
+        int port = defaultPort;
+        if (hostAndPort.startsWith("[")) {
+            int close = hostAndPort.indexOf(']');
+            if (close < 0) {
+                return;
+            }
+            host = hostAndPort.substring(1, close);
+            if (hostAndPort.startsWith(":", close + 1)) {
+                port = port(hostAndPort.substring(close + 2));
+            }
+        } else {
+            int colon = hostAndPort.indexOf(':');
+            // a bare IPv6 address has several colons, and no port
+            if (colon >= 0 && colon == hostAndPort.lastIndexOf(':')) {
+                host = hostAndPort.substring(0, colon);
+                port = colon + 1 < hostAndPort.length() ? port(hostAndPort.substring(colon + 1)) : defaultPort;
+            }
+        }
+        if (!host.isEmpty() && port > 0) {
+            destinations.add(new Destination(host, ImmutablePort.of(port)));
+        }
+    }
+
+    private static int port(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        if (value instanceof String) {
+            try {
+                return Integer.parseInt(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+}
@@ -18,13 +18,19 @@
 package com.orange.cloud.servicebroker.filter.securitygroups.filter;
 
 import com.orange.cloud.servicebroker.filter.core.filters.DeleteServiceInstanceBindingPostFilter;
+import com.orange.cloud.servicebroker.filter.securitygroups.client.CloudFoundryRequestHedger;
+import com.orange.cloud.servicebroker.filter.securitygroups.client.CloudFoundryRequestLimiter;
+import com.orange.cloud.servicebroker.filter.securitygroups.outbox.SecurityGroupJournal;
+import com.orange.cloud.servicebroker.filter.securitygroups.outbox.SecurityGroupOperation;
 import org.cloudfoundry.client.CloudFoundryClient;
 import org.cloudfoundry.client.v2.securitygroups.DeleteSecurityGroupRequest;
+import org.cloudfoundry.client.v2.securitygroups.DeleteSecurityGroupResponse;
 import org.cloudfoundry.client.v2.securitygroups.ListSecurityGroupsRequest;
 import org.cloudfoundry.client.v2.securitygroups.SecurityGroupResource;
 import org.cloudfoundry.util.PaginationUtils;
 import org.cloudfoundry.util.ResourceUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.servicebroker.model.binding.DeleteServiceInstanceBindingRequest;
 import org.springframework.context.annotation.Profile;
 import org.springframework.stereotype.Component;
@@ -46,11 +52,46 @@ public class DeleteSecurityGroup implements DeleteServiceInstanceBindingPostFilt
 
     private final CloudFoundryClient cloudFoundryClient;
 
+    private SecurityGroupJournal securityGroupJournal;
+
+    private CloudFoundryRequestLimiter requestLimiter = CloudFoundryRequestLimiter.unlimited();
+
+    private CloudFoundryRequestHedger requestHedger = CloudFoundryRequestHedger.disabled();
+
+    private Duration timeout = Duration.ofSeconds(60);
+
     @Autowired
     public DeleteSecurityGroup(CloudFoundryClient cloudFoundryClient) {
         this.cloudFoundryClient = cloudFoundryClient;
     }
 
+    /**
+     * When set, security group deletions are recorded into this outbox and applied asynchronously.
+     */
+    @Autowired(required = false)
+    public void setSecurityGroupJournal(SecurityGroupJournal securityGroupJournal) {
+        this.securityGroupJournal = securityGroupJournal;
+    }
+
+    /**
+     * Bounds Cloud Controller calls deleting a security group. Deletion runs in the background, once the unbind
+     * response is sent, hence is not bounded by the request deadline.
+     */
+    @Autowired
+    public void setTimeout(@Value("${broker.filter.cloudfoundry.timeout:PT60S}") Duration timeout) {
+        this.timeout = timeout;
+    }
+
+    @Autowired(required = false)
+    public void setRequestLimiter(CloudFoundryRequestLimiter requestLimiter) {
+        this.requestLimiter = requestLimiter;
+    }
+
+    @Autowired(required = false)
+    public void setRequestHedger(CloudFoundryRequestHedger requestHedger) {
+        this.requestHedger = requestHedger;
+    }
+
     private Mono<SecurityGroupResource> getSecurityGroupId(String securityGroup) {
         return requestSecurityGroups(securityGroup)
                 .single()
@@ -62,26 +103,38 @@ public class DeleteSecurityGroup implements DeleteServiceInstanceBindingPostFilt
 
     private Flux<SecurityGroupResource> requestSecurityGroups(String securityGroup) {
         return PaginationUtils
-                .requestClientV2Resources(page -> cloudFoundryClient.securityGroups()
+                .requestClientV2Resources(page -> requestHedger.hedge(requestLimiter.limit(cloudFoundryClient.securityGroups()
                         .list(ListSecurityGroupsRequest.builder()
                                 .name(securityGroup)
                                 .page(page)
-                                .build()));
+                                .build()))));
     }
 
     @Override
     public void run(DeleteServiceInstanceBindingRequest request, Void response) {
-        securityGroupId(request.getBindingId())
-                .flatMap(securityGroupId -> cloudFoundryClient.securityGroups()
-                        .delete(DeleteSecurityGroupRequest.builder()
-                                .securityGroupId(securityGroupId)
-                                .build()))
+        if (securityGroupJournal != null) {
+            securityGroupJournal.append(SecurityGroupOperation.delete(request.getBindingId()));
+            log.debug("Security group {} deletion recorded into outbox", request.getBindingId());
+            return;
+        }
+        deleteSecurityGroup(request.getBindingId())
                 .doOnError(resp -> log.error("Fail to delete security group {}", request.getBindingId()))
-                .timeout(Duration.ofSeconds(60))
+                .timeout(timeout)
                 .subscribe(resp -> log.debug("Security group {} deleted", request.getBindingId()));
 
     }
 
+    /**
+     * Deletes the security group with the given name, if any.
+     */
+    public Mono<DeleteSecurityGroupResponse> deleteSecurityGroup(String securityGroupName) {
+        return securityGroupId(securityGroupName)
+                .flatMap(securityGroupId -> requestLimiter.limit(cloudFoundryClient.securityGroups()
+                        .delete(DeleteSecurityGroupRequest.builder()
+                                .securityGroupId(securityGroupId)
+                                .build())));
+    }
+
     private Mono<String> securityGroupId(String securityGroup) {
         return Optional.ofNullable(securityGroup)
                 .map(securityGroupName -> getSecurityGroupId(securityGroupName)
@@ -0,0 +1,311 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.outbox;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jdk8.Jdk8Module;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only local file implementation of the {@link SecurityGroupJournal}.
+ * <p>
+ * Each line is either a JSON operation or an acknowledgement of a previous operation sequence. Appends are
+ * fsync-ed with group commit: concurrent appenders share a single {@link FileChannel#force(boolean)}.
+ * Acknowledgements are not fsync-ed, a lost acknowledgement only triggers an idempotent replay.
+ * Once the file grew over the compaction threshold, the pending operations are rewritten into a new file which then
+ * atomically replaces the journal.
+ * <p>
+ * An incomplete last record, left by a crash during an append, is discarded on startup. Other unreadable records are
+ * moved to a sibling {@code .corrupt} file, so that the records following them are still replayed.
+ */
+public class FileSecurityGroupJournal implements SecurityGroupJournal, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(FileSecurityGroupJournal.class);
+
+    static final String ACKNOWLEDGED = "acknowledged";
+
+    static final long DEFAULT_COMPACTION_THRESHOLD = 1024 * 1024;
+
+    static final String CORRUPT_SUFFIX = ".corrupt";
+
+    static final String COMPACTING_SUFFIX = ".compacting";
+
+    private final Path file;
+
+    /*
+    Replaced on compaction, guarded by this.
+     */
+    private FileChannel channel;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new Jdk8Module());
+
+    private final SortedMap<Long, SecurityGroupOperation> pending = new TreeMap<>();
+
+    private final Object syncLock = new Object();
+
+    private final long compactionThreshold;
+
+    /*
+    File size triggering the next compaction, so that pending operations larger than the threshold are not rewritten
+    on each acknowledgement.
+     */
+    private long nextCompaction;
+
+    private long lastSequence;
+
+    /*
+    Number of bytes ever written, never reset on compaction, so that appenders can tell whether a force
+    performed by another thread already covered their write.
+     */
+    private long writtenBytes;
+
+    private final AtomicLong syncedBytes = new AtomicLong();
+
+    public FileSecurityGroupJournal(Path file) {
+        this(file, DEFAULT_COMPACTION_THRESHOLD);
+    }
+
+    public FileSecurityGroupJournal(Path file, long compactionThreshold) {
+        this.file = file;
+        this.compactionThreshold = compactionThreshold;
+        this.nextCompaction = compactionThreshold;
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            replay();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to open security group journal " + file, e);
+        }
+        log.info("Opened security group journal {} with {} pending operation(s)", file, pending.size());
+    }
+
+    private void replay() throws IOException {
+        byte[] content = Files.readAllBytes(file);
+        List<String> corrupt = new ArrayList<>();
+        int lineStart = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != '\n') {
+                continue;
+            }
+            String line = new String(content, lineStart, i - lineStart, StandardCharsets.UTF_8);
+            if (i > lineStart && !replayLine(line)) {
+                corrupt.add(line);
+            }
+            lineStart = i + 1;
+        }
+        if (lineStart < content.length) {
+            log.warn("Discarding {} byte(s) of incomplete record at the end of security group journal {}", content.length - lineStart, file);
+            channel.truncate(lineStart);
+        }
+        channel.position(lineStart);
+        if (!corrupt.isEmpty()) {
+            quarantine(corrupt);
+            rewrite();
+        }
+    }
+
+    private boolean replayLine(String line) {
+        try {
+            JsonNode record = objectMapper.readTree(line);
+            if (record.has(ACKNOWLEDGED)) {
+                pending.remove(record.get(ACKNOWLEDGED).asLong());
+            } else {
+                SecurityGroupOperation operation = objectMapper.treeToValue(record, SecurityGroupOperation.class);
+                pending.put(operation.sequence(), operation);
+                lastSequence = Math.max(lastSequence, operation.sequence());
+            }
+            return true;
+        } catch (IOException e) {
+            log.warn("Unreadable record in security group journal {}: {}", file, e.toString());
+            return false;
+        }
+    }
+
+    private void quarantine(List<String> corrupt) throws IOException {
+        Path quarantine = file.resolveSibling(file.getFileName() + CORRUPT_SUFFIX);
+        StringBuilder lines = new StringBuilder();
+        for (String line : corrupt) {
+            lines.append(line).append('\n');
+        }
+        Files.write(quarantine, lines.toString().getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND,
+                StandardOpenOption.SYNC);
+        log.error("Moved {} unreadable record(s) of security group journal {} to {}, they need to be applied manually",
+                corrupt.size(), file, quarantine);
+    }
+
+    @Override
+    public SecurityGroupOperation append(SecurityGroupOperation operation) {
+        SecurityGroupOperation recorded;
+        long written;
+        synchronized (this) {
+            recorded = ImmutableSecurityGroupOperation.copyOf(operation).withSequence(++lastSequence);
+            written = write(serialize(recorded));
+            // pending before the lock is released, so that a concurrent compaction keeps the record
+            pending.put(recorded.sequence(), recorded);
+        }
+        sync(written);
+        log.debug("Recorded security group operation {}", recorded);
+        return recorded;
+    }
+
+    @Override
+    public synchronized List<SecurityGroupOperation> pending(int max) {
+        List<SecurityGroupOperation> operations = new ArrayList<>(Math.min(max, pending.size()));
+        for (SecurityGroupOperation operation : pending.values()) {
+            if (operations.size() >= max) {
+                break;
+            }
+            operations.add(operation);
+        }
+        return Collections.unmodifiableList(operations);
+    }
+
+    @Override
+    public synchronized void acknowledge(SecurityGroupOperation operation) {
+        if (pending.remove(operation.sequence()) == null) {
+            return;
+        }
+        write(serialize(objectMapper.createObjectNode().put(ACKNOWLEDGED, operation.sequence())));
+        try {
+            if (channel.size() >= nextCompaction) {
+                rewrite();
+                log.debug("Compacted security group journal {} to {} pending operation(s)", file, pending.size());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to compact security group journal " + file, e);
+        }
+    }
+
+    /*
+    Called with this held. The pending operations, including appended ones not synced yet, are forced into the new
+    file before it replaces the journal, hence all bytes written so far are then durable.
+     */
+    private void rewrite() throws IOException {
+        Path compacted = file.resolveSibling(file.getFileName() + COMPACTING_SUFFIX);
+        long size = 0;
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            for (SecurityGroupOperation operation : pending.values()) {
+                ByteBuffer buffer = ByteBuffer.wrap(serialize(operation));
+                size += buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+            }
+            out.force(false);
+        }
+        Files.move(compacted, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory();
+        FileChannel previous = channel;
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        channel.position(size);
+        previous.close();
+        syncedBytes.accumulateAndGet(writtenBytes, Math::max);
+        nextCompaction = Math.max(compactionThreshold, 2 * size);
+    }
+
+    /*
+    Makes the rename durable. Not supported on all platforms, where the rename is then durable on a best effort basis.
+     */
+    private void syncDirectory() {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            directoryChannel.force(true);
+        } catch (IOException e) {
+            log.debug("Unable to sync directory {} of security group journal: {}", directory, e.toString());
+        }
+    }
+
+    private byte[] serialize(Object record) {
+        try {
+            String line = objectMapper.writeValueAsString(record) + "\n";
+            return line.getBytes(StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to serialize security group journal record " + record, e);
+        }
+    }
+
+    private long write(byte[] bytes) {
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            writtenBytes += bytes.length;
+            return writtenBytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write to security group journal " + file, e);
+        }
+    }
+
+    private void sync(long written) {
+        if (syncedBytes.get() >= written) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (syncedBytes.get() >= written) {
+                return;
+            }
+            long target;
+            FileChannel synced;
+            synchronized (this) {
+                target = writtenBytes;
+                synced = channel;
+            }
+            try {
+                synced.force(false);
+            } catch (ClosedChannelException e) {
+                // replaced by a compaction, which already made the write durable
+                if (syncedBytes.get() < written) {
+                    throw new UncheckedIOException("Unable to sync security group journal " + file, e);
+                }
+                return;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to sync security group journal " + file, e);
+            }
+            syncedBytes.accumulateAndGet(target, Math::max);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        channel.close();
+    }
+
+}
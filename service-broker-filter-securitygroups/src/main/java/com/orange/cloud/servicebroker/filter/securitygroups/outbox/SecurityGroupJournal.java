@@ -0,0 +1,50 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.outbox;
+
+import java.util.List;
+
+/**
+ * Durable outbox of security group operations. Bind and unbind only wait for an operation to be appended,
+ * the Cloud Controller calls are then performed by the {@link SecurityGroupOutboxWorker}.
+ * Operations are delivered at least once: an operation stays pending until acknowledged, including across restarts.
+ */
+public interface SecurityGroupJournal {
+
+    /**
+     * Durably records an operation.
+     *
+     * @param operation the operation to record
+     * @return the recorded operation, with its sequence assigned
+     */
+    SecurityGroupOperation append(SecurityGroupOperation operation);
+
+    /**
+     * @param max maximum number of operations to return
+     * @return the oldest operations not yet acknowledged, in the order they were appended
+     */
+    List<SecurityGroupOperation> pending(int max);
+
+    /**
+     * Marks an operation as applied, so that it is not replayed anymore.
+     *
+     * @param operation a previously appended operation
+     */
+    void acknowledge(SecurityGroupOperation operation);
+
+}
@@ -0,0 +1,104 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.outbox;
+
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import org.immutables.value.Value;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * An intended security group creation or deletion, as recorded into the {@link SecurityGroupJournal}.
+ * Creations carry the destinations that were already checked against the trusted destinations, so that
+ * replaying them later never requires the binding response again.
+ */
+@Value.Immutable
+@Value.Style(depluralize = true)
+@JsonSerialize(as = ImmutableSecurityGroupOperation.class)
+@JsonDeserialize(as = ImmutableSecurityGroupOperation.class)
+public abstract class SecurityGroupOperation {
+
+    public enum Type {
+        CREATE,
+        DELETE
+    }
+
+    /*
+    Assigned by the journal when the operation is recorded.
+     */
+    @Value.Default
+    public long sequence() {
+        return 0L;
+    }
+
+    public abstract Type type();
+
+    public abstract String securityGroupName();
+
+    public abstract Optional<String> bindingId();
+
+    public abstract Optional<String> serviceInstanceId();
+
+    public abstract Optional<String> spaceId();
+
+    public abstract List<String> destinations();
+
+    public abstract Optional<Integer> port();
+
+    /*
+    Destination IPs of each port, superseding destinations and port when set. Operations recorded before clustered
+    services were supported only carry destinations and port.
+     */
+    public abstract Map<Integer, List<String>> destinationsByPort();
+
+    public static SecurityGroupOperation create(String securityGroupName, String bindingId, String serviceInstanceId,
+                                                String spaceId, List<String> destinations, int port) {
+        return ImmutableSecurityGroupOperation.builder()
+                .type(Type.CREATE)
+                .securityGroupName(securityGroupName)
+                .bindingId(bindingId)
+                .serviceInstanceId(serviceInstanceId)
+                .spaceId(spaceId)
+                .destinations(destinations)
+                .port(port)
+                .build();
+    }
+
+    public static SecurityGroupOperation create(String securityGroupName, String bindingId, String serviceInstanceId,
+                                                String spaceId, Map<Integer, List<String>> destinationsByPort) {
+        return ImmutableSecurityGroupOperation.builder()
+                .type(Type.CREATE)
+                .securityGroupName(securityGroupName)
+                .bindingId(bindingId)
+                .serviceInstanceId(serviceInstanceId)
+                .spaceId(spaceId)
+                .destinationsByPort(destinationsByPort)
+                .build();
+    }
+
+    public static SecurityGroupOperation delete(String securityGroupName) {
+        return ImmutableSecurityGroupOperation.builder()
+                .type(Type.DELETE)
+                .securityGroupName(securityGroupName)
+                .build();
+    }
+
+}
@@ -0,0 +1,194 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.outbox;
+
+import com.orange.cloud.servicebroker.filter.securitygroups.client.CloudFoundryRequestLimiter;
+import com.orange.cloud.servicebroker.filter.securitygroups.domain.ImmutablePort;
+import com.orange.cloud.servicebroker.filter.securitygroups.domain.Port;
+import com.orange.cloud.servicebroker.filter.securitygroups.filter.CreateSecurityGroup;
+import com.orange.cloud.servicebroker.filter.securitygroups.filter.DeleteSecurityGroup;
+import org.cloudfoundry.client.v2.ClientV2Exception;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drains the {@link SecurityGroupJournal} in batches and applies operations against the Cloud Controller.
+ * <p>
+ * Operations on distinct security groups are applied concurrently, operations on a same security group are applied
+ * in order, and stop at the first failure so that a deletion is never applied before a pending creation.
+ * Failed operations stay in the journal and are retried with an exponential backoff. Since operations are delivered
+ * at least once, a replayed creation finding its security group already existing is considered applied.
+ */
+public class SecurityGroupOutboxWorker {
+
+    private static final Logger log = LoggerFactory.getLogger(SecurityGroupOutboxWorker.class);
+
+    static final int SECURITY_GROUP_NAME_TAKEN = 300005;
+
+    private final SecurityGroupJournal journal;
+
+    private final CreateSecurityGroup createSecurityGroup;
+
+    private final DeleteSecurityGroup deleteSecurityGroup;
+
+    private final int batchSize;
+
+    private final int concurrency;
+
+    private final Duration pollInterval;
+
+    private final Duration maxBackoff;
+
+    private final Duration operationTimeout;
+
+    private ScheduledExecutorService executor;
+
+    private int consecutiveFailedDrains;
+
+    public SecurityGroupOutboxWorker(SecurityGroupJournal journal, CreateSecurityGroup createSecurityGroup, DeleteSecurityGroup deleteSecurityGroup,
+                                     int batchSize, int concurrency, Duration pollInterval, Duration maxBackoff, Duration operationTimeout) {
+        this.journal = journal;
+        this.createSecurityGroup = createSecurityGroup;
+        this.deleteSecurityGroup = deleteSecurityGroup;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        this.pollInterval = pollInterval;
+        this.maxBackoff = maxBackoff;
+        this.operationTimeout = operationTimeout;
+    }
+
+    public void start() {
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "security-group-outbox");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.schedule(this::drainAndReschedule, 0, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    private void drainAndReschedule() {
+        try {
+            if (drain()) {
+                consecutiveFailedDrains = 0;
+            } else {
+                consecutiveFailedDrains++;
+            }
+        } catch (RuntimeException e) {
+            consecutiveFailedDrains++;
+            log.error("Fail to drain security group outbox. Error details {}", e.toString(), e);
+        }
+        if (!executor.isShutdown()) {
+            executor.schedule(this::drainAndReschedule, nextDelay().toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private Duration nextDelay() {
+        if (consecutiveFailedDrains == 0) {
+            return pollInterval;
+        }
+        Duration backoff = pollInterval.multipliedBy(1L << Math.min(consecutiveFailedDrains, 16));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+
+    /**
+     * Applies one batch of pending operations.
+     *
+     * @return true when all operations of the batch were applied
+     */
+    boolean drain() {
+        List<SecurityGroupOperation> batch = journal.pending(batchSize);
+        if (batch.isEmpty()) {
+            return true;
+        }
+        log.debug("Draining {} security group operation(s) from outbox", batch.size());
+        Map<String, Flux<SecurityGroupOperation>> bySecurityGroup = new LinkedHashMap<>();
+        batch.forEach(operation -> bySecurityGroup.merge(operation.securityGroupName(), Flux.just(operation), Flux::concatWith));
+
+        AtomicInteger failures = new AtomicInteger();
+        Flux.fromIterable(bySecurityGroup.values())
+                .flatMap(operations -> operations
+                        .concatMap(operation -> apply(operation)
+                                .timeout(operationTimeout)
+                                .then(Mono.fromRunnable(() -> journal.acknowledge(operation))))
+                        .onErrorResume(t -> {
+                            failures.incrementAndGet();
+                            log.warn("Fail to apply security group operation, will retry later. Error details {}", t.toString());
+                            return Mono.empty();
+                        }), concurrency)
+                .then()
+                .subscriberContext(CloudFoundryRequestLimiter.withPriority(CloudFoundryRequestLimiter.Priority.BACKGROUND))
+                .block();
+        return failures.get() == 0;
+    }
+
+    private Mono<Void> apply(SecurityGroupOperation operation) {
+        switch (operation.type()) {
+            case CREATE:
+                return createSecurityGroup.createSecurityGroup(operation.securityGroupName(),
+                        operation.bindingId().orElse(operation.securityGroupName()),
+                        operation.serviceInstanceId().orElseThrow(() -> new IllegalStateException("Missing service instance id in " + operation)),
+                        operation.spaceId().orElseThrow(() -> new IllegalStateException("Missing space id in " + operation)),
+                        ipsByPort(operation))
+                        .doOnNext(securityGroup -> log.debug("Security Group {} created", securityGroup.getName()))
+                        .then()
+                        .onErrorResume(SecurityGroupOutboxWorker::isNameTaken, t -> {
+                            log.info("Security Group {} already exists, considering replayed creation as applied", operation.securityGroupName());
+                            return Mono.empty();
+                        });
+            case DELETE:
+                return deleteSecurityGroup.deleteSecurityGroup(operation.securityGroupName())
+                        .doOnNext(response -> log.debug("Security group {} deleted", operation.securityGroupName()))
+                        .then();
+            default:
+                return Mono.error(new IllegalStateException("Unsupported security group operation " + operation));
+        }
+    }
+
+    private static Map<Port, List<String>> ipsByPort(SecurityGroupOperation operation) {
+        if (operation.destinationsByPort().isEmpty()) {
+            return Collections.singletonMap(ImmutablePort.of(operation.port().orElseThrow(() -> new IllegalStateException("Missing port in " + operation))),
+                    operation.destinations());
+        }
+        Map<Port, List<String>> ipsByPort = new LinkedHashMap<>();
+        operation.destinationsByPort().forEach((port, ips) -> ipsByPort.put(ImmutablePort.of(port), ips));
+        return ipsByPort;
+    }
+
+    private static boolean isNameTaken(Throwable t) {
+        return t instanceof ClientV2Exception && Integer.valueOf(SECURITY_GROUP_NAME_TAKEN).equals(((ClientV2Exception) t).getCode());
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.warmup;
+
+import com.orange.cloud.servicebroker.filter.core.warmup.WarmUpTask;
+import org.cloudfoundry.client.CloudFoundryClient;
+import org.cloudfoundry.client.v2.info.GetInfoRequest;
+import org.cloudfoundry.reactor.ConnectionContext;
+import org.cloudfoundry.reactor.TokenProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+
+/**
+ * Fetches a UAA token and opens pooled connections to the Cloud Controller, by concurrently requesting its info.
+ */
+@Profile("!offline-test-without-cf")
+@Component
+public class CloudFoundryWarmUpTask implements WarmUpTask {
+
+    private final CloudFoundryClient cloudFoundryClient;
+
+    private final ConnectionContext connectionContext;
+
+    private final TokenProvider tokenProvider;
+
+    @Value("${broker.filter.warmup.connections:4}")
+    private int connections;
+
+    @Autowired
+    public CloudFoundryWarmUpTask(CloudFoundryClient cloudFoundryClient, ConnectionContext connectionContext, TokenProvider tokenProvider) {
+        this.cloudFoundryClient = cloudFoundryClient;
+        this.connectionContext = connectionContext;
+        this.tokenProvider = tokenProvider;
+    }
+
+    @Override
+    public String name() {
+        return "cloud controller connections and token";
+    }
+
+    @Override
+    public void warmUp() {
+        Mono.when(
+                tokenProvider.getToken(connectionContext),
+                Flux.range(0, connections)
+                        .flatMap(i -> cloudFoundryClient.info().get(GetInfoRequest.builder().build()), connections))
+                .block(Duration.ofSeconds(30));
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CloudFoundryConnectionPoolMetricsTest {
+
+    private DisposableServer server;
+
+    @Before
+    public void startServer() {
+        server = HttpServer.create()
+                .port(0)
+                .handle((request, response) -> response.sendString(Mono.just("{}")))
+                .bindNow();
+    }
+
+    @After
+    public void stopServer() {
+        server.disposeNow();
+    }
+
+    @Test
+    public void should_publish_connection_pool_metrics() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        HttpClient httpClient = new CloudFoundryConnectionPoolMetrics(meterRegistry, null)
+                .instrument(HttpClient.create().port(server.port()));
+
+        httpClient.get().uri("/v2/info").responseContent().aggregate().asString().block(Duration.ofSeconds(5));
+        httpClient.get().uri("/v2/info").responseContent().aggregate().asString().block(Duration.ofSeconds(5));
+
+        assertThat(meterRegistry.get("cloudfoundry.connections.acquire").timer().count()).isEqualTo(2);
+        assertThat(meterRegistry.get("cloudfoundry.connections.pending").gauge().value()).isZero();
+        assertThat(meterRegistry.get("cloudfoundry.connections.active").gauge().value()).isZero();
+        assertThat(meterRegistry.get("cloudfoundry.connections.idle").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    public void should_collapse_guids_of_uri_tags() {
+        assertThat(CloudFoundryConnectionPoolMetrics.uriTemplate("/v2/security_groups/1B4C6E3A-9f0d-4a8e-b5c2-0123456789ab/spaces/0f6a1e2d-3c4b-5a69-8f7e-6d5c4b3a2910"))
+                .isEqualTo("/v2/security_groups/{guid}/spaces/{guid}");
+        assertThat(CloudFoundryConnectionPoolMetrics.uriTemplate("/v2/security_groups?q=name:sg-binding-1")).isEqualTo("/v2/security_groups");
+        assertThat(CloudFoundryConnectionPoolMetrics.uriTemplate("/oauth/token")).isEqualTo("/oauth/token");
+    }
+
+}
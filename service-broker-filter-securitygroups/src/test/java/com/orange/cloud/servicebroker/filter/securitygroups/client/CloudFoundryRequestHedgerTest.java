@@ -0,0 +1,95 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CloudFoundryRequestHedgerTest {
+
+    @Test
+    public void slow_request_should_be_hedged() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CloudFoundryRequestHedger hedger = new CloudFoundryRequestHedger(0.95, Duration.ofMillis(50), 1, meterRegistry);
+
+        String response = hedger.hedge(slowThenFastRequest()).block(Duration.ofSeconds(2));
+
+        assertThat(response).isEqualTo("fast");
+        assertThat(meterRegistry.get("cloudfoundry.requests.hedged").counter().count()).isEqualTo(1);
+    }
+
+    @Test
+    public void hedging_should_be_capped_by_budget() {
+        CloudFoundryRequestHedger hedger = new CloudFoundryRequestHedger(0.95, Duration.ofMillis(50), 0.5, new SimpleMeterRegistry());
+
+        String response = hedger.hedge(slowThenFastRequest()).block(Duration.ofSeconds(2));
+
+        assertThat(response).isEqualTo("slow");
+    }
+
+    @Test
+    public void disabled_hedger_should_not_hedge() {
+        String response = CloudFoundryRequestHedger.disabled().hedge(slowThenFastRequest()).block(Duration.ofSeconds(2));
+
+        assertThat(response).isEqualTo("slow");
+    }
+
+    @Test
+    public void cancelled_requests_should_not_be_recorded() throws InterruptedException {
+        CloudFoundryRequestHedger hedger = new CloudFoundryRequestHedger(0.95, Duration.ofMillis(10), 0, new SimpleMeterRegistry());
+        for (int i = 0; i < CloudFoundryRequestHedger.LATENCY_SAMPLES / 4; i++) {
+            hedger.hedge(Mono.just("fast")).block(Duration.ofSeconds(2));
+        }
+        List<Disposable> cancelled = new ArrayList<>();
+        for (int i = 0; i < CloudFoundryRequestHedger.LATENCY_SAMPLES / 4; i++) {
+            cancelled.add(hedger.hedge(Mono.never()).subscribe());
+        }
+        Thread.sleep(100);
+
+        cancelled.forEach(Disposable::dispose);
+
+        assertThat(hedger.hedgeDelay()).isEqualTo(Duration.ofMillis(10));
+    }
+
+    @Test
+    public void hedge_delay_should_not_drift_when_primaries_are_slower_than_the_delay() {
+        CloudFoundryRequestHedger hedger = new CloudFoundryRequestHedger(0.95, Duration.ofMillis(10), 1, new SimpleMeterRegistry());
+        for (int i = 0; i < CloudFoundryRequestHedger.LATENCY_SAMPLES / 4; i++) {
+            assertThat(hedger.hedge(slowThenFastRequest()).block(Duration.ofSeconds(2))).isEqualTo("fast");
+        }
+
+        assertThat(hedger.hedgeDelay()).isGreaterThan(Duration.ofMillis(10)).isLessThan(Duration.ofMillis(500));
+    }
+
+    private static Mono<String> slowThenFastRequest() {
+        AtomicInteger subscriptions = new AtomicInteger();
+        return Mono.defer(() -> subscriptions.getAndIncrement() == 0 ?
+                Mono.delay(Duration.ofMillis(500)).thenReturn("slow") :
+                Mono.just("fast"));
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import org.junit.Test;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static com.orange.cloud.servicebroker.filter.securitygroups.client.CloudFoundryRequestLimiter.Priority.BACKGROUND;
+import static com.orange.cloud.servicebroker.filter.securitygroups.client.CloudFoundryRequestLimiter.Priority.INTERACTIVE;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CloudFoundryRequestLimiterTest {
+
+    @Test
+    public void unlimited_limiter_should_let_requests_through() {
+        assertThat(CloudFoundryRequestLimiter.unlimited().limit(Mono.just("response")).block()).isEqualTo("response");
+    }
+
+    @Test
+    public void interactive_requests_should_be_served_before_background_requests() throws Exception {
+        CloudFoundryRequestLimiter limiter = new CloudFoundryRequestLimiter(10, 1, 10, new SimpleMeterRegistry());
+        List<String> served = new CopyOnWriteArrayList<>();
+        limiter.limit(Mono.just("first")).block();
+
+        Mono<String> background = limiter.limit(Mono.fromCallable(() -> record(served, "background")))
+                .subscriberContext(CloudFoundryRequestLimiter.withPriority(BACKGROUND));
+        Mono<String> interactive = limiter.limit(Mono.fromCallable(() -> record(served, "interactive")))
+                .subscriberContext(CloudFoundryRequestLimiter.withPriority(INTERACTIVE));
+        Mono.when(background, interactive).block(Duration.ofSeconds(5));
+
+        assertThat(served).containsExactly("interactive", "background");
+    }
+
+    @Test
+    public void requests_should_be_rejected_when_too_many_are_waiting() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        CloudFoundryRequestLimiter limiter = new CloudFoundryRequestLimiter(1, 1, 0, meterRegistry);
+        limiter.limit(Mono.just("first")).block();
+
+        assertThatThrownBy(() -> limiter.limit(Mono.just("second")).block())
+                .isInstanceOf(CloudFoundryRequestLimiter.RequestRateLimitExceeded.class);
+        assertThat(meterRegistry.get("cloudfoundry.requests.ratelimit.rejected").tag("priority", "interactive").counter().count())
+                .isEqualTo(1);
+    }
+
+    @Test
+    public void requests_should_wait_for_cloud_controller_rate_limit_reset() {
+        CloudFoundryRequestLimiter limiter = new CloudFoundryRequestLimiter(1000, 10, 10, new SimpleMeterRegistry());
+        long reset = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + 2;
+        limiter.onResponseHeaders(new DefaultHttpHeaders()
+                .add("X-RateLimit-Remaining", "0")
+                .add("X-RateLimit-Reset", String.valueOf(reset)));
+
+        limiter.limit(Mono.just("response")).block(Duration.ofSeconds(5));
+
+        assertThat(System.currentTimeMillis()).isGreaterThanOrEqualTo(TimeUnit.SECONDS.toMillis(reset));
+    }
+
+    private static String record(List<String> served, String request) {
+        served.add(request);
+        return request;
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.client;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.cloudfoundry.reactor.ConnectionContext;
+import org.cloudfoundry.reactor.TokenProvider;
+import org.junit.Test;
+import org.mockito.Mockito;
+import reactor.core.publisher.Mono;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RefreshAheadTokenProviderTest {
+
+    private final ConnectionContext connectionContext = Mockito.mock(ConnectionContext.class);
+
+    @Test
+    public void should_read_token_expiry_from_jwt() {
+        Instant expiry = Instant.parse("2020-01-01T00:00:00Z");
+
+        assertThat(RefreshAheadTokenProvider.expiry(token(expiry))).contains(expiry);
+        assertThat(RefreshAheadTokenProvider.expiry("bearer opaque-token")).isEmpty();
+    }
+
+    @Test
+    public void should_serve_cached_token_until_refresh() {
+        CountingTokenProvider delegate = new CountingTokenProvider(Duration.ofHours(1));
+        RefreshAheadTokenProvider tokenProvider = new RefreshAheadTokenProvider(delegate, Duration.ofMinutes(2), new SimpleMeterRegistry());
+        try {
+            String first = tokenProvider.getToken(connectionContext).block();
+            String second = tokenProvider.getToken(connectionContext).block();
+
+            assertThat(second).isEqualTo(first);
+            assertThat(delegate.requests.get()).isEqualTo(1);
+            assertThat(tokenProvider.tokenRemaining()).hasValueSatisfying(remaining -> assertThat(remaining).isGreaterThan(Duration.ofMinutes(59)));
+        } finally {
+            tokenProvider.dispose();
+        }
+    }
+
+    @Test
+    public void should_refresh_token_ahead_of_expiry() throws Exception {
+        CountingTokenProvider delegate = new CountingTokenProvider(Duration.ofSeconds(4));
+        RefreshAheadTokenProvider tokenProvider = new RefreshAheadTokenProvider(delegate, Duration.ofMinutes(2), new SimpleMeterRegistry());
+        try {
+            tokenProvider.getToken(connectionContext).block();
+
+            // refreshed at half the token lifetime
+            for (int i = 0; i < 50 && delegate.requests.get() < 2; i++) {
+                Thread.sleep(100);
+            }
+            assertThat(delegate.requests.get()).isGreaterThanOrEqualTo(2);
+        } finally {
+            tokenProvider.dispose();
+        }
+    }
+
+    @Test
+    public void should_request_new_token_once_invalidated() {
+        CountingTokenProvider delegate = new CountingTokenProvider(Duration.ofHours(1));
+        RefreshAheadTokenProvider tokenProvider = new RefreshAheadTokenProvider(delegate, Duration.ofMinutes(2), new SimpleMeterRegistry());
+        try {
+            tokenProvider.getToken(connectionContext).block();
+
+            tokenProvider.invalidate(connectionContext);
+            tokenProvider.getToken(connectionContext).block();
+
+            assertThat(delegate.requests.get()).isEqualTo(2);
+        } finally {
+            tokenProvider.dispose();
+        }
+    }
+
+    private static String token(Instant expiry) {
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return "bearer " + encoder.encodeToString("{\"alg\":\"RS256\"}".getBytes(StandardCharsets.UTF_8)) + "." +
+                encoder.encodeToString(("{\"exp\":" + expiry.getEpochSecond() + "}").getBytes(StandardCharsets.UTF_8)) + ".signature";
+    }
+
+    private static class CountingTokenProvider implements TokenProvider {
+
+        private final AtomicInteger requests = new AtomicInteger();
+
+        private final Duration lifetime;
+
+        private CountingTokenProvider(Duration lifetime) {
+            this.lifetime = lifetime;
+        }
+
+        @Override
+        public Mono<String> getToken(ConnectionContext connectionContext) {
+            return Mono.fromCallable(() -> {
+                requests.incrementAndGet();
+                return token(Instant.now().plus(lifetime));
+            });
+        }
+    }
+
+}
@@ -1,27 +1,27 @@
 package com.orange.cloud.servicebroker.filter.securitygroups.config;
 
+import com.orange.cloud.servicebroker.filter.core.startup.StartupRunner;
 import org.cloudfoundry.client.CloudFoundryClient;
 import org.cloudfoundry.client.v2.info.GetInfoRequest;
 import org.cloudfoundry.client.v2.info.Info;
 import org.cloudfoundry.uaa.UaaException;
 import org.junit.After;
-import org.junit.Rule;
 import org.junit.Test;
-import org.junit.rules.ExpectedException;
 import org.mockito.Mockito;
 
 import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-import static org.hamcrest.Matchers.isA;
+import java.util.concurrent.TimeUnit;
 
-public class CheckCloudFoundryConnectionTest {
+import static org.assertj.core.api.Assertions.assertThat;
 
-    @Rule
-    public ExpectedException thrown = ExpectedException.none();
+public class CheckCloudFoundryConnectionTest {
 
     private ConfigurableApplicationContext context;
 
@@ -33,10 +33,15 @@ public class CheckCloudFoundryConnectionTest {
     }
 
     @Test
-    public void fail_to_start_app_when_cloudFoundry_cc_API_bad_credentials() {
-        //Should fail when Bad Credentials
-        this.thrown.expectCause(isA(UaaException.class));
+    public void report_readiness_down_when_cloudFoundry_cc_API_bad_credentials() throws Exception {
+        //Should start, but never be ready when Bad Credentials
         this.context = new SpringApplicationBuilder(TestConfiguration.class).web(WebApplicationType.NONE).run();
+        StartupRunner startupRunner = this.context.getBean(StartupRunner.class);
+
+        assertThat(startupRunner.start().get(10, TimeUnit.SECONDS)).isFalse();
+        Health health = startupRunner.health();
+        assertThat(health.getStatus()).isEqualTo(Status.DOWN);
+        assertThat(health.getDetails().get("cloudfoundry").toString()).contains(UaaException.class.getSimpleName());
     }
 
     @Configuration
@@ -57,6 +62,11 @@ public class CheckCloudFoundryConnectionTest {
             return new CheckCloudFoundryConnection();
         }
 
+        @Bean
+        StartupRunner startupRunner() {
+            return new StartupRunner();
+        }
+
     }
 
 }
\ No newline at end of file
@@ -20,13 +20,18 @@ package com.orange.cloud.servicebroker.filter.securitygroups.filter;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import com.orange.cloud.servicebroker.filter.securitygroups.domain.Destination;
 import com.orange.cloud.servicebroker.filter.securitygroups.domain.ImmutableCIDR;
 import com.orange.cloud.servicebroker.filter.securitygroups.domain.ImmutablePort;
 import com.orange.cloud.servicebroker.filter.securitygroups.domain.ImmutablePorts;
 import com.orange.cloud.servicebroker.filter.securitygroups.domain.ImmutableTrustedDestination;
+import com.orange.cloud.servicebroker.filter.securitygroups.domain.Port;
 import com.orange.cloud.servicebroker.filter.securitygroups.domain.TrustedDestinationSpecification;
 import org.cloudfoundry.client.CloudFoundryClient;
 import org.cloudfoundry.client.v2.ClientV2Exception;
@@ -68,6 +73,7 @@ import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstan
 import org.springframework.cloud.servicebroker.model.binding.CreateServiceInstanceBindingRequest;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.BDDMockito.given;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -456,4 +462,17 @@ public class CreateSecurityGroupTest {
                         .build());
     }
 
-}
\ No newline at end of file
+    @Test
+    public void should_open_each_clustered_destination_ip_on_its_own_port_only() {
+        Map<Port, List<String>> ipsByPort = CreateSecurityGroup.ipsByPort(Arrays.asList(
+                new Destination("127.0.0.1", ImmutablePort.of(27017)),
+                new Destination("127.0.0.2", ImmutablePort.of(27017)),
+                new Destination("127.0.0.1", ImmutablePort.of(27017)),
+                new Destination("127.0.0.3", ImmutablePort.of(27018))));
+
+        assertThat(ipsByPort).containsOnly(
+                entry(ImmutablePort.of(27017), Arrays.asList("127.0.0.1", "127.0.0.2")),
+                entry(ImmutablePort.of(27018), Collections.singletonList("127.0.0.3")));
+    }
+
+}
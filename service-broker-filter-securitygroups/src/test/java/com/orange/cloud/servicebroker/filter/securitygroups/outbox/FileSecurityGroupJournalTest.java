@@ -0,0 +1,147 @@
+/*
+ * <!--
+ *
+ *     Copyright (C) 2015 Orange
+ *     Licensed under the Apache License, Version 2.0 (the "License");
+ *     you may not use this file except in compliance with the License.
+ *     You may obtain a copy of the License at
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *     Unless required by applicable law or agreed to in writing, software
+ *     distributed under the License is distributed on an "AS IS" BASIS,
+ *     WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *     See the License for the specific language governing permissions and
+ *     limitations under the License.
+ *
+ * -->
+ */
+
+package com.orange.cloud.servicebroker.filter.securitygroups.outbox;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class FileSecurityGroupJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void should_return_pending_operations_in_append_order() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("outbox.journal");
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file)) {
+            SecurityGroupOperation create = journal.append(aCreation("sg-1"));
+            SecurityGroupOperation delete = journal.append(SecurityGroupOperation.delete("sg-1"));
+
+            assertThat(journal.pending(10)).containsExactly(create, delete);
+            assertThat(journal.pending(1)).containsExactly(create);
+        }
+    }
+
+    @Test
+    public void should_replay_unacknowledged_operations_after_reopening() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("outbox.journal");
+        SecurityGroupOperation delete;
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file)) {
+            SecurityGroupOperation create = journal.append(aCreation("sg-1"));
+            delete = journal.append(SecurityGroupOperation.delete("sg-2"));
+            journal.acknowledge(create);
+        }
+
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file)) {
+            List<SecurityGroupOperation> pending = journal.pending(10);
+            assertThat(pending).containsExactly(delete);
+
+            SecurityGroupOperation next = journal.append(SecurityGroupOperation.delete("sg-3"));
+            assertThat(next.sequence()).isGreaterThan(delete.sequence());
+        }
+    }
+
+    @Test
+    public void should_discard_incomplete_record_at_the_end_of_the_journal() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("outbox.journal");
+        SecurityGroupOperation create;
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file)) {
+            create = journal.append(aCreation("sg-1"));
+        }
+        Files.write(file, "{\"sequence\":2,\"type\":\"DEL".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file)) {
+            assertThat(journal.pending(10)).containsExactly(create);
+            SecurityGroupOperation delete = journal.append(SecurityGroupOperation.delete("sg-1"));
+            assertThat(journal.pending(10)).containsExactly(create, delete);
+        }
+
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file)) {
+            assertThat(journal.pending(10)).hasSize(2);
+        }
+    }
+
+    @Test
+    public void should_compact_journal_once_all_operations_are_acknowledged() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("outbox.journal");
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file, 0)) {
+            SecurityGroupOperation create = journal.append(aCreation("sg-1"));
+            journal.acknowledge(create);
+
+            assertThat(Files.size(file)).isZero();
+        }
+    }
+
+    @Test
+    public void should_keep_replaying_records_following_an_unreadable_one() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("outbox.journal");
+        SecurityGroupOperation first;
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file)) {
+            first = journal.append(aCreation("sg-1"));
+        }
+        Files.write(file, "{\"sequence\":2,\"ty\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        SecurityGroupOperation second;
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file)) {
+            second = journal.append(aCreation("sg-2"));
+        }
+        Files.write(file, "{\"sequence\":3,\"ty\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        SecurityGroupOperation third;
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file)) {
+            third = journal.append(aCreation("sg-3"));
+        }
+
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file)) {
+            assertThat(journal.pending(10)).containsExactly(first, second, third);
+        }
+        assertThat(new String(Files.readAllBytes(file.resolveSibling("outbox.journal" + FileSecurityGroupJournal.CORRUPT_SUFFIX)), StandardCharsets.UTF_8))
+                .isEqualTo("{\"sequence\":2,\"ty\n{\"sequence\":3,\"ty\n");
+    }
+
+    @Test
+    public void should_compact_journal_while_operations_are_pending() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("outbox.journal");
+        SecurityGroupOperation pending;
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file, 1024)) {
+            pending = journal.append(aCreation("sg-pending"));
+            for (int i = 0; i < 100; i++) {
+                journal.acknowledge(journal.append(aCreation("sg-" + i)));
+            }
+
+            assertThat(Files.size(file)).isLessThan(2048);
+        }
+
+        try (FileSecurityGroupJournal journal = new FileSecurityGroupJournal(file, 1024)) {
+            assertThat(journal.pending(10)).containsExactly(pending);
+        }
+    }
+
+    private static SecurityGroupOperation aCreation(String name) {
+        return SecurityGroupOperation.create(name, name, "serviceInstanceId", "spaceId", Arrays.asList("10.0.0.1", "10.0.0.2"), 3306);
+    }
+
+}